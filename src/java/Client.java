@@ -1,9 +1,12 @@
 import client_interpreter.*;
+import game.Color;
+import network.Frame;
+import network.Protocol;
 
 import java.io.*;
 import java.net.InetAddress;
 import java.net.Socket;
-import java.util.Objects;
+import java.nio.ByteBuffer;
 
 
 /**
@@ -12,9 +15,23 @@ import java.util.Objects;
 public class Client {
 
     private static Socket socket = null;
+    private static DataInputStream from_server_stream = null;
+    private static DataOutputStream to_server_stream = null;
     private static BufferedReader br = null;
     private static FileReader file = null;
     private static Thread GUI_thread = null;
+    private static int color = Color.WHITE;
+
+    /* Credentials received when the game starts, to rejoin it if the server restarts */
+    private static boolean has_credentials = false;
+    private static long game_id = 0;
+    private static long game_token = 0;
+    private static boolean game_over = false;
+    private static String unconfirmed_strike = null; // Sent, the server did not answer yet
+    private static final int rejoin_timeout = 60000;  // 1 minute
+
+    /* Names of the pieces indexed by piece code, see Protocol */
+    private static final String[] PIECE_NAMES = { "", "pawn", "knight", "bishop", "rook", "queen", "king" };
 
     public static void main(String[] args) {
 
@@ -34,80 +51,118 @@ public class Client {
             file = inputs.getFile();
 
         /* Connect to the server and wait for another player */
-        try {
-            socket = new Socket(InetAddress.getByName(inputs.getIp()), inputs.getPort());
-        } catch (IOException e) {
+        if ( !connect(inputs, Protocol.join(inputs.getTimeControl(), inputs.getRating())) ) {
             display("Server " +inputs.getIp()+":"+inputs.getPort()+ " is unavailable");
             return;
         }
         display("Connected to the chess server "+inputs.getIp()+":"+inputs.getPort());
 
+        /* Initializing where to reads the inputs */
+        if ( inputs.getFile() == null )
+            br = new BufferedReader(new InputStreamReader(System.in));
+        else
+            br = new BufferedReader(inputs.getFile());
 
-        try {
-
-            /* Initializing where to reads the inputs */
-            if ( inputs.getFile() == null )
-                br = new BufferedReader(new InputStreamReader(System.in));
-            else
-                br = new BufferedReader(inputs.getFile());
-
-            /* Another player joined the game/Waiting for another player */
-            String from_server = readFromServer();
-            display(from_server);
-
-            /* If the client is the first player... */
-            if ( Objects.requireNonNull(from_server).equals("Waiting for another player... 1 minute timeout") ) {
-                from_server = readFromServer();
-                display(from_server);
-            }
-
-            /* Fetching the obtained color */
-            from_server = readFromServer();
-            display(from_server);
-
-            /* The white player begins  */
-            if (Objects.requireNonNull(from_server).contains("white")) {
-                /* That is your turn... */
-                from_server = readFromServer();
-                display(from_server);
+        while (true) {
+            try {
 
-                /* Asking move + result of the move */
-                sendValidMoveToServer();
-            }
-            else{
-                /* Skipping the first line of the file for the black player */
-                if ( file != null)
-                    br.readLine();
+                /* Game loop: reacting to the events sent by the server */
+                while (true) {
+
+                    byte[] event = readFromServer();
+                    if ( event == null )
+                        continue;
+                    display(describe(event));
+
+                    switch ( Protocol.code(event) ) {
+                        case Protocol.COLOR:
+                            color = Protocol.arg(event, 0);
+                            /* Skipping the first line of the file for the black player */
+                            if ( ( color == Color.BLACK ) && ( file != null ) )
+                                br.readLine();
+                            break;
+                        case Protocol.YOUR_TURN:
+                            /* Asking move + result of the move */
+                            sendValidMoveToServer();
+                            break;
+                        case Protocol.OPPONENT_TURN:
+                            /* The strike sent before the server restarted was played */
+                            if ( unconfirmed_strike != null ) {
+                                unconfirmed_strike = null;
+                                if ( file != null )
+                                    br.readLine();
+                            }
+                            break;
+                    }
+                }
+            } catch (IOException e) {
+                /* If there is a last message from the server to display */
+                try {
+                    byte[] event = readFromServer();
+                    if ( event != null )
+                        display(describe(event));
+                } catch (IOException ignored) {
+                    if ( !game_over )
+                        display("The server disconnected");
+                }
+                if ( game_over || !has_credentials || !rejoin(inputs) ) {
+                    disconnect();
+                    return;
+                }
             }
+        }
 
-            /* Game loop */
-            while (true) {
-
-                /* "Waiting for your opponent to play..." */
-                from_server = readFromServer();
-                display(from_server);
-
-                /* Move of the opponent */
-                from_server = readFromServer();
-                display(from_server);
+    }
 
-                /* That is your turn... */
-                from_server = readFromServer();
-                display(from_server);
+    /*
+     * Connects to the server and sends the first frame.
+     *
+     * @param inputs The inputs of the command line
+     * @param first_frame The request to join or to rejoin a game
+     * @return Whether the client is connected
+     */
+    private static boolean connect(ClientInterpreter inputs, ByteBuffer first_frame) {
+        try {
+            socket = new Socket(InetAddress.getByName(inputs.getIp()), inputs.getPort());
+            socket.setTcpNoDelay(true);
+            from_server_stream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            to_server_stream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Frame.write(to_server_stream, first_frame);
+        } catch (IOException e) {
+            try {
+                if (socket != null)
+                    socket.close();
+            } catch (IOException ignored) {}
+            return false;
+        }
+        return true;
+    }
 
-                /* Asking move + result of the move */
-                sendValidMoveToServer();
+    /*
+     * Rejoins the game once the server restarted, trying every second until the rejoin timeout.
+     *
+     * @param inputs The inputs of the command line
+     * @return Whether the client rejoined the game
+     */
+    private static boolean rejoin(ClientInterpreter inputs) {
+        display("Trying to rejoin the game " + game_id + "...");
+        long deadline = System.currentTimeMillis() + rejoin_timeout;
+        try {
+            socket.close();
+        } catch (IOException ignored) {}
+        while ( System.currentTimeMillis() < deadline ) {
+            if ( connect(inputs, Protocol.rejoin(game_id, game_token)) ) {
+                display("Reconnected to the chess server "+inputs.getIp()+":"+inputs.getPort());
+                return true;
             }
-        } catch (IOException | ClassNotFoundException e) {
-            /* If there is a last message from the server to display */
             try {
-                display(readFromServer());
-            } catch (IOException | ClassNotFoundException ignored) {
-                display("The server disconnected");
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return false;
             }
-            disconnect();
         }
-
+        display("Unable to rejoin the game, the server is unavailable");
+        return false;
     }
 
     /*
@@ -125,22 +180,27 @@ public class Client {
     }
 
     /*
-     * Sending a valid move to the server.
+     * Sending a valid move to the server, and the piece of promotion if asked.
      *
      * @throws IOException If the server disconnected
-     * @throws ClassNotFoundException If the server disconnected
      */
-    private static void sendValidMoveToServer() throws IOException, ClassNotFoundException {
-        String from_server = null;
+    private static void sendValidMoveToServer() throws IOException {
+        byte[] from_server = null;
+        byte code = Protocol.INVALID_MOVE;
 
         /* Empty buffered reader if the player entered commands before his/her turn */
         if ( file == null )
             System.in.read(new byte[System.in.available()]);
 
-        while ((from_server == null) || from_server.equals("Invalid move") || from_server.contains("Promotion")) {
+        while ( (from_server == null) || (code == Protocol.INVALID_MOVE) || (code == Protocol.PROMOTION_REQUEST)
+                || (code == Protocol.INVALID_PROMOTION) ) {
 
-            /* Asking move / reading from file */
-            String to_server = br.readLine();
+            /* Asking move / reading from file, or sending again the strike the server did not answer before restarting */
+            String to_server = unconfirmed_strike;
+            if ( to_server == null )
+                to_server = br.readLine();
+            else
+                unconfirmed_strike = null;
 
             if ( file != null ){
                 /* If end of file, switch to command line */
@@ -154,12 +214,37 @@ public class Client {
                 if ( to_server.startsWith("//") || to_server.startsWith("draw") )
                     continue;
             }
+            else if ( to_server == null ) {
+                game_over = true;
+                throw new IOException("End of the inputs");
+            }
 
-            writeToServer(to_server);
+            if ( ( code == Protocol.PROMOTION_REQUEST ) || ( code == Protocol.INVALID_PROMOTION ) )
+                writeToServer(Protocol.promotionChoice(pieceCode(to_server)));
+            else if ( to_server.equals("display_board") )
+                writeToServer(Protocol.boardRequest());
+            else {
+                int move = parseMove(to_server);
+                if ( move < 0 ) { // Not even a move, no need to ask the server
+                    display(describe(Protocol.INVALID_MOVE));
+                    if ( file != null ) {
+                        display("Incorrect move in file, please check. Disconnection processing...");
+                        game_over = true;
+                        throw new IOException();
+                    }
+                    continue;
+                }
+                unconfirmed_strike = to_server;
+                writeToServer(Protocol.moveRequest(move));
+            }
 
             /* Result of the move */
             from_server = readFromServer();
-            display(from_server);
+            if ( from_server != null ) {
+                unconfirmed_strike = null;
+                code = Protocol.code(from_server);
+                display(describe(from_server));
+            }
         }
 
         /* Skip the following line as this is for opponent player  */
@@ -168,61 +253,224 @@ public class Client {
     }
 
     /*
-     * Write the strike to the server.
+     * Gives the move corresponding to a strike entered by the player (ex: a2-a3, 0-0, 0-0-0).
      *
-     * @param message The message to send to the server
-     * @throws IOException If the server disconnected
+     * @param strike The strike entered by the player
+     * @return The move, see Protocol, -1 if the strike is not in a valid format
      */
-    private static void writeToServer(String message) throws IOException {
-        ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
-        oos.writeObject(message);
-        oos.flush();
+    private static int parseMove(String strike) {
+        int king_cell = ( color == Color.WHITE ) ? Protocol.cell(7, 4) : Protocol.cell(0, 4);
+        if ( strike.equals("0-0") )
+            return Protocol.move(king_cell, king_cell + 2, Protocol.NONE);
+        if ( strike.equals("0-0-0") )
+            return Protocol.move(king_cell, king_cell - 2, Protocol.NONE);
+        if ( ( strike.length() != 5 ) || ( strike.charAt(2) != '-' ) )
+            return -1;
+        int start_cell = parseCell(strike.charAt(0), strike.charAt(1));
+        int end_cell   = parseCell(strike.charAt(3), strike.charAt(4));
+        if ( ( start_cell < 0 ) || ( end_cell < 0 ) )
+            return -1;
+        return Protocol.move(start_cell, end_cell, Protocol.NONE);
     }
 
     /*
-     * Read a message from the server. Launch the GUI is the server sends the
-     * state of the board.
+     * Gives the cell number from its column and row (ex: 'a', '2').
      *
-     * @return The message from the server, null if this is the state of the board
-     * @throws IOException If the server disconnected
-     * @throws ClassNotFoundException If the server disconnected
+     * @return The cell number, -1 if not on the board
      */
-    private static String readFromServer() throws IOException, ClassNotFoundException {
+    private static int parseCell(char column, char row) {
+        if ( ( column < 'a' ) || ( 'h' < column ) || ( row < '1' ) || ( '8' < row ) )
+            return -1;
+        return (row - '1') * 8 + (column - 'a');
+    }
 
-        ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
-        Object abstract_message = ois.readObject();
+    /*
+     * Gives the code of the piece chosen for a promotion.
+     *
+     * @param name The name of the piece (queen/rook/bishop/knight)
+     * @return The code of the piece, Protocol.NONE if not recognised
+     */
+    private static int pieceCode(String name) {
+        for (int code=Protocol.KNIGHT; code<=Protocol.QUEEN; code++) {
+            if ( PIECE_NAMES[code].equals(name) )
+                return code;
+        }
+        return Protocol.NONE;
+    }
 
-        if ( abstract_message instanceof String ){
-            String from_server = (String) abstract_message;
-            /* Disconnect when an invalid move is in the file */
-            if ( ( file != null ) && ( from_server.equals("Invalid move") ) ) {
-                display("Incorrect move in file, please check. Disconnection processing...");
-                throw new IOException();
-            }
-            /* A heartbeat is sent from the server if something expected happened */
-            else if ( from_server.equalsIgnoreCase("HEARTBEAT") ){
-                throw new IOException();
-            }
-            /* If the game ends */
-            else if ( from_server.contains("unreachable") ||
-                    from_server.contains("Stalemate") ||
-                    from_server.contains("checkmate") ||
-                    from_server.contains("winner") ||
-                    from_server.contains("Draw") ){
-                display(from_server);
-                throw new IOException();
+    /*
+     * Gives the human understandable representation of an event without arguments.
+     */
+    private static String describe(byte code) {
+        return describe(new byte[]{ (byte) ((Frame.VERSION << 4) | Frame.EVENT), code });
+    }
+
+    /*
+     * Gives the human understandable representation of an event.
+     *
+     * @param event The event sent by the server
+     * @return The text to display, null if nothing to display
+     */
+    private static String describe(byte[] event) {
+        switch ( Protocol.code(event) ) {
+            case Protocol.WAITING_OPPONENT:
+                return "Waiting for another player... " + Protocol.arg(event, 0) + " minute timeout";
+            case Protocol.NO_OPPONENT:
+                return "You have been disconnect from the server, no other player joined the game";
+            case Protocol.OPPONENT_JOINED:
+                return "Another player has joined the game, be ready to play. You have " + Protocol.arg(event, 0)
+                        + " minutes allocated to each strike.";
+            case Protocol.COLOR:
+                return "You have been designated to be the " + Color.str(Protocol.arg(event, 0)) + " color";
+            case Protocol.YOUR_TURN:
+                return "That is your turn. Please enter a strike (format ex: a2-a3)...";
+            case Protocol.OPPONENT_TURN:
+                return "Waiting for your opponent to play... (any command except exit will be ignored)";
+            case Protocol.INVALID_MOVE:
+                return "Invalid move";
+            case Protocol.PROMOTION_REQUEST:
+                return "Promotion: choose a piece to replace your pawn on " + cellName(Protocol.arg(event, 0))
+                        + ": queen/rook/bishop/knight";
+            case Protocol.INVALID_PROMOTION:
+                return "Promotion: piece not recognised, please use the following format: queen/rook/bishop/knight";
+            case Protocol.MOVE_PLAYED:
+                return describeMove(event);
+            case Protocol.CHECKMATE:
+                return "The " + Color.str(Protocol.arg(event, 0)) + " player is in checkmate. The "
+                        + Color.str(Color.getOpponentColor(Protocol.arg(event, 0))) + " player wins !";
+            case Protocol.STALEMATE:
+                return "The " + Color.str(Protocol.arg(event, 0)) + " player cannot move and is not in check. Stalemate !";
+            case Protocol.TIMEOUT:
+                return "Timeout for strikes expired - " + Protocol.arg(event, 1) + " minutes. Game ends. Player "
+                        + Color.str(Protocol.arg(event, 0)) + " is the winner !";
+            case Protocol.OPPONENT_UNREACHABLE:
+                return "Player " + Color.str(Protocol.arg(event, 0))
+                        + " unreachable, the connection is corrupted. Game ends. You are the winner !";
+            case Protocol.DRAW_75_STRIKES:
+                return "Each player has played 50 strikes without eating any piece. Draw !";
+            case Protocol.DRAW_FIVE_REPETITIONS:
+                return "This game configuration already happened 5 times. Draw !";
+            case Protocol.ABORTED:
+                return "The game has been aborted by the server.";
+            default:
+                return null;
+        }
+    }
+
+    /*
+     * Gives the human understandable representation of a strike played.
+     *
+     * @param event The MOVE_PLAYED event
+     * @return The text to display
+     */
+    private static String describeMove(byte[] event) {
+        int move        = Protocol.readMove(event, 4);
+        int moved_piece = Protocol.movedPiece(event);
+        int eaten_piece = Protocol.eatenPiece(event);
+        int flags       = Protocol.flags(event);
+        String start_cell = cellName(Protocol.startCell(move));
+        String end_cell   = cellName(Protocol.endCell(move));
+        String message    = Protocol.strikeNumber(event) + ". " + colorName(moved_piece) + " ";
+
+        if ( ( flags & Protocol.LITTLE_CASTLING ) != 0 )
+            message += "king does a little castling from case " + start_cell + " to " + end_cell + ".";
+        else if ( ( flags & Protocol.BIG_CASTLING ) != 0 )
+            message += "king does a big castling from case " + start_cell + " to " + end_cell + ".";
+        else if ( eaten_piece == Protocol.NONE )
+            message += PIECE_NAMES[moved_piece & 7] + " moves from " + start_cell + " to " + end_cell + ".";
+        else
+            message += PIECE_NAMES[moved_piece & 7] + " on " + start_cell + " takes " + colorName(eaten_piece) + " "
+                    + PIECE_NAMES[eaten_piece & 7] + " on " + end_cell + ".";
+
+        if ( Protocol.promotion(move) != Protocol.NONE )
+            message += " The pawn on " + end_cell + " has been promoted to a " + PIECE_NAMES[Protocol.promotion(move)] + ".";
+        if ( ( flags & Protocol.CHECK ) != 0 )
+            message += " Check";
+
+        return message;
+    }
+
+    /*
+     * Gives the color of a piece from its code.
+     */
+    private static String colorName(int piece_code) {
+        return Color.str(( piece_code & Protocol.BLACK ) != 0 ? Color.BLACK : Color.WHITE);
+    }
+
+    /*
+     * Gives the human understandable representation of a cell, for example "a2".
+     */
+    private static String cellName(int cell) {
+        return (char) ('a' + cell % 8) + "" + (char) ('1' + cell / 8);
+    }
+
+    /*
+     * Write a frame to the server.
+     *
+     * @param frame The frame to send to the server
+     * @throws IOException If the server disconnected
+     */
+    private static void writeToServer(ByteBuffer frame) throws IOException {
+        Frame.write(to_server_stream, frame);
+    }
+
+    /*
+     * Read an event from the server. Launch the GUI is the server sends the
+     * state of the board.
+     *
+     * @return The event from the server, null if this is the state of the board
+     * @throws IOException If the server disconnected or the game ends
+     */
+    private static byte[] readFromServer() throws IOException {
+
+        byte[] frame = Frame.read(from_server_stream);
+
+        if ( Frame.kind(frame) == Frame.EVENT ){
+            switch ( Protocol.code(frame) ) {
+                /* Disconnect when an invalid move is in the file */
+                case Protocol.INVALID_MOVE:
+                    if ( file != null ) {
+                        display("Incorrect move in file, please check. Disconnection processing...");
+                        game_over = true;
+                        throw new IOException();
+                    }
+                    break;
+                /* A heartbeat is sent from the server if something expected happened */
+                case Protocol.HEARTBEAT:
+                    throw new IOException();
+                /* If the game ends */
+                case Protocol.NO_OPPONENT:
+                case Protocol.CHECKMATE:
+                case Protocol.STALEMATE:
+                case Protocol.TIMEOUT:
+                case Protocol.OPPONENT_UNREACHABLE:
+                case Protocol.DRAW_75_STRIKES:
+                case Protocol.DRAW_FIVE_REPETITIONS:
+                case Protocol.ABORTED:
+                    display(describe(frame));
+                    game_over = true;
+                    throw new IOException();
             }
 
-            return from_server;
+            return frame;
+        }
+        /* The credentials to rejoin the game if the server restarts */
+        else if ( Frame.kind(frame) == Frame.CREDENTIALS ) {
+            has_credentials = true;
+            game_id    = Protocol.gameId(frame);
+            game_token = Protocol.token(frame);
+            return null;
         }
         /* The message is the board sent by the server */
-        else if ( abstract_message instanceof char[][] ){
+        else if ( Frame.kind(frame) == Frame.BOARD ){
 
             /* Prevent from opening multiple window */
-            if ( (GUI_thread != null) && GUI_thread.isAlive() )
-                return "Please close the board window before opening a new one !";
+            if ( (GUI_thread != null) && GUI_thread.isAlive() ) {
+                display("Please close the board window before opening a new one !");
+                return null;
+            }
 
-            char[][] board = (char[][]) abstract_message;
+            char[][] board = Protocol.toBoard(frame);
 
             /* Launching a different thread to continue interacting with the user even if opened */
             GUI_thread = new Thread(() -> {
@@ -1,16 +1,32 @@
-import exceptions.Break75StrikeRuleException;
-import exceptions.FiveInHistoryException;
+import engine.Engine;
 import game.*;
+import network.Protocol;
+import network.Transport;
+import server.EventLog;
+import server.GameArchive;
+import server.GameStore;
+import server.Metrics;
+import server.MetricsEndpoint;
+import server.GameSession;
+import server.Lobby;
+import server.RecoveredGame;
+import server.Services;
+import server.Threads;
+import server.TimerWheel;
 import server_interpreter.*;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ThreadFactory;
+import javax.management.JMException;
 
 import static java.lang.System.exit;
 
@@ -22,8 +38,15 @@ public class Server {
 
     private static ServerInterpreter inputs;
     private static ServerSocket server_socket;
-    private static final int strike_timeout     = 600000; // 10 minutes
+    private static Transport transport;
+    private static EventLog events = EventLog.disabled();
+    private static Metrics metrics;
+    private static GameStore store = GameStore.disabled();
+    private static GameArchive archive = GameArchive.disabled();
+    private static Engine engine = null;
     private static final int connection_timeout = 60000;  // 1 minute
+    private static final int engine_table_size = 64;      // Megabytes of the transposition table of the engine
+    private static final int accept_backoff = 1000;       // Maximum delay in milliseconds before accepting again after a failure
 
 
 
@@ -41,111 +64,204 @@ public class Server {
             return;
         }
 
-        List<Player> players = connectServerAndPlayers();
-
-        /* Choose the color of the players, players.get(0) choose randomly, and notify the players */
-        int random_color = new Random().nextInt(2);
-        if ( random_color == Color.WHITE )
-            swap(players);
-        players.get(Color.BLACK).setColor(Color.BLACK);
-        players.get(Color.WHITE).setColor(Color.WHITE);
         try {
-            players.get(Color.BLACK).sendMessage("You have been designated to be the " + Color.str(Color.BLACK) + " color");
-            players.get(Color.WHITE).sendMessage("You have been designated to be the " + Color.str(Color.WHITE) + " color");
-        } catch (IOException ignored) {}
+            transport = new Transport();
+        } catch (IOException e) {
+            display("Unable to start the network transport: " + e.getMessage());
+            return;
+        }
+
+        /* The legal moves of the positions are cached for all the games, starting with the openings of the book */
+        PositionCache positions = new PositionCache(inputs.getPositionCacheSize() * (1L << 20));
+        File book = projectFile("conf/openings.txt");
+        if ( book.isFile() ) {
+            try {
+                display(positions.load(book) + " position(s) of the opening book cached");
+            } catch (IOException e) {
+                display("Unable to read the opening book: " + e.getMessage());
+            }
+        }
 
-        /* *********************************** Game Loop *********************************** */
-        Board board = new Board();
-        int color_to_play = Color.WHITE;
-        display("Game starts");
+        /* The engine plays against every client if requested */
+        if (inputs.getEngineTime() != null) {
+            engine = new Engine(engine_table_size, inputs.getEngineTime());
+            display("The clients play against the engine, " + inputs.getEngineTime() + " ms per strike");
+        }
 
+        /* The metrics are always recorded, exposed through JMX and served on a local port if requested */
+        metrics = new Metrics(transport, positions, engine);
         try {
+            metrics.registerMBean();
+        } catch (JMException e) {
+            display("Unable to expose the metrics through JMX: " + e.getMessage());
+        }
+        if (inputs.getMetricsPort() != null) {
+            try {
+                new MetricsEndpoint(metrics, inputs.getMetricsPort());
+                display("Metrics served on http://127.0.0.1:" + inputs.getMetricsPort() + "/metrics");
+            } catch (IOException e) {
+                display("Unable to serve the metrics: " + e.getMessage());
+            }
+        }
 
-            while (players.get(color_to_play).canPlay(board)) {
+        /* The verbose mode logs the events of the server in the log directory */
+        if (inputs.verboseIsActivated()) {
+            File directory = logDirectory();
+            try {
+                events = EventLog.open(directory);
+                Runtime.getRuntime().addShutdownHook(new Thread(events::close));
+                display("Events logged in " + directory.getPath());
+            } catch (IOException e) {
+                display("Unable to open the event log, the events are not logged: " + e.getMessage());
+            }
+        }
 
-                players.get(color_to_play).sendMessage("That is your turn. Please enter a strike (format ex: a2-a3)...");
-                players.get(Color.getOpponentColor(color_to_play)).sendMessage("Waiting for your opponent to play... (any command except exit will be ignored)");
+        /* The games are journaled in the log directory, the games in progress when the server stopped are rebuilt */
+        try {
+            store = GameStore.open(logDirectory());
+            display(store.recoveredGames().size() + " game(s) in progress recovered from the journal in "
+                    + store.getRecoveryTime() + " ms");
+        } catch (IOException e) {
+            display("Unable to open the journal of the games, the games are not kept: " + e.getMessage());
+        }
 
-                /* Reinitializing the timeout of the player */
-                players.get(color_to_play).setTimeout(strike_timeout);
+        /* The finished games are archived in the log directory */
+        try {
+            archive = GameArchive.open(logDirectory());
+            display(archive.size() + " game(s) archived");
+        } catch (IOException e) {
+            display("Unable to open the archive of the games, the games are not archived: " + e.getMessage());
+        }
+        Services services = new Services(new TimerWheel(), events, metrics, store, archive, positions, engine);
 
-                Strike strike = players.get(color_to_play).nextStrike(board);
+        if (inputs.multiGameIsActivated()) {
+            hostGames(services);
+            return;
+        }
 
-                while (!strike.isAllowed(board, players.get(color_to_play))) {
-                    players.get(color_to_play).sendMessage("Invalid move");
-                    strike = players.get(color_to_play).nextStrike(board);
-                }
+        List<Player> players = connectServerAndPlayers();
+        RecoveredGame recovered = store.resume(players);
 
-                String message = board.update(players, strike);
-                sendToPlayers(players, message);
-                //display(message); // Will be include in future verbose mode
-                color_to_play = Color.getOpponentColor(color_to_play);
-                //board.displayBoard(); // Will be include in future verbose mode
+        /* The game hosted is the only one which can resume, the other games in progress are abandoned */
+        for (RecoveredGame game : new ArrayList<>(store.recoveredGames())) {
+            store.abandon(game);
+            display("[game " + game.getId() + "] Abandoned, the players did not rejoin");
+        }
+        if ( recovered != null )
+            new GameSession(recovered, services).run();
+        else if ( players.get(0).isRejoining() || players.get(1).isRejoining() ) {
+            display("The players cannot rejoin a game together, the server will disconnect");
+            for (Player player : players) {
+                try {
+                    player.sendEvent(Protocol.ABORTED);
+                } catch (IOException ignored) {}
             }
+            disconnectPlayers(players);
+        }
+        else
+            new GameSession(store.nextGameId(), players, players.get(0).getTimeControl(), services).run();
 
-            String result = board.result(players.get(color_to_play));
-            sendToPlayers(players, result);
+        disconnectServer();
 
-        } catch (SocketTimeoutException e){ // If timeout expired
-            try {
-                /* A heartbeat need to be sent to make sure the player didn't disconnected while waiting */
-                players.get(Color.getOpponentColor(color_to_play)).sendMessage("heartbeat");
-            } catch (IOException ignored) {}
-            sendToPlayers(players, "Timeout for strikes expired - " + (strike_timeout/60000) + " minutes. Game ends. Player "
-                    +Color.str(Color.getOpponentColor(color_to_play))+" is the winner !");
-            display("Timeout expired - " + (strike_timeout/60000) + " minutes. Game ends. Player "
-                    +Color.str(Color.getOpponentColor(color_to_play))+" wins");
-        }
-        catch (IOException | ClassNotFoundException e) { // If someone disconnected
-            int alive_color = Color.BLACK;
-            try {
-                players.get(Color.BLACK).sendMessage("heartbeat");
-            } catch (IOException ignored) {
-                alive_color = Color.WHITE;
-            }
-            try {
-                players.get(alive_color).sendMessage("Player "+Color.str(Color.getOpponentColor(alive_color))+" unreachable, the connection is corrupted. Game ends. You are the winner !");
-            } catch (IOException ignored) {}
-            display("Player "+Color.str(Color.getOpponentColor(alive_color))+" is unreachable, the connection is corrupted. Game ends. Player "+Color.str(alive_color)+" wins.");
-        }
-        catch (Break75StrikeRuleException e) { // If the 75 strike rule applies
-            sendToPlayers(players, "Each player has played 50 strikes without eating any piece. Draw !");
-            display("Each player has played 50 strikes without eating any piece. Draw.");
-        } catch (FiveInHistoryException e) { // If the 76 hold rule applies
-            sendToPlayers(players, "This game configuration already happened 5 times. Draw !");
-            display("This game configuration already happened 5 times. Draw.");
+    }
+
+    /*
+     * Long-lived hosting mode: keeps accepting the clients and hands them over to the
+     * lobby, which pairs them and plays each game in its own thread.
+     */
+    private static void hostGames(Services services) {
+
+        try {
+            server_socket = openServerSocket(1024);
+        } catch (IOException e) {
+            display("Unable to host the games on " + inputs.getIp() + ":" + inputs.getPort() + ": " + e.getMessage());
+            disconnectServer();
+            return;
         }
 
-        disconnectPlayers(players);
-        disconnectServer();
+        ThreadFactory threads = Threads.platform("player");
+        if ( inputs.virtualThreadsAreActivated() ) {
+            threads = Threads.virtual("player");
+            if ( threads == null ) {
+                display("Virtual threads are not supported by this JVM (JDK 21+ required), platform threads are used");
+                threads = Threads.platform("player");
+            }
+        }
+        Lobby lobby = new Lobby(threads, transport, services, connection_timeout);
+        display("Chess server hosting games on " + inputs.getIp() + ":" + inputs.getPort());
 
+        int backoff = 0;
+        while (!server_socket.isClosed()) {
+            try {
+                lobby.join(server_socket.accept().getChannel());
+                backoff = 0;
+            } catch (IOException e) {
+                display("Unable to accept a connection: " + e.getMessage());
+                /* A failure which lasts, such as running out of file descriptors, is retried less and less often */
+                backoff = Math.min(Math.max(2*backoff, 10), accept_backoff);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
     }
 
     /*
-     * Swap the players. May be used when deciding the color.
+     * Open the socket of the server, bound to the address given in the command line. The
+     * socket is backed by a channel, so that the accepted connections can be handed over
+     * to the transport.
      *
-     * @param players The players
+     * @param backlog The maximum number of pending connections
+     * @return The socket of the server
+     * @throws IOException If the address cannot be bound
      */
-    private static void swap(List<Player> players) {
-        if ( players != null ) {
-            Player tmp = players.get(0);
-            players.set(0, players.get(1));
-            players.set(1, tmp);
-        }
+    private static ServerSocket openServerSocket(int backlog) throws IOException {
+        ServerSocket socket = ServerSocketChannel.open().socket();
+        socket.bind(new InetSocketAddress(InetAddress.getByName(inputs.getIp()), inputs.getPort()), backlog);
+        return socket;
     }
 
     /*
-     * Disconnect the server.
+     * Disconnect the server, once the messages already sent to the players are delivered.
      */
     private static void disconnectServer() {
         try {
-            if (server_socket != null)
+            if (server_socket != null) {
                 display("Disconnection...");
                 server_socket.close();
+            }
         } catch (IOException ignored) {}
+        transport.shutdown(1000);
+        store.close();
+        archive.close();
+        events.close();
         exit(0);
     }
 
+    /*
+     * Gives the log directory of the project, see projectFile(String).
+     */
+    private static File logDirectory() {
+        return projectFile("log");
+    }
+
+    /*
+     * Gives a file of the project, the binaries being in bin/classes/java/main, or the file of
+     * the working directory if the binaries are elsewhere.
+     */
+    private static File projectFile(String path) {
+        try {
+            File directory = new File(Server.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            for (int i=0; ( i<4 ) && ( directory != null ); i++)
+                directory = directory.getParentFile();
+            if ( ( directory != null ) && new File(directory, path).exists() )
+                return new File(directory, path);
+        } catch (URISyntaxException | SecurityException ignored) {}
+        return new File(path);
+    }
+
     /*
      * Disconnect the players.
      *
@@ -169,9 +285,10 @@ public class Server {
         List<Player> players;
 
         try {
-            server_socket = new ServerSocket(inputs.getPort(), 2, InetAddress.getByName(inputs.getIp()));
+            server_socket = openServerSocket(2);
             server_socket.setSoTimeout(connection_timeout);
         } catch (IOException e) {
+            display("Unable to host the game on " + inputs.getIp() + ":" + inputs.getPort() + ": " + e.getMessage());
             disconnectServer();
         }
 
@@ -185,7 +302,7 @@ public class Server {
     }
 
     /*
-     * Connect 2 players for the game to start.
+     * Connect 2 players for the game to start, or a player and the engine.
      *
      * @param server_socket The socket of the server
      * @return The connected players, null otherwise
@@ -198,24 +315,37 @@ public class Server {
             /* Connecting first player */
             display("Chess server listening on " + inputs.getIp() + ":" + inputs.getPort());
             Socket socket = server_socket.accept();
-            players.add(new Player(socket));
+            players.add(new Player(transport.register(socket.getChannel())));
             display("Client connected");
-            players.get(0).sendMessage("Waiting for another player... 1 minute timeout");
+            events.connection();
+            players.get(0).readJoin(connection_timeout);
+
+            /* The engine plays as the second player, right away */
+            if ( engine != null ) {
+                int strike_timeout = GameSession.strikeTimeout(players.get(0).getTimeControl());
+                players.add(engine.newPlayer(strike_timeout));
+                players.get(0).sendEvent(Protocol.OPPONENT_JOINED, strike_timeout/60000);
+                return players;
+            }
+            players.get(0).sendEvent(Protocol.WAITING_OPPONENT, connection_timeout/60000);
 
-            /* Connecting second player */
+            /* Connecting second player, the game is played with the time control of the first one */
             display("Chess server listening on " + inputs.getIp() + ":" + inputs.getPort());
             socket = server_socket.accept();
-            players.add(new Player(socket));
+            players.add(new Player(transport.register(socket.getChannel())));
             display("Client connected");
+            events.connection();
+            players.get(1).readJoin(connection_timeout);
 
-            players.get(0).sendMessage("Another player has joined the game, be ready to play. You have 10 minutes allocated to each strike.");
-            players.get(1).sendMessage("Another player has joined the game, be ready to play. You have 10 minutes allocated to each strike.");
+            int strike_timeout = GameSession.strikeTimeout(players.get(0).getTimeControl());
+            players.get(0).sendEvent(Protocol.OPPONENT_JOINED, strike_timeout/60000);
+            players.get(1).sendEvent(Protocol.OPPONENT_JOINED, strike_timeout/60000);
 
         } catch (IOException e) {
             if ( players.size() > 0 ) {
                 display("The player left the game, the server will disconnect");
                 try {
-                    players.get(0).sendMessage("You have been disconnect from the server, no other player joined the game");
+                    players.get(0).sendEvent(Protocol.NO_OPPONENT);
                 } catch (IOException ignored) {}
                 disconnectPlayers(players);
                 disconnectServer();
@@ -236,19 +366,4 @@ public class Server {
         System.out.flush();
     }
 
-    /*
-     * Sends a message to both players.
-     *
-     * @param players The players
-     * @param message The message to send
-     */
-    private static void sendToPlayers(List<Player> players, String message) {
-        for (Player player: players){
-            try {
-                player.sendMessage(message);
-            } catch (IOException ignored) {} // The client disconnected, nothing to do, the disconnections are already managed in the main
-        }
-    }
-
 }
-
@@ -9,6 +9,20 @@ public interface ClientInterpreter {
 
     FileReader getFile();
     Integer getPort();
+
+    /**
+     * The minutes per strike wanted for the game.
+     *
+     * @return The minutes, Protocol.ANY_TIME_CONTROL if not given
+     */
+    int getTimeControl();
+
+    /**
+     * The rating of the player, to be paired with a player of close rating.
+     *
+     * @return The rating, Protocol.NO_RATING if not given
+     */
+    int getRating();
     boolean verboseIsActivated();
     boolean helpIsActivated();
     String getHelper();
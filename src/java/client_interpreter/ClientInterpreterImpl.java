@@ -1,6 +1,7 @@
 package client_interpreter;
 
 import client_interpreter.ClientInterpreter;
+import network.Protocol;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -13,13 +14,15 @@ import java.util.Map;
  */
 public class ClientInterpreterImpl implements ClientInterpreter {
 
-    private static final String usage = "Usage: \tjava Client [-v] [-i ip_address] [-p port_value] [-f /path/to/file] [-h]";
+    private static final String usage = "Usage: \tjava Client [-v] [-i ip_address] [-p port_value] [-f /path/to/file] [-c minutes] [-r rating] [-h]";
     private static String error_message = null;
 
     /* Inputs */
     private FileReader file = null;
     private String ip       = null;
     private Integer port    = null;
+    private int time_control = Protocol.ANY_TIME_CONTROL;
+    private int rating       = Protocol.NO_RATING;
     private boolean verbose = false;
     private boolean help    = false;
 
@@ -40,32 +43,44 @@ public class ClientInterpreterImpl implements ClientInterpreter {
         arg_values.put("port", null);
         arg_values.put("-f", null);
         arg_values.put("file", null);
+        arg_values.put("-c", null);
+        arg_values.put("minutes", null);
+        arg_values.put("-r", null);
+        arg_values.put("rating", null);
         arg_values.put("-h", null);
 
-        /* (Bonus check) Max length 6, to avoid server latencies for nothing if
+        /* (Bonus check) Max length 12, to avoid server latencies for nothing if
         someone try to enter a large number of arguments. */
-        if (args.length > 8){
+        if (args.length > 12){
             error_message = usage;
             return;
         }
 
         /*
             Checks:
-                (1) Each inputs is one of -v, -i, -p, -h, -f, int (port range), [0.255].[0-255].[0-255].[0-255], any string
+                (1) Each inputs is one of -v, -i, -p, -h, -f, -c, -r, int (port range), [0.255].[0-255].[0-255].[0-255], any string,
+                    the values of -c and -r being int (minutes per strike in [1-255], rating in [1-65535])
                 (2) Only one input for each kind (see (1) for the list)
-                (3) Option -i must be followed by the ip address. Same for -p and the port, -f and the file
+                (3) Option -i must be followed by the ip address. Same for -p and the port, -f and the file, -c and the minutes, -r and the rating
                 (4) Check if the -i option is present if and only if an ip address is present. Same for -p and the port, -f and the file
          */
         for (int i=0; i<args.length; i++){
 
+            /* The values of -c and -r are given by the option before them */
+            String value_type = null;
+            if ( ( i > 0 ) && args[i-1].equals("-c") )
+                value_type = "minutes";
+            else if ( ( i > 0 ) && args[i-1].equals("-r") )
+                value_type = "rating";
+
             /* (1) */
-            if ( !valid(args[i])  ){
+            if ( ( value_type == null ) ? !valid(args[i]) : !validNumber(args[i], value_type.equals("minutes") ? 255 : 65535) ){
                 error_message = usage;
                 return;
             }
 
             /* (2) */
-            String type_arg = type(args[i]);
+            String type_arg = ( value_type == null ) ? type(args[i]) : value_type;
             if ( arg_values.get(type_arg) != null ){
                 error_message = usage;
                 return;
@@ -85,6 +100,10 @@ public class ClientInterpreterImpl implements ClientInterpreter {
                 error_message = usage;
                 return;
             }
+            else if ( ( type_arg.equals("-c") || type_arg.equals("-r") ) && (i==(args.length-1)) ){
+                error_message = usage;
+                return;
+            }
         }
 
         /* (4) */
@@ -124,6 +143,12 @@ public class ClientInterpreterImpl implements ClientInterpreter {
             } catch (FileNotFoundException e) { e.printStackTrace(); }
         }
 
+        if ( arg_values.get("minutes") != null )
+            time_control = Integer.parseInt(arg_values.get("minutes"));
+
+        if ( arg_values.get("rating") != null )
+            rating = Integer.parseInt(arg_values.get("rating"));
+
         if ( arg_values.get("-v") != null )
             verbose = true;
 
@@ -140,7 +165,8 @@ public class ClientInterpreterImpl implements ClientInterpreter {
      */
     private static String type(String arg) {
 
-        if ( arg.equals("-v") || arg.equals("-i") || arg.equals("-p") || arg.equals("-h") || arg.equals("-f")  )
+        if ( arg.equals("-v") || arg.equals("-i") || arg.equals("-p") || arg.equals("-h") || arg.equals("-f")
+                || arg.equals("-c") || arg.equals("-r") )
             return arg;
 
         String[] ips = arg.split("\\.");
@@ -174,7 +200,8 @@ public class ClientInterpreterImpl implements ClientInterpreter {
     private static boolean valid(String arg) {
 
         /* check if valid option */
-        if ( arg.equals("-v") || arg.equals("-i") || arg.equals("-p") || arg.equals("-h") || arg.equals("-f")  )
+        if ( arg.equals("-v") || arg.equals("-i") || arg.equals("-p") || arg.equals("-h") || arg.equals("-f")
+                || arg.equals("-c") || arg.equals("-r") )
             return true;
 
         /* check if valid port */
@@ -208,6 +235,22 @@ public class ClientInterpreterImpl implements ClientInterpreter {
         }
     }
 
+    /*
+     * Check if arg is a number in [1-max].
+     *
+     * @param arg the input
+     * @param max the maximum value
+     * @return validity
+     */
+    private static boolean validNumber(String arg, int max) {
+        try {
+            int value = Integer.parseInt(arg);
+            return ( 0 < value ) && ( value <= max );
+        } catch (NumberFormatException ignored) {
+            return false;
+        }
+    }
+
     @Override
     public FileReader getFile() {
         return file;
@@ -223,6 +266,16 @@ public class ClientInterpreterImpl implements ClientInterpreter {
         return port;
     }
 
+    @Override
+    public int getTimeControl() {
+        return time_control;
+    }
+
+    @Override
+    public int getRating() {
+        return rating;
+    }
+
     @Override
     public boolean verboseIsActivated() {
         return verbose;
@@ -245,6 +298,8 @@ public class ClientInterpreterImpl implements ClientInterpreter {
                 "\t-i: IP address of the interface to bind (by default 127.0.0.1)\n" +
                 "\t-p: Port for listening to connection (by default 2000)\n" +
                 "\t-f: Input file of a game\n" +
+                "\t-c: Minutes per strike wanted, to be paired with a player wanting the same (by default 10)\n" +
+                "\t-r: Rating of the player, to be paired with a player of close rating (by default none)\n" +
                 "\t-h: Helper";
     }
 
@@ -0,0 +1,87 @@
+package engine;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * This class is the chess engine of the server, playing against the players as one of them
+ * (see {@link EnginePlayer}). The players of the engine share its transposition table, and the
+ * engine counts the positions they search, so that the speed of the searches (nodes per
+ * second) gives the CPU to give to the games against the engine.
+ */
+public class Engine {
+
+    private final TranspositionTable table;
+    private final long think_time; // In milliseconds
+
+    private final LongAdder searches    = new LongAdder();
+    private final LongAdder nodes       = new LongAdder();
+    private final LongAdder search_time = new LongAdder(); // In nanoseconds
+
+
+    /**
+     * Initialize the engine.
+     *
+     * @param table_size The memory of the transposition table, in megabytes
+     * @param think_time The time to search each strike, in milliseconds
+     */
+    public Engine(int table_size, long think_time) {
+        this.table = new TranspositionTable((long) table_size << 20);
+        this.think_time = think_time;
+    }
+
+    /**
+     * Gives a new player of the engine. The engine thinks for its time per strike, at most half
+     * of the time of a strike, so that it plays before its clock runs out.
+     *
+     * @param strike_timeout The time of the players to play a strike, in milliseconds
+     * @return The player
+     */
+    public EnginePlayer newPlayer(long strike_timeout) {
+        return new EnginePlayer(new Search(this), Math.min(think_time, strike_timeout/2));
+    }
+
+    TranspositionTable getTable() {
+        return table;
+    }
+
+    /*
+     * Counts a search of a player.
+     *
+     * @param nb_nodes The number of positions searched
+     * @param time The time of the search, in nanoseconds
+     */
+    void searched(long nb_nodes, long time) {
+        searches.increment();
+        nodes.add(nb_nodes);
+        search_time.add(time);
+    }
+
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    /**
+     * Gives the time spent searching by the players of the engine.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getSearchTime() {
+        return search_time.sum();
+    }
+
+    /**
+     * Gives the speed of the searches since the server started.
+     *
+     * @return The positions searched per second, 0 if no search
+     */
+    public long getNodesPerSecond() {
+        long time = search_time.sum();
+        return ( time == 0 ) ? 0 : (long) ( nodes.sum() * 1e9 / time );
+    }
+
+}
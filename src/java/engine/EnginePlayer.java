@@ -0,0 +1,64 @@
+package engine;
+
+import game.Board;
+import game.Player;
+import game.Strike;
+import network.Protocol;
+
+
+/**
+ * This class is a player of the engine (see {@link Engine}), playing in the game loop as a
+ * connected player: its strikes come from a search of the board instead of a client, and the
+ * events of the game are not sent. The search is run by the thread of the game, within the
+ * time given by the engine, and is stopped if the clock of the player runs out.
+ */
+public class EnginePlayer extends Player {
+
+    private final Search search;
+    private final long think_time; // In milliseconds
+
+
+    EnginePlayer(Search search, long think_time) {
+        super(null);
+        this.search = search;
+        this.think_time = think_time;
+    }
+
+    /**
+     * Searches the best move of the board.
+     *
+     * @param board The board to consider
+     * @return The next strike, with the piece of a promotion
+     */
+    @Override
+    public Strike nextStrike(Board board) {
+        return new Strike(search.bestMove(board, think_time));
+    }
+
+    /**
+     * Chooses a queen, the strikes of the engine coming with the piece of their promotion.
+     *
+     * @param board The board to consider
+     * @return The code of the queen, see {@link Protocol}
+     */
+    @Override
+    public int readPromotion(Board board) {
+        return Protocol.QUEEN;
+    }
+
+    @Override
+    public void readJoin(int timeout) {}
+
+    /**
+     * Stops the search, the best move found so far being played.
+     */
+    @Override
+    public void flagFall() {
+        search.stop();
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+}
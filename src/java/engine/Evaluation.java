@@ -0,0 +1,120 @@
+package engine;
+
+import game.Board;
+import game.Color;
+
+
+/**
+ * This class scores a position for the engine, in hundredths of pawn: the material of each
+ * color and the squares of its pieces, from tables giving the usual good squares of each kind
+ * of piece (towards the center for the knights and the bishops, the pawns ahead, the king
+ * sheltered behind its pawns, or towards the center in the endgame).
+ */
+final class Evaluation {
+
+    /* Values of the pieces, indexed by kind, see Board */
+    static final int[] VALUES = { 100, 320, 330, 500, 900, 0 };
+
+    /* Material of the pieces but the pawns and the king below which a color is in the endgame */
+    private static final int ENDGAME_MATERIAL = 1300;
+
+    /*
+     * Bonuses of the squares for the white pieces, indexed by kind, the eighth rank first as
+     * seen by the white player. The squares of the black pieces are mirrored.
+     */
+    private static final int[][] SQUARES = {
+            {   0,   0,   0,   0,   0,   0,   0,   0,
+               50,  50,  50,  50,  50,  50,  50,  50,
+               10,  10,  20,  30,  30,  20,  10,  10,
+                5,   5,  10,  25,  25,  10,   5,   5,
+                0,   0,   0,  20,  20,   0,   0,   0,
+                5,  -5, -10,   0,   0, -10,  -5,   5,
+                5,  10,  10, -20, -20,  10,  10,   5,
+                0,   0,   0,   0,   0,   0,   0,   0 },
+            { -50, -40, -30, -30, -30, -30, -40, -50,
+              -40, -20,   0,   0,   0,   0, -20, -40,
+              -30,   0,  10,  15,  15,  10,   0, -30,
+              -30,   5,  15,  20,  20,  15,   5, -30,
+              -30,   0,  15,  20,  20,  15,   0, -30,
+              -30,   5,  10,  15,  15,  10,   5, -30,
+              -40, -20,   0,   5,   5,   0, -20, -40,
+              -50, -40, -30, -30, -30, -30, -40, -50 },
+            { -20, -10, -10, -10, -10, -10, -10, -20,
+              -10,   0,   0,   0,   0,   0,   0, -10,
+              -10,   0,   5,  10,  10,   5,   0, -10,
+              -10,   5,   5,  10,  10,   5,   5, -10,
+              -10,   0,  10,  10,  10,  10,   0, -10,
+              -10,  10,  10,  10,  10,  10,  10, -10,
+              -10,   5,   0,   0,   0,   0,   5, -10,
+              -20, -10, -10, -10, -10, -10, -10, -20 },
+            {   0,   0,   0,   0,   0,   0,   0,   0,
+                5,  10,  10,  10,  10,  10,  10,   5,
+               -5,   0,   0,   0,   0,   0,   0,  -5,
+               -5,   0,   0,   0,   0,   0,   0,  -5,
+               -5,   0,   0,   0,   0,   0,   0,  -5,
+               -5,   0,   0,   0,   0,   0,   0,  -5,
+               -5,   0,   0,   0,   0,   0,   0,  -5,
+                0,   0,   0,   5,   5,   0,   0,   0 },
+            { -20, -10, -10,  -5,  -5, -10, -10, -20,
+              -10,   0,   0,   0,   0,   0,   0, -10,
+              -10,   0,   5,   5,   5,   5,   0, -10,
+               -5,   0,   5,   5,   5,   5,   0,  -5,
+                0,   0,   5,   5,   5,   5,   0,  -5,
+              -10,   5,   5,   5,   5,   5,   0, -10,
+              -10,   0,   5,   0,   0,   0,   0, -10,
+              -20, -10, -10,  -5,  -5, -10, -10, -20 },
+            { -30, -40, -40, -50, -50, -40, -40, -30,
+              -30, -40, -40, -50, -50, -40, -40, -30,
+              -30, -40, -40, -50, -50, -40, -40, -30,
+              -30, -40, -40, -50, -50, -40, -40, -30,
+              -20, -30, -30, -40, -40, -30, -30, -20,
+              -10, -20, -20, -20, -20, -20, -20, -10,
+               20,  20,   0,   0,   0,   0,  20,  20,
+               20,  30,  10,   0,   0,  10,  30,  20 }
+    };
+
+    /* Bonuses of the squares for the white king in the endgame */
+    private static final int[] KING_ENDGAME_SQUARES = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10,   0,   0, -10, -20, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -30,   0,   0,   0,   0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50 };
+
+    private Evaluation() {}
+
+    /**
+     * Scores a position for the color to play.
+     *
+     * @param board The board to consider
+     * @return The score, positive if the color to play has the advantage
+     */
+    static int evaluate(Board board) {
+        int score = 0;
+        boolean endgame = ( material(board, Color.WHITE) <= ENDGAME_MATERIAL ) && ( material(board, Color.BLACK) <= ENDGAME_MATERIAL );
+        for (int color=0; color<2; color++) {
+            int sign = ( color == Color.WHITE ) ? 1 : -1;
+            int mirror = ( color == Color.WHITE ) ? 56 : 0; // The squares of the tables from a1
+            for (int kind=Board.PAWN; kind<=Board.KING; kind++) {
+                int[] squares = ( ( kind == Board.KING ) && endgame ) ? KING_ENDGAME_SQUARES : SQUARES[kind];
+                for (long pieces=board.getBitboard(color, kind); pieces != 0; pieces &= pieces - 1)
+                    score += sign*( VALUES[kind] + squares[Long.numberOfTrailingZeros(pieces) ^ mirror] );
+            }
+        }
+        return ( board.getSideToMove() == Color.WHITE ) ? score : -score;
+    }
+
+    /*
+     * Gives the material of a color, the pawns and the king aside.
+     */
+    private static int material(Board board, int color) {
+        int material = 0;
+        for (int kind=Board.KNIGHT; kind<=Board.QUEEN; kind++)
+            material += VALUES[kind]*Long.bitCount(board.getBitboard(color, kind));
+        return material;
+    }
+
+}
@@ -0,0 +1,493 @@
+package engine;
+
+import game.Board;
+import game.Color;
+import game.History;
+import game.Move;
+import game.MoveGenerator;
+import network.Protocol;
+
+import java.util.Arrays;
+
+
+/**
+ * This class looks for the best move of a position, for a player of the engine: an alpha-beta
+ * search deepened one ply at a time until the time given runs out, the best move of the last
+ * complete depth being played. Each depth is quick to search as the moves are ordered from
+ * the previous ones: the best move found for the position (see {@link TranspositionTable}),
+ * then the captures of the most valuable pieces by the least valuable ones, then the moves
+ * which refuted another move at the same ply (killer moves), then the moves which refuted
+ * the most moves so far (history). The moves after the first one are searched with a null
+ * window, and searched again only if they prove better (principal variation search).
+ * <p>
+ * At the end of the depth, the captures are searched until the position is quiet (quiescence
+ * search), so that a position is not scored in the middle of an exchange. A player in check
+ * is searched one ply deeper. A position repeated, in the search or from the positions of the
+ * game since the last pawn move or capture (see game.History), is scored as a draw.
+ * <p>
+ * The search plays on a clone of the board of the game (see Board#makeMove(int)), and does
+ * not allocate. A search is run by one thread at a time, but can be stopped by another one.
+ */
+public class Search {
+
+    public static final int MAX_DEPTH = 64;
+    private static final int MAX_PLY  = 128;
+
+    /* Scores: a mate in n plies is MATE - n */
+    static final int MATE             = 32000;
+    private static final int INFINITY = 32500;
+
+    private static final int NODES_BETWEEN_CHECKS = 2048; // Nodes searched between two readings of the time
+
+    /* Scores of the moves to order them */
+    private static final int TABLE_MOVE_SCORE = 1 << 30;
+    private static final int CAPTURE_SCORE    = 1 << 29;
+    private static final int KILLER_SCORE     = 1 << 28;
+    private static final int MAX_HISTORY      = 1 << 20;
+
+    private final Engine engine;
+    private final TranspositionTable table;
+
+    /* Buffers indexed by ply, so that the search does not allocate */
+    private final int[][] moves       = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+    private final int[][] move_scores = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+    private final int[][] killers     = new int[MAX_PLY][2];
+    private final long[] hashes       = new long[MAX_PLY]; // Positions of the search, to find the repetitions
+    private final int[][] history     = new int[2][64*64]; // Indexed by color, then starting and ending squares
+
+    /* Positions of the game which can repeat, an open addressing set of hashes filled for each search */
+    private static final int GAME_POSITIONS = 512;
+    private final long[] game_positions = new long[GAME_POSITIONS];
+    private int nb_game_positions = 0;
+
+    private Board board;
+    private long nodes;
+    private long deadline;       // In nanoseconds, as given by System.nanoTime()
+    private boolean timed_out;
+    private volatile boolean stopped = false;
+
+    private int depth_reached;
+    private int best_score;
+
+
+    Search(Engine engine, TranspositionTable table) {
+        this.engine = engine;
+        this.table = table;
+    }
+
+    /**
+     * Gives a new search for the engine.
+     *
+     * @param engine The engine, holding the transposition table and counting the nodes searched
+     */
+    public Search(Engine engine) {
+        this(engine, engine.getTable());
+    }
+
+    /**
+     * Stops the search for good: the current search returns its best move right away, and the
+     * next ones give the first legal move.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Looks for the best move of the color to play within a time.
+     *
+     * @param position The board of the game, which is not changed
+     * @param think_time The time to search, in milliseconds
+     * @return The best move, see {@link Move}, with the piece of a promotion
+     */
+    public int bestMove(Board position, long think_time) {
+        long start_time = System.nanoTime();
+        deadline = start_time + 1000000L*think_time;
+        return iterate(position, MAX_DEPTH, start_time + 500000L*think_time, start_time);
+    }
+
+    /**
+     * Looks for the best move of the color to play at a depth, whatever the time taken.
+     *
+     * @param position The board of the game, which is not changed
+     * @param depth The depth of the search, in plies, up to {@link #MAX_DEPTH}
+     * @return The best move, see {@link Move}, with the piece of a promotion
+     */
+    public int bestMoveAtDepth(Board position, int depth) {
+        long start_time = System.nanoTime();
+        deadline = Long.MAX_VALUE;
+        return iterate(position, Math.min(depth, MAX_DEPTH), Long.MAX_VALUE, start_time);
+    }
+
+    /**
+     * Gives the number of positions searched by the last search.
+     *
+     * @return The number of nodes
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gives the depth of the last complete iteration of the last search.
+     *
+     * @return The depth in plies
+     */
+    public int getDepth() {
+        return depth_reached;
+    }
+
+    /**
+     * Gives the score of the best move of the last search, for the color which played it.
+     *
+     * @return The score in hundredths of pawn, beyond {@link #MATE} minus the maximum depth for a mate
+     */
+    public int getScore() {
+        return best_score;
+    }
+
+    /*
+     * Searches deeper and deeper until the maximum depth, or until a depth ends after the soft
+     * limit of time, or until the deadline stops the depth being searched.
+     */
+    private int iterate(Board position, int max_depth, long soft_limit, long start_time) {
+        board = position.getClone();
+        setGamePositions(position.getHistory(), position.getHash());
+        nodes = 0;
+        timed_out = false;
+        depth_reached = 0;
+        for (int[] killer : killers)
+            killer[0] = killer[1] = 0;
+        for (int[] color_history : history) {
+            for (int i=0; i<color_history.length; i++)
+                color_history[i] >>= 2; // The history of the previous strikes is kept, but less trusted
+        }
+
+        int count = MoveGenerator.legalMoves(board, moves[0]);
+        int best_move = ( count > 0 ) ? moves[0][0] : -1;
+        best_score = 0;
+        for (int depth=1; ( depth <= max_depth ) && ( count > 1 ); depth++) {
+            int score = searchRoot(depth, count);
+            if ( timed_out || stopped )
+                break;
+            best_move = moves[0][0];
+            best_score = score;
+            depth_reached = depth;
+            if ( ( System.nanoTime() > soft_limit ) || ( Math.abs(score) >= MATE - MAX_PLY ) )
+                break;
+        }
+
+        engine.searched(nodes, System.nanoTime() - start_time);
+        return best_move;
+    }
+
+    /*
+     * Searches the moves of the root, the best one being moved first for the next depth.
+     *
+     * @return The score of the best move
+     */
+    private int searchRoot(int depth, int count) {
+        int[] root_moves = moves[0];
+        int alpha = -INFINITY;
+        hashes[0] = board.getHash();
+        for (int i=0; i<count; i++) {
+            int move = root_moves[i];
+            board.makeMove(move);
+            int score;
+            if ( i == 0 )
+                score = -search(depth - 1, -INFINITY, INFINITY, 1);
+            else {
+                score = -search(depth - 1, -alpha - 1, -alpha, 1);
+                if ( score > alpha )
+                    score = -search(depth - 1, -INFINITY, -alpha, 1);
+            }
+            board.unmakeMove();
+            if ( timed_out || stopped )
+                return alpha;
+            if ( score > alpha ) {
+                alpha = score;
+                System.arraycopy(root_moves, 0, root_moves, 1, i);
+                root_moves[0] = move;
+            }
+        }
+        table.store(hashes[0], root_moves[0], alpha, depth, TranspositionTable.EXACT);
+        return alpha;
+    }
+
+    /*
+     * Searches a position at a depth.
+     *
+     * @return The score for the color to play, at least beta if a move is too good for the
+     * opponent to let it be played, at most alpha if no move is better than alpha
+     */
+    private int search(int depth, int alpha, int beta, int ply) {
+        if ( interrupted() )
+            return 0;
+
+        /* A repetition of a position of the search or of the game is a draw, the player repeating having better */
+        long hash = board.getHash();
+        hashes[ply] = hash;
+        for (int i=ply-4; i>=0; i-=2) {
+            if ( hashes[i] == hash )
+                return 0;
+        }
+        if ( isGamePosition(hash) )
+            return 0;
+
+        int color = board.getSideToMove();
+        boolean in_check = board.isAttacked(board.kingSquare(color), Color.getOpponentColor(color));
+        if ( in_check )
+            depth++;
+        if ( ( depth <= 0 ) || ( ply >= MAX_PLY - 1 ) )
+            return quiescence(alpha, beta, ply);
+
+        /* The score of the position searched as deep already */
+        long data = table.probe(hash);
+        int table_move = 0;
+        if ( data != 0 ) {
+            table_move = TranspositionTable.move(data);
+            if ( TranspositionTable.depth(data) >= depth ) {
+                int score = fromTable(TranspositionTable.score(data), ply);
+                int bound = TranspositionTable.bound(data);
+                if ( ( bound == TranspositionTable.EXACT )
+                        || ( ( bound == TranspositionTable.LOWER ) && ( score >= beta ) )
+                        || ( ( bound == TranspositionTable.UPPER ) && ( score <= alpha ) ) )
+                    return score;
+            }
+        }
+
+        int count = MoveGenerator.legalMoves(board, moves[ply]);
+        if ( count == 0 )
+            return in_check ? -MATE + ply : 0;
+        scoreMoves(ply, count, table_move);
+
+        int original_alpha = alpha;
+        int best = -INFINITY;
+        int best_move = 0;
+        for (int i=0; i<count; i++) {
+            int move = pick(ply, i, count);
+            board.makeMove(move);
+            int score;
+            if ( i == 0 )
+                score = -search(depth - 1, -beta, -alpha, ply + 1);
+            else {
+                score = -search(depth - 1, -alpha - 1, -alpha, ply + 1);
+                if ( ( score > alpha ) && ( score < beta ) )
+                    score = -search(depth - 1, -beta, -alpha, ply + 1);
+            }
+            board.unmakeMove();
+            if ( timed_out || stopped )
+                return 0;
+
+            if ( score > best ) {
+                best = score;
+                best_move = move;
+                if ( score > alpha )
+                    alpha = score;
+                if ( alpha >= beta ) {
+                    if ( !isTactical(move) )
+                        refuted(move, color, depth, ply);
+                    break;
+                }
+            }
+        }
+
+        int bound = ( best >= beta ) ? TranspositionTable.LOWER : ( best > original_alpha ) ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        table.store(hash, best_move, toTable(best, ply), depth, bound);
+        return best;
+    }
+
+    /*
+     * Searches the captures and the promotions until the position is quiet, the color to play
+     * being able to stop the exchanges if the position is good enough (stand pat). All the
+     * moves are searched when in check.
+     */
+    private int quiescence(int alpha, int beta, int ply) {
+        if ( interrupted() )
+            return 0;
+
+        int color = board.getSideToMove();
+        boolean in_check = board.isAttacked(board.kingSquare(color), Color.getOpponentColor(color));
+        int best = -INFINITY;
+        if ( !in_check ) {
+            best = Evaluation.evaluate(board);
+            if ( ( best >= beta ) || ( ply >= MAX_PLY - 1 ) )
+                return best;
+            if ( best > alpha )
+                alpha = best;
+        }
+
+        int count = MoveGenerator.legalMoves(board, moves[ply]);
+        if ( count == 0 )
+            return in_check ? -MATE + ply : 0;
+        if ( ply >= MAX_PLY - 1 )
+            return 0;
+        scoreMoves(ply, count, 0);
+
+        for (int i=0; i<count; i++) {
+            int move = pick(ply, i, count);
+            if ( !in_check && !isTactical(move) )
+                break; // The captures and promotions come first
+            board.makeMove(move);
+            int score = -quiescence(-beta, -alpha, ply + 1);
+            board.unmakeMove();
+            if ( timed_out || stopped )
+                return 0;
+            if ( score > best ) {
+                best = score;
+                if ( score > alpha )
+                    alpha = score;
+                if ( alpha >= beta )
+                    break;
+            }
+        }
+        return best;
+    }
+
+    /*
+     * Keeps the positions of the game which can repeat, the board of the game being cloned
+     * without its history. The 75 strikes rule ending the game before, the positions since the
+     * last pawn move or capture fit in the set.
+     */
+    private void setGamePositions(History game_history, long root_hash) {
+        Arrays.fill(game_positions, 0);
+        nb_game_positions = 0;
+        addGamePosition(root_hash);
+        for (int i=0; i<game_history.getRepeatableCount(); i++)
+            addGamePosition(game_history.getRepeatable(i));
+    }
+
+    /*
+     * Keeps a position of the game, unless the set is half full.
+     */
+    private void addGamePosition(long hash) {
+        if ( ( hash == 0 ) || ( 2*( nb_game_positions + 1 ) > GAME_POSITIONS ) )
+            return;
+        int slot = (int) hash & ( GAME_POSITIONS - 1 );
+        while ( ( game_positions[slot] != 0 ) && ( game_positions[slot] != hash ) )
+            slot = ( slot + 1 ) & ( GAME_POSITIONS - 1 );
+        if ( game_positions[slot] == 0 ) {
+            game_positions[slot] = hash;
+            nb_game_positions++;
+        }
+    }
+
+    private boolean isGamePosition(long hash) {
+        int slot = (int) hash & ( GAME_POSITIONS - 1 );
+        while ( game_positions[slot] != 0 ) {
+            if ( game_positions[slot] == hash )
+                return true;
+            slot = ( slot + 1 ) & ( GAME_POSITIONS - 1 );
+        }
+        return false;
+    }
+
+    /*
+     * Counts a node, and tells whether the search has to stop: stopped by another thread, or
+     * deadline passed, the time being read every few nodes.
+     */
+    private boolean interrupted() {
+        if ( ( ++nodes % NODES_BETWEEN_CHECKS == 0 ) && ( System.nanoTime() > deadline ) )
+            timed_out = true;
+        return timed_out || stopped;
+    }
+
+    /*
+     * Scores the moves of a ply for their order: the move of the transposition table, the
+     * captures and promotions, the killer moves, then the others by their history.
+     */
+    private void scoreMoves(int ply, int count, int table_move) {
+        int[] ply_moves = moves[ply];
+        int[] scores = move_scores[ply];
+        int[] color_history = history[board.getSideToMove()];
+        for (int i=0; i<count; i++) {
+            int move = ply_moves[i];
+            if ( move == table_move )
+                scores[i] = TABLE_MOVE_SCORE;
+            else if ( isTactical(move) )
+                scores[i] = CAPTURE_SCORE + 16*( victimValue(move) + promotionValue(move) ) - Board.kind(board.getPiece(Move.start(move)));
+            else if ( move == killers[ply][0] )
+                scores[i] = KILLER_SCORE + 1;
+            else if ( move == killers[ply][1] )
+                scores[i] = KILLER_SCORE;
+            else
+                scores[i] = color_history[Move.start(move)*64 + Move.end(move)];
+        }
+    }
+
+    /*
+     * Gives the move of best score among the moves from an index, swapped to this index.
+     */
+    private int pick(int ply, int from, int count) {
+        int[] ply_moves = moves[ply];
+        int[] scores = move_scores[ply];
+        int best = from;
+        for (int i=from+1; i<count; i++) {
+            if ( scores[i] > scores[best] )
+                best = i;
+        }
+        int move = ply_moves[best];
+        ply_moves[best] = ply_moves[from];
+        ply_moves[from] = move;
+        int score = scores[best];
+        scores[best] = scores[from];
+        scores[from] = score;
+        return move;
+    }
+
+    /*
+     * Keeps a quiet move which refuted the move of the opponent, to try it first next time.
+     */
+    private void refuted(int move, int color, int depth, int ply) {
+        if ( killers[ply][0] != move ) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] color_history = history[color];
+        int index = Move.start(move)*64 + Move.end(move);
+        color_history[index] += depth*depth;
+        if ( color_history[index] > MAX_HISTORY ) {
+            for (int i=0; i<color_history.length; i++)
+                color_history[i] >>= 1;
+        }
+    }
+
+    private boolean isTactical(int move) {
+        return ( board.getPiece(Move.end(move)) != null ) || Move.isEnPassant(move) || ( Move.promotion(move) == Protocol.QUEEN );
+    }
+
+    /*
+     * Gives the value of the piece eaten by a move, in pawns.
+     */
+    private int victimValue(int move) {
+        if ( Move.isEnPassant(move) )
+            return 1;
+        if ( board.getPiece(Move.end(move)) == null )
+            return 0;
+        return Evaluation.VALUES[Board.kind(board.getPiece(Move.end(move)))] / 100;
+    }
+
+    private static int promotionValue(int move) {
+        return ( Move.promotion(move) == Protocol.QUEEN ) ? Evaluation.VALUES[Board.QUEEN] / 100 : 0;
+    }
+
+    /*
+     * The scores of the mates are stored in the transposition table from the position, not
+     * from the root of the search.
+     */
+    private static int toTable(int score, int ply) {
+        if ( score >= MATE - MAX_PLY )
+            return score + ply;
+        if ( score <= -MATE + MAX_PLY )
+            return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if ( score >= MATE - MAX_PLY )
+            return score - ply;
+        if ( score <= -MATE + MAX_PLY )
+            return score + ply;
+        return score;
+    }
+
+}
@@ -0,0 +1,89 @@
+package engine;
+
+
+/**
+ * This class is the transposition table of the engine, shared by all its searches: the best
+ * move and the score found for a position at a depth, so that a position reached again by
+ * another order of the moves, or by the next iteration, is not searched again. The table has
+ * a fixed size, a new entry replacing the one of its slot unless the slot holds the same
+ * position searched deeper.
+ * <p>
+ * The table takes no lock. An entry is two longs: the hash of the position (see
+ * game.Board#getHash()) mixed by exclusive or with the data, then the data. An entry written
+ * by two threads at the same time mixes the longs of both, and is rejected when read as its
+ * hash no longer matches: the table may lose entries, but never gives the data of another
+ * position.
+ * <p>
+ * The data packs the move (18 bits, see game.Move), the score (16 bits), the depth (8 bits)
+ * and the bound of the score (2 bits), never 0.
+ */
+class TranspositionTable {
+
+    /* Bounds of the scores */
+    static final int LOWER = 1; // The score is at least the one stored, a move was too good
+    static final int UPPER = 2; // The score is at most the one stored, no move was good enough
+    static final int EXACT = 3;
+
+    private final long[] entries;
+    private final int mask;
+
+
+    /**
+     * Initialize an empty table.
+     *
+     * @param bytes The memory of the table, rounded down to a power of 2 (16 bytes per entry)
+     */
+    TranspositionTable(long bytes) {
+        int capacity = Integer.highestOneBit((int) Math.min(Math.max(bytes / 16, 1), 1 << 30));
+        entries = new long[2*capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Gives the data of a position.
+     *
+     * @param hash The hash of the position
+     * @return The data, 0 if the position is not in the table
+     */
+    long probe(long hash) {
+        int slot = 2*( (int) hash & mask );
+        long data = entries[slot + 1];
+        return ( ( entries[slot] ^ data ) == hash ) ? data : 0;
+    }
+
+    /**
+     * Stores the result of the search of a position.
+     *
+     * @param hash The hash of the position
+     * @param move The best move, 0 if none
+     * @param score The score, between -32768 and 32767
+     * @param depth The depth of the search, from 0 to 255
+     * @param bound The bound of the score: {@link #LOWER}, {@link #UPPER} or {@link #EXACT}
+     */
+    void store(long hash, int move, int score, int depth, int bound) {
+        int slot = 2*( (int) hash & mask );
+        long previous = entries[slot + 1];
+        if ( ( ( entries[slot] ^ previous ) == hash ) && ( depth(previous) > depth ) )
+            return;
+        long data = ( move & 0x3FFFFL ) | ( (long) ( score & 0xFFFF ) << 18 ) | ( (long) depth << 34 ) | ( (long) bound << 42 );
+        entries[slot]     = hash ^ data;
+        entries[slot + 1] = data;
+    }
+
+    static int move(long data) {
+        return (int) ( data & 0x3FFFF );
+    }
+
+    static int score(long data) {
+        return (short) ( data >>> 18 );
+    }
+
+    static int depth(long data) {
+        return (int) ( data >>> 34 ) & 0xFF;
+    }
+
+    static int bound(long data) {
+        return (int) ( data >>> 42 ) & 0x3;
+    }
+
+}
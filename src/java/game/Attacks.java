@@ -0,0 +1,148 @@
+package game;
+
+
+/**
+ * This class gives the cells attacked by a piece, as bitboards (see {@link Board}). The attacks
+ * of the knights, kings and pawns are precomputed for each square. The attacks of the sliding
+ * pieces are computed from precomputed rays, stopping each ray at its first piece met.
+ */
+public final class Attacks {
+
+    /* Directions of the rays [vertical move, horizontal move], on the board of the bitboards (rank, file) */
+    private static final int[][] DIRECTIONS = { {1,0}, {1,1}, {0,1}, {-1,1}, {-1,0}, {-1,-1}, {0,-1}, {1,-1} };
+    private static final int NORTH = 0, NORTH_EAST = 1, EAST = 2, SOUTH_EAST = 3, SOUTH = 4, SOUTH_WEST = 5, WEST = 6, NORTH_WEST = 7;
+
+    private static final int[][] KNIGHT_MOVES = { {1,2}, {-1,2}, {1,-2}, {-1,-2}, {2,1}, {2,-1}, {-2,1}, {-2,-1} };
+
+    private static final long[] KNIGHT = new long[64];
+    private static final long[] KING   = new long[64];
+    private static final long[][] PAWN = new long[2][64];
+    private static final long[][] RAYS = new long[DIRECTIONS.length][64];
+
+    /* Cells strictly between two squares, and whole line through two squares, 0 if not aligned */
+    private static final long[][] BETWEEN = new long[64][64];
+    private static final long[][] LINE    = new long[64][64];
+
+    static {
+        for (int square=0; square<64; square++) {
+            int rank = square / 8;
+            int file = square % 8;
+            for (int[] move: KNIGHT_MOVES)
+                KNIGHT[square] |= bit(rank + move[0], file + move[1]);
+            for (int direction=0; direction<DIRECTIONS.length; direction++) {
+                KING[square] |= bit(rank + DIRECTIONS[direction][0], file + DIRECTIONS[direction][1]);
+                for (int i=1; i<8; i++)
+                    RAYS[direction][square] |= bit(rank + i*DIRECTIONS[direction][0], file + i*DIRECTIONS[direction][1]);
+            }
+            /* The white pawns go toward the eighth rank, the black ones toward the first rank */
+            PAWN[Color.WHITE][square] = bit(rank + 1, file - 1) | bit(rank + 1, file + 1);
+            PAWN[Color.BLACK][square] = bit(rank - 1, file - 1) | bit(rank - 1, file + 1);
+        }
+        for (int square=0; square<64; square++) {
+            for (int direction=0; direction<DIRECTIONS.length; direction++) {
+                long line = RAYS[direction][square] | RAYS[( direction + 4 ) % 8][square] | ( 1L << square );
+                for (long cells=RAYS[direction][square]; cells!=0; cells&=cells-1) {
+                    int other = Long.numberOfTrailingZeros(cells);
+                    BETWEEN[square][other] = RAYS[direction][square] & ~RAYS[direction][other] & ~( 1L << other );
+                    LINE[square][other]    = line;
+                }
+            }
+        }
+    }
+
+    private Attacks() {}
+
+    /*
+     * Gives the bit of a square from its rank and file, 0 if out of the board.
+     */
+    private static long bit(int rank, int file) {
+        if ( ( rank < 0 ) || ( 7 < rank ) || ( file < 0 ) || ( 7 < file ) )
+            return 0;
+        return 1L << ( rank * 8 + file );
+    }
+
+    public static long knight(int square) {
+        return KNIGHT[square];
+    }
+
+    public static long king(int square) {
+        return KING[square];
+    }
+
+    /**
+     * Gives the cells attacked by a pawn.
+     *
+     * @param color The color of the pawn
+     * @param square The square of the pawn
+     * @return The attacked cells
+     */
+    public static long pawn(int color, int square) {
+        return PAWN[color][square];
+    }
+
+    /**
+     * Gives the cells attacked by a rook, up to the first piece met in each direction.
+     *
+     * @param square The square of the rook
+     * @param occupancy The occupied cells of the board
+     * @return The attacked cells, including the cells of the pieces met
+     */
+    public static long rook(int square, long occupancy) {
+        return ray(NORTH, square, occupancy) | ray(EAST, square, occupancy)
+                | ray(SOUTH, square, occupancy) | ray(WEST, square, occupancy);
+    }
+
+    /**
+     * Gives the cells attacked by a bishop, up to the first piece met in each direction.
+     *
+     * @param square The square of the bishop
+     * @param occupancy The occupied cells of the board
+     * @return The attacked cells, including the cells of the pieces met
+     */
+    public static long bishop(int square, long occupancy) {
+        return ray(NORTH_EAST, square, occupancy) | ray(SOUTH_EAST, square, occupancy)
+                | ray(SOUTH_WEST, square, occupancy) | ray(NORTH_WEST, square, occupancy);
+    }
+
+    public static long queen(int square, long occupancy) {
+        return rook(square, occupancy) | bishop(square, occupancy);
+    }
+
+    /**
+     * Gives the cells strictly between two squares on a line, a column or a diagonal.
+     *
+     * @param square The first square
+     * @param other The second square
+     * @return The cells, 0 if the squares are not aligned
+     */
+    public static long between(int square, int other) {
+        return BETWEEN[square][other];
+    }
+
+    /**
+     * Gives the whole line, column or diagonal going through two squares.
+     *
+     * @param square The first square
+     * @param other The second square
+     * @return The cells, 0 if the squares are not aligned
+     */
+    public static long line(int square, int other) {
+        return LINE[square][other];
+    }
+
+    /*
+     * Gives the cells of a ray up to the first piece met. The rays going toward the eighth rank
+     * or the file h meet first their lowest square, the other ones their highest square.
+     */
+    private static long ray(int direction, int square, long occupancy) {
+        long ray = RAYS[direction][square];
+        long blockers = ray & occupancy;
+        if ( blockers == 0 )
+            return ray;
+        int blocker = ( direction <= EAST ) || ( direction == NORTH_WEST )
+                ? Long.numberOfTrailingZeros(blockers)
+                : 63 - Long.numberOfLeadingZeros(blockers);
+        return ray & ~RAYS[direction][blocker];
+    }
+
+}
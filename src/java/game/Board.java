@@ -2,10 +2,11 @@ package game;
 
 import exceptions.Break75StrikeRuleException;
 import exceptions.FiveInHistoryException;
+import network.Protocol;
 import pieces.*;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.function.Function;
 
@@ -13,20 +14,188 @@ import java.util.function.Function;
 /**
  * This class represents the board of the game. It manages some rules as the promotion of pawns to
  * lighten the code of the server.
- *
+ * <p>
+ * The position is held in bitboards, one 64 bits mask per color and kind of piece, the castling
+ * rights, the square where a pawn can be eaten in passing and the color to play being primitives.
+ * The pieces are also kept by square, so that the piece of a square is found without going
+ * through the bitboards.
  */
 public class Board {
 
     public static final int BOARD_HEIGHT = 8;
     public static final int BOARD_WIDTH = 8;
-    private final Piece[][] board = new Piece[BOARD_HEIGHT][BOARD_WIDTH];
+
+    /* Kinds of pieces, indexes of the bitboards, ordinals of the PieceType */
+    public static final int PAWN   = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK   = 3;
+    public static final int QUEEN  = 4;
+    public static final int KING   = 5;
+
+    /* Kinds of pieces in the Forsyth-Edwards Notation, indexed by kind */
+    private static final String FEN_PIECES = "pnbrqk";
+
+    /* The pieces, shared by all the boards, indexed by color and kind */
+    private static final Piece[][] PIECES = {
+            { new Pawn(Color.BLACK), new Knight(Color.BLACK), new Bishop(Color.BLACK), new Rook(Color.BLACK), new Queen(Color.BLACK), new King(Color.BLACK) },
+            { new Pawn(Color.WHITE), new Knight(Color.WHITE), new Bishop(Color.WHITE), new Rook(Color.WHITE), new Queen(Color.WHITE), new King(Color.WHITE) }
+    };
+
+    /* Castling rights, one bit per color and side */
+    public static final int WHITE_LITTLE_CASTLING = 1;
+    public static final int WHITE_BIG_CASTLING    = 2;
+    public static final int BLACK_LITTLE_CASTLING = 4;
+    public static final int BLACK_BIG_CASTLING    = 8;
+
+    /*
+     * Bitboards of the pieces, indexed by color then kind of piece. The bit i is set if
+     * a piece is on the square i, the squares being numbered from 0 (a1) to 63 (h8).
+     */
+    private final long[][] bitboards = new long[2][6];
+    private final long[] occupancy = new long[2];
+
+    /* The pieces indexed by square, kept in line with the bitboards */
+    private final Piece[] board = new Piece[BOARD_HEIGHT*BOARD_WIDTH];
+
+    private int castling_rights = WHITE_LITTLE_CASTLING | WHITE_BIG_CASTLING | BLACK_LITTLE_CASTLING | BLACK_BIG_CASTLING;
+    private int en_passant = -1; // Square a pawn passed over with its last double move, -1 if none
+    private int side_to_move = Color.WHITE;
+    private long hash = 0; // Zobrist hash of the position, updated with each change of the board
+
+    /*
+     * Undo records of the moves played with makeMove(), indexed by ply: the cells of the move,
+     * the cell of the eaten piece, the castling rights and the en passant square before the move.
+     * One more record than MAX_PLY as simulation() writes the record without playing a ply.
+     */
+    public static final int MAX_PLY = 256;
+    private final int[] undo_records = new int[MAX_PLY + 1];
+    private final Piece[] undo_eaten_pieces = new Piece[MAX_PLY + 1];
+    private final int[] undo_moves = new int[MAX_PLY + 1];               // The move for a whole ply, -1 for a single move
+    private final Piece[] undo_moved_pieces = new Piece[MAX_PLY + 1];   // The pawn of a promotion
+    private int ply = 0;
+
+    /*
+     * Castling rights lost when a piece leaves or reaches a square, indexed by square: the
+     * initial squares of the kings and of the rooks. While a right is kept, the king and the
+     * rook are on their initial squares, so only them can leave these squares.
+     */
+    private static final int[] LOST_CASTLING_RIGHTS = new int[BOARD_HEIGHT*BOARD_WIDTH];
+
+    static {
+        for (int color=0; color<2; color++){
+            int row = color*(BOARD_HEIGHT-1);
+            LOST_CASTLING_RIGHTS[square(row, 0)]             = castlingRight(color, false);
+            LOST_CASTLING_RIGHTS[square(row, BOARD_WIDTH-1)] = castlingRight(color, true);
+            LOST_CASTLING_RIGHTS[square(row, 4)]             = castlingRight(color, false) | castlingRight(color, true);
+        }
+    }
+
+    /* Legal moves of the color to play, listed on demand and invalidated by each move */
+    private LegalMoves legal_moves = null;
+    private PositionCache position_cache = null;
+
     private final History history= new History();
 
     private int strike_counter = 0;
     private int last_eaten_strike = 0;
+    private int last_move = 0; // Last move played by update(), promotion included
+
+    /**
+     * Gives the legal moves of the color to play. They are listed once per position, the first
+     * time they are asked, so that the strikes of a player are checked against the same list.
+     *
+     * @return The legal moves
+     */
+    public LegalMoves getLegalMoves() {
+        if ( legal_moves == null )
+            legal_moves = new LegalMoves();
+        if ( !legal_moves.isUpToDate() )
+            legal_moves.update(this, position_cache);
+        return legal_moves;
+    }
+
+    /**
+     * Gives the positions reached by the strikes played with {@link #update(List, Strike)}. A
+     * clone of the board has no history.
+     *
+     * @return The history
+     */
+    public History getHistory() {
+        return history;
+    }
+
+    /**
+     * Gives a cache of the positions, shared with other boards, where the legal moves are
+     * looked for before being listed, see {@link #getLegalMoves()}. A clone of the board does
+     * not use the cache.
+     *
+     * @param cache The cache, null for none
+     */
+    public void setPositionCache(PositionCache cache) {
+        position_cache = cache;
+    }
+
+    public PositionCache getPositionCache() {
+        return position_cache;
+    }
+
+    /**
+     * Gives the piece on a square.
+     *
+     * @param square The square, see {@link #square(int, int)}
+     * @return The piece, null if the square is empty
+     */
+    public Piece getPiece(int square) {
+        return board[square];
+    }
+
+    public long getBitboard(int color, int kind) {
+        return bitboards[color][kind];
+    }
+
+    public long getOccupancy(int color) {
+        return occupancy[color];
+    }
+
+    public long getOccupancy() {
+        return occupancy[Color.BLACK] | occupancy[Color.WHITE];
+    }
+
+    public int getCastlingRights() {
+        return castling_rights;
+    }
+
+    public int getEnPassant() {
+        return en_passant;
+    }
+
+    public int getSideToMove() {
+        return side_to_move;
+    }
+
+    public int getStrikeCounter() {
+        return strike_counter;
+    }
+
+    /**
+     * Gives the last move played with {@link #update(List, Strike)}, with the piece chosen
+     * for a promotion.
+     *
+     * @return The move, see {@link Move}
+     */
+    public int getLastMove() {
+        return last_move;
+    }
 
-    public Piece[][] getBoard() {
-        return board;
+    /**
+     * Gives the hash of the position: pieces, castling rights, possibility to eat in passing
+     * and color to play. Two boards in the same position have the same hash.
+     *
+     * @return The hash, see {@link Zobrist}
+     */
+    public long getHash() {
+        return hash;
     }
 
     /**
@@ -36,288 +205,610 @@ public class Board {
 
         /* Pawns */
         for (int j=0; j<BOARD_WIDTH; j++){
-            board[1][j] = new Pawn(Color.BLACK);
-            board[6][j]= new Pawn(Color.WHITE);
+            put(piece(PAWN, Color.BLACK), square(1, j));
+            put(piece(PAWN, Color.WHITE), square(6, j));
         }
 
         /* All pieces except pawns */
-        board[0][0] = new Rook(Color.BLACK);
-        board[0][7] = new Rook(Color.BLACK);
-        board[7][0] = new Rook(Color.WHITE);
-        board[7][7] = new Rook(Color.WHITE);
-        board[0][1] = new Knight(Color.BLACK);
-        board[0][6] = new Knight(Color.BLACK);
-        board[7][1] = new Knight(Color.WHITE);
-        board[7][6] = new Knight(Color.WHITE);
-        board[0][2] = new Bishop(Color.BLACK);
-        board[0][5] = new Bishop(Color.BLACK);
-        board[7][2] = new Bishop(Color.WHITE);
-        board[7][5] = new Bishop(Color.WHITE);
-        board[0][3] = new Queen(Color.BLACK);
-        board[0][4] = new King(Color.BLACK);
-        board[7][3] = new Queen(Color.WHITE);
-        board[7][4] = new King(Color.WHITE);
+        put(piece(ROOK, Color.BLACK), square(0, 0));
+        put(piece(ROOK, Color.BLACK), square(0, 7));
+        put(piece(ROOK, Color.WHITE), square(7, 0));
+        put(piece(ROOK, Color.WHITE), square(7, 7));
+        put(piece(KNIGHT, Color.BLACK), square(0, 1));
+        put(piece(KNIGHT, Color.BLACK), square(0, 6));
+        put(piece(KNIGHT, Color.WHITE), square(7, 1));
+        put(piece(KNIGHT, Color.WHITE), square(7, 6));
+        put(piece(BISHOP, Color.BLACK), square(0, 2));
+        put(piece(BISHOP, Color.BLACK), square(0, 5));
+        put(piece(BISHOP, Color.WHITE), square(7, 2));
+        put(piece(BISHOP, Color.WHITE), square(7, 5));
+        put(piece(QUEEN, Color.BLACK), square(0, 3));
+        put(piece(KING, Color.BLACK), square(0, 4));
+        put(piece(QUEEN, Color.WHITE), square(7, 3));
+        put(piece(KING, Color.WHITE), square(7, 4));
+
+        hash ^= Zobrist.castling(castling_rights);
+    }
+
+    /**
+     * Initialize the board in a position given in the Forsyth-Edwards Notation, for example
+     * "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1". The pieces are named in
+     * English in this notation. The counters of moves at the end are ignored.
+     *
+     * @param fen The position
+     * @throws IllegalArgumentException if the position is not valid
+     */
+    public Board(String fen) {
 
+        String[] fields = fen.trim().split("\\s+");
+        String[] rows   = fields[0].split("/");
+        if ( ( fields.length < 4 ) || ( rows.length != BOARD_HEIGHT ) )
+            throw new IllegalArgumentException("Invalid position: " + fen);
+
+        /* Pieces, from the eighth rank */
+        for (int i=0; i<BOARD_HEIGHT; i++){
+            int j = 0;
+            for (char c: rows[i].toCharArray()){
+                if ( ( '1' <= c ) && ( c <= '8' ) ) {
+                    j += c - '0';
+                    continue;
+                }
+                int kind = FEN_PIECES.indexOf(Character.toLowerCase(c));
+                if ( ( kind < 0 ) || ( BOARD_WIDTH <= j ) )
+                    throw new IllegalArgumentException("Invalid position: " + fen);
+                put(piece(kind, Character.isUpperCase(c) ? Color.WHITE : Color.BLACK), square(i, j++));
+            }
+            if ( j != BOARD_WIDTH )
+                throw new IllegalArgumentException("Invalid position: " + fen);
+        }
+        if ( ( Long.bitCount(bitboards[Color.WHITE][KING]) != 1 ) || ( Long.bitCount(bitboards[Color.BLACK][KING]) != 1 ) )
+            throw new IllegalArgumentException("Invalid position, one king per color expected: " + fen);
+
+        /* Color to play, castling rights and possibility to eat in passing */
+        if ( !fields[1].equals("w") && !fields[1].equals("b") )
+            throw new IllegalArgumentException("Invalid position: " + fen);
+        setSideToMove(fields[1].equals("w") ? Color.WHITE : Color.BLACK);
+        castling_rights = 0;
+        for (char c: fields[2].toCharArray()){
+            switch (c) {
+                case 'K': castling_rights |= WHITE_LITTLE_CASTLING; break;
+                case 'Q': castling_rights |= WHITE_BIG_CASTLING;    break;
+                case 'k': castling_rights |= BLACK_LITTLE_CASTLING; break;
+                case 'q': castling_rights |= BLACK_BIG_CASTLING;    break;
+                case '-': break;
+                default: throw new IllegalArgumentException("Invalid position: " + fen);
+            }
+        }
+        hash ^= Zobrist.castling(castling_rights);
+        if ( !fields[3].equals("-") ) {
+            if ( ( fields[3].length() != 2 ) || ( fields[3].charAt(0) < 'a' ) || ( 'h' < fields[3].charAt(0) )
+                    || ( fields[3].charAt(1) < '1' ) || ( '8' < fields[3].charAt(1) ) )
+                throw new IllegalArgumentException("Invalid position: " + fen);
+            setEnPassant(( fields[3].charAt(1) - '1' ) * BOARD_WIDTH + ( fields[3].charAt(0) - 'a' ));
+        }
     }
 
+    /*
+     * Copy a board, except the counters and the history. The pieces are shared, see {@link #piece(int, int)}.
+     *
+     * @param other The board to copy
+     */
+    private Board(Board other) {
+        for (int color=0; color<2; color++)
+            System.arraycopy(other.bitboards[color], 0, bitboards[color], 0, bitboards[color].length);
+        System.arraycopy(other.occupancy, 0, occupancy, 0, occupancy.length);
+        System.arraycopy(other.board, 0, board, 0, board.length);
+        castling_rights = other.castling_rights;
+        en_passant      = other.en_passant;
+        side_to_move    = other.side_to_move;
+        hash            = other.hash;
+    }
 
     /**
-     * This function update the board by playing the strike. It also update the attribute of the pieces 
-     * (in_passing, can_castle, has_moved). A promotion step is done if necessary (a pawn reached the
+     * Gives the square of a cell, as used by the bitboards.
+     *
+     * @param row The row on the board, 0 being the eighth rank
+     * @param column The column on the board, 0 being the file a
+     * @return The square, from 0 (a1) to 63 (h8)
+     */
+    public static int square(int row, int column) {
+        return (BOARD_HEIGHT - 1 - row) * BOARD_WIDTH + column;
+    }
+
+    public static int row(int square) {
+        return BOARD_HEIGHT - 1 - square / BOARD_WIDTH;
+    }
+
+    public static int column(int square) {
+        return square % BOARD_WIDTH;
+    }
+
+    /**
+     * Gives the bit of a cell in the bitboards.
+     *
+     * @param row The row on the board
+     * @param column The column on the board
+     * @return The bitboard with only this cell set
+     */
+    public static long bit(int row, int column) {
+        return 1L << square(row, column);
+    }
+
+    /**
+     * Gives the kind of a piece, index of its bitboard.
+     *
+     * @param piece The piece
+     * @return The kind of the piece, the ordinal of its type
+     */
+    public static int kind(Piece piece) {
+        return piece.getType().ordinal();
+    }
+
+    /**
+     * Gives the piece of a kind and a color. The pieces are immutable, so a single instance of
+     * each is shared by all the boards.
+     *
+     * @param kind The kind of the piece, see {@link #PAWN}...
+     * @param color The color of the piece
+     * @return The piece
+     */
+    public static Piece piece(int kind, int color) {
+        return PIECES[color][kind];
+    }
+
+    /*
+     * Put a piece on an empty square.
+     */
+    private void put(Piece piece, int square) {
+        long bit = 1L << square;
+        int color = piece.getColor();
+        int kind  = kind(piece);
+        bitboards[color][kind] |= bit;
+        occupancy[color] |= bit;
+        board[square] = piece;
+        hash ^= Zobrist.piece(color, kind, square);
+    }
+
+    /*
+     * Remove the piece of a square, if any.
+     *
+     * @return The removed piece, null if the square was empty
+     */
+    private Piece remove(int square) {
+        Piece piece = board[square];
+        if ( piece != null ) {
+            long bit = 1L << square;
+            int color = piece.getColor();
+            int kind  = kind(piece);
+            bitboards[color][kind] &= ~bit;
+            occupancy[color] &= ~bit;
+            board[square] = null;
+            hash ^= Zobrist.piece(color, kind, square);
+        }
+        return piece;
+    }
+
+    /**
+     * Checks whether a color can still castle on a side. The right is lost once the king
+     * or the rook of this side moved, or the rook has been eaten.
+     *
+     * @param color The color to consider
+     * @param little true for the little castling (king side), false for the big one
+     * @return A boolean for the purpose
+     */
+    public boolean canCastle(int color, boolean little) {
+        return ( castling_rights & castlingRight(color, little) ) != 0;
+    }
+
+    /*
+     * Changes the castling rights, keeping the hash up to date.
+     */
+    private void setCastlingRights(int castling_rights) {
+        hash ^= Zobrist.castling(this.castling_rights) ^ Zobrist.castling(castling_rights);
+        this.castling_rights = castling_rights;
+    }
+
+    /*
+     * Changes the square where a pawn can be eaten in passing, keeping the hash up to date.
+     */
+    private void setEnPassant(int en_passant) {
+        hash ^= Zobrist.enPassant(this.en_passant) ^ Zobrist.enPassant(en_passant);
+        this.en_passant = en_passant;
+    }
+
+    /*
+     * Changes the color to play, keeping the hash up to date.
+     */
+    private void setSideToMove(int side_to_move) {
+        hash ^= Zobrist.sideToPlay(this.side_to_move) ^ Zobrist.sideToPlay(side_to_move);
+        this.side_to_move = side_to_move;
+    }
+
+    /*
+     * Gives the bit of a castling right.
+     */
+    private static int castlingRight(int color, boolean little) {
+        if ( color == Color.WHITE )
+            return little ? WHITE_LITTLE_CASTLING : WHITE_BIG_CASTLING;
+        return little ? BLACK_LITTLE_CASTLING : BLACK_BIG_CASTLING;
+    }
+
+    /**
+     * Gives the square of the king of a color.
+     *
+     * @param color The color to consider
+     * @return The square of the king
+     */
+    public int kingSquare(int color) {
+        return Long.numberOfTrailingZeros(bitboards[color][KING]);
+    }
+
+    /**
+     * Checks whether a square is attacked by a piece of a color. The pieces able to attack the
+     * square are looked for from the square itself, with the attack tables of {@link Attacks}.
+     *
+     * @param square The square to consider, see {@link #square(int, int)}
+     * @param by_color The color of the attacking pieces
+     * @return A boolean for the purpose
+     */
+    public boolean isAttacked(int square, int by_color) {
+        long[] pieces = bitboards[by_color];
+        long occupied = getOccupancy();
+
+        /* A pawn of the attacking color attacks the square if a pawn of the other color on the square would attack it */
+        return ( ( Attacks.pawn(Color.getOpponentColor(by_color), square) & pieces[PAWN] ) != 0 )
+                || ( ( Attacks.knight(square) & pieces[KNIGHT] ) != 0 )
+                || ( ( Attacks.king(square) & pieces[KING] ) != 0 )
+                || ( ( Attacks.rook(square, occupied) & ( pieces[ROOK] | pieces[QUEEN] ) ) != 0 )
+                || ( ( Attacks.bishop(square, occupied) & ( pieces[BISHOP] | pieces[QUEEN] ) ) != 0 );
+    }
+
+
+    /**
+     * Gives the pieces of a color attacking a square, as {@link #isAttacked(int, int)} but
+     * listing all of them, with a given occupancy of the board.
+     *
+     * @param square The square to consider
+     * @param by_color The color of the attacking pieces
+     * @param occupied The occupied cells stopping the sliding pieces
+     * @return The bitboard of the attacking pieces
+     */
+    public long attackers(int square, int by_color, long occupied) {
+        long[] pieces = bitboards[by_color];
+        return ( Attacks.pawn(Color.getOpponentColor(by_color), square) & pieces[PAWN] )
+                | ( Attacks.knight(square) & pieces[KNIGHT] )
+                | ( Attacks.king(square) & pieces[KING] )
+                | ( Attacks.rook(square, occupied) & ( pieces[ROOK] | pieces[QUEEN] ) )
+                | ( Attacks.bishop(square, occupied) & ( pieces[BISHOP] | pieces[QUEEN] ) );
+    }
+
+    /**
+     * This function update the board by playing the strike. It also update the castling rights, the
+     * possibility to eat in passing and the color to play. A promotion step is done if necessary (a pawn reached the
      * other side of the board). It finally checks that no draw rules are broken (75 moves, 5 hold).
      *
      * @param players The players
      * @param strike The to play by one of the player
-     * @return The message to send to the players
+     * @return The event to send to the players
      * @throws IOException if a player is unreachable
-     * @throws ClassNotFoundException if a player is unreachable
      * @throws Break75StrikeRuleException if there is a breach of the 75 strike rule
      * @throws FiveInHistoryException if there is a breach of 5 hold rule
      */
-    public String update(List<Player> players, Strike strike) throws IOException, ClassNotFoundException, Break75StrikeRuleException, FiveInHistoryException {
+    public ByteBuffer update(List<Player> players, Strike strike) throws IOException, Break75StrikeRuleException, FiveInHistoryException {
 
         strike_counter++;
 
         /* Initializing variables */
-        List<List<Integer>> start_cells = strike.getStartCells();
-        List<List<Integer>> end_cells   = strike.getEndCells();
-        Piece moved_piece = board[start_cells.get(0).get(0)][start_cells.get(0).get(1)];
+        int start_square = strike.getStartSquare();
+        int end_square   = strike.getEndSquare();
+        Piece moved_piece = getPiece(start_square);
         Player player = players.get(moved_piece.getColor());
-        String message;
-
-        /* In passing pawn updates */
-        updateInPassing(player.getColor());
-
-        /* Play the move */
-        Piece eaten_piece = playMoves(start_cells, end_cells);
-
-        /* Generate the message for the players */
-        String str_start_cell = ((char) (start_cells.get(0).get(1)+'a'))+""+((char) (BOARD_HEIGHT-1-start_cells.get(0).get(0)+'1'));
-        String str_end_cell   = ((char) (end_cells.get(0).get(1)+'a'))+""+((char) (BOARD_HEIGHT-1-end_cells.get(0).get(0)+'1'));
-        if ( strike.getStrStrike().equals("0-0") )
-            message =  strike_counter+". " +Color.str(moved_piece.getColor())+
-                    " king does a little castling from case "+str_start_cell+" to "+str_end_cell+".";
-        else if ( strike.getStrStrike().equals("0-0-0") )
-            message = strike_counter+". " +Color.str(moved_piece.getColor())+
-                    " king does a big castling from case "+str_start_cell+" to "+str_end_cell+".";
-        else if ( eaten_piece == null )
-            message =  strike_counter + ". " + Color.str(moved_piece.getColor()) + " " +
-                    moved_piece.str() + " moves from " + str_start_cell + " to " + str_end_cell+".";
-        else {
-            last_eaten_strike = strike_counter;
-            message = strike_counter + ". " + Color.str(moved_piece.getColor()) + " " +
-                    moved_piece.str() + " on " + str_start_cell + " takes " + Color.str(eaten_piece.getColor()) +
-                    " " + eaten_piece.str() + " on " + str_end_cell + ".";
+        int flags = 0;
+        int promotion = Protocol.NONE;
+
+        /* Play the move, and the rook for the castlings */
+        Piece eaten_piece = simulation(start_square, end_square);
+
+        if ( strike.isCastling() ) {
+            int rook_start = castlingRookStart(end_square);
+            int rook_end   = ( start_square + end_square ) / 2;
+            put(remove(rook_start), rook_end);
+            flags |= ( column(end_square) == BOARD_WIDTH - 2 ) ? Protocol.LITTLE_CASTLING : Protocol.BIG_CASTLING;
         }
+        else if ( eaten_piece != null )
+            last_eaten_strike = strike_counter;
 
         /* Promotion */
-        if ( moved_piece.str().equals("pawn") &&
-                ((( player.getColor() == Color.BLACK ) && ( end_cells.get(0).get(0) == BOARD_HEIGHT ))
-                        || (( player.getColor() == Color.WHITE ) && ( end_cells.get(0).get(0) == 0 )) ))
-            message += promotion(player, end_cells.get(0));
+        if ( isPromotion(moved_piece, end_square) )
+            promotion = promotion(player, strike.getPromotion(), end_square);
+
+        setSideToMove(Color.getOpponentColor(player.getColor()));
 
         /* Check */
         if ( players.get(Color.getOpponentColor(player.getColor())).isInCheck(this) )
-            message += " Check";
+            flags |= Protocol.CHECK;
+
+        /* Generate the event for the players */
+        int move = Protocol.move(start_square, end_square, promotion);
+        last_move = move;
+        ByteBuffer event = Protocol.movePlayed(strike_counter, move, code(moved_piece), code(eaten_piece), flags);
 
         /* Check if no piece eaten for 75 'moves' (1 move here is 2 strikes, one for each player) */
         if ( ( strike_counter - last_eaten_strike ) == 150 ) {
             for ( Player p: players  )
-                p.sendMessage(message);
+                p.send(event);
             throw new Break75StrikeRuleException();
         }
 
         /* Check if  the configuration of the game didn't already happened 5 times */
-        history.add(this.getClone());
-        if ( history.FiveInHistory(this, moved_piece.getColor()) ) {
+        history.add(hash, ( eaten_piece != null ) || ( kind(moved_piece) == PAWN ));
+        if ( history.FiveInHistory(hash) ) {
             for ( Player p: players  )
-                p.sendMessage(message);
+                p.send(event);
             throw new FiveInHistoryException();
         }
 
-        return message;
+        return event;
 
     }
 
+    /*
+     * Gives the code of a piece in the protocol.
+     *
+     * @param piece The piece, may be null
+     * @return The code of the piece, with its color
+     */
+    private static int code(Piece piece) {
+        if ( piece == null )
+            return Protocol.NONE;
+        int code = Protocol.PAWN + kind(piece);
+        return ( piece.getColor() == Color.BLACK ) ? ( code | Protocol.BLACK ) : code;
+    }
+
     /**
-     * This function takes care of promoting a pawn if the pawn reached the other side
-     * of the board.
+     * Gives the strike with the piece of its promotion if it promotes a pawn, the player
+     * being asked for the piece until valid if the strike did not include a valid one. The
+     * board is left unchanged, so that the choice is made before {@link #update(List, Strike)}
+     * and timed with the strike.
      *
-     * @param player The player owning the pawn
-     * @param end_cell The cell where the pawn is moving
-     * @return The promotion message
+     * @param player The player playing the strike
+     * @param strike The strike, allowed
+     * @return The strike with a valid piece of promotion, the strike itself if no pawn is promoted
      * @throws IOException if the player is unreachable
-     * @throws ClassNotFoundException if the player is unreachable
-     */
-    private String promotion(Player player, List<Integer> end_cell) throws IOException, ClassNotFoundException {
-
-        String str_end_cell   = ((char) (end_cell.get(1)+'a'))+""+((char) (BOARD_HEIGHT-end_cell.get(0)+'1'));
-        player.sendMessage("Promotion: choose a piece to replace your pawn on "+str_end_cell+": queen/rook/bishop/knight");
-        Piece elected = null;
-
-        while ( elected == null  ) {
-            String choice = player.readFromClient();
-            switch (choice) {
-                case "queen":
-                    elected = new Queen(player.getColor());
-                    break;
-                case "rook":
-                    elected = new Rook(player.getColor());
-                    ((Rook) elected).setCanCastle(false);
-                    break;
-                case "bishop":
-                    elected = new Bishop(player.getColor());
-                    break;
-                case "knight":
-                    elected = new Knight(player.getColor());
-                    break;
-                default:
-                    player.sendMessage("Promotion: piece not recognised, please use the following format: queen/rook/bishop/knight");
-                    break;
-            }
-        }
+     */
+    public Strike choosePromotion(Player player, Strike strike) throws IOException {
+        int end_square = strike.getEndSquare();
+        if ( !isPromotion(getPiece(strike.getStartSquare()), end_square) )
+            return strike;
+        int choice = strike.getPromotion();
+        if ( isPromotionPiece(choice) )
+            return strike;
+        return new Strike(Move.of(strike.getStartSquare(), end_square, promotionChoice(player, choice, end_square)));
+    }
 
-        board[end_cell.get(0)][end_cell.get(1)] = elected;
+    /*
+     * Tells whether a piece moving to a square is a pawn reaching the other side of the board.
+     */
+    private static boolean isPromotion(Piece moved_piece, int end_square) {
+        return ( kind(moved_piece) == PAWN ) &&
+                ((( moved_piece.getColor() == Color.BLACK ) && ( row(end_square) == BOARD_HEIGHT-1 ))
+                        || (( moved_piece.getColor() == Color.WHITE ) && ( row(end_square) == 0 )) );
+    }
 
-        return " The pawn on "+str_end_cell+" has been promoted to a "+elected.str()+".";
+    /*
+     * Tells whether the code of a piece is the one of a piece replacing a pawn.
+     */
+    private static boolean isPromotionPiece(int code) {
+        return ( code == Protocol.QUEEN ) || ( code == Protocol.ROOK ) || ( code == Protocol.BISHOP ) || ( code == Protocol.KNIGHT );
     }
 
     /**
-     * Play all the moves of a strike. A strike includes two moves for the rocks.
+     * This function takes care of promoting a pawn if the pawn reached the other side
+     * of the board. The player is asked for the piece if the strike did not include it.
      *
-     * @param start_cells Starting cells to consider
-     * @param end_cells Ending cells to consider
-     * @return The eaten piece (null by default)
+     * @param player The player owning the pawn
+     * @param choice The code of the piece chosen with the strike, Protocol.NONE if none
+     * @param end_square The square where the pawn is moving
+     * @return The code of the elected piece
+     * @throws IOException if the player is unreachable
      */
-    private Piece playMoves(List<List<Integer>> start_cells, List<List<Integer>> end_cells) {
-
-        Piece eaten_piece = null;
-
-        for (int i=0; i<start_cells.size(); i++){
-            List<Integer> start_cell = start_cells.get(i);
-            List<Integer> end_cell   = end_cells.get(i);
-            eaten_piece = simulation(start_cell, end_cell);
-        }
-
-        return eaten_piece;
+    private int promotion(Player player, int choice, int end_square) throws IOException {
+        choice = promotionChoice(player, choice, end_square);
+        remove(end_square);
+        put(piece(choice - 1, player.getColor()), end_square);
+        return choice;
     }
 
-    /**
-     * Update attribute "in_passing" of the pawn: the piece cannot be eaten "in_passing" anymore when
-     * the turn comes back to the player again
+    /*
+     * Asks the player for the piece of a promotion until valid, unless the choice made with
+     * the strike is valid.
      *
-     * @param color Color to consider
-     */
-    private void updateInPassing(int color) {
-        List<List<Integer>> piece_cells = fetchPieces(color);
-        for (List<Integer> piece_cell: piece_cells){
-            Piece piece = board[piece_cell.get(0)][piece_cell.get(1)];
-            if ( piece.str().equals("pawn") && ( ((Pawn) piece).isInPassing() ) && (((Pawn) piece).hasMoved()) )
-                ((Pawn) piece).setInPassing(false);
+     * @param choice The code of the piece chosen with the strike, Protocol.NONE if none
+     * @return The code of the elected piece
+     * @throws IOException if the player is unreachable
+     */
+    private int promotionChoice(Player player, int choice, int end_square) throws IOException {
+        if ( choice == Protocol.NONE )
+            player.sendEvent(Protocol.PROMOTION_REQUEST, end_square);
+        while ( true ) {
+            if ( choice == Protocol.NONE )
+                choice = player.readPromotion(this);
+            if ( isPromotionPiece(choice) )
+                return choice;
+            player.sendEvent(Protocol.INVALID_PROMOTION);
+            choice = Protocol.NONE;
         }
     }
 
-
     /**
      * Return the result (checkmate/stalemate) of the game when a player cannot move anymore.
      *
      * @param player The player which cannot move anymore
-     * @return A string representing the result
+     * @return The code of the event representing the result, Protocol.CHECKMATE or Protocol.STALEMATE
      */
-    public String result(Player player) {
-        if ( player.isInCheck(this) )
-            return "The "+Color.str(player.getColor())+" player is in checkmate. The "+
-                    Color.str(Color.getOpponentColor(player.getColor()))+" player wins !";
-        return "The "+Color.str(player.getColor())+" player cannot move and is not in check. Stalemate !";
+    public byte result(Player player) {
+        if ( ( player.getColor() == side_to_move ) ? getLegalMoves().isInCheck() : player.isInCheck(this) )
+            return Protocol.CHECKMATE;
+        return Protocol.STALEMATE;
     }
 
     /**
-     * Fetching the cells on the board of the pieces for a given color.
+     * Gets a clone of the board. Useful to keep a position. Do not copy the counter and
+     * the history as not useful for the purpose. To check the consequences of a move, prefer {@link #makeMove(int, int)} which does not allocate.
      *
-     * @param color The color to consider
-     * @return A list of the cells
+     * @return The cloned board
      */
-    public List<List<Integer>> fetchPieces(int color) {
-
-        List<List<Integer>> piece_cells = new ArrayList<>();
+    public Board getClone(){
+        return new Board(this);
+    }
 
-        for (int i=0; i<board.length; i++){
-            for (int j=0; j<board[i].length; j++){
-                Piece piece = board[i][j];
-                if ( ( piece != null ) && ( piece.getColor() == color ) ) {
-                    List<Integer> piece_cell = new ArrayList<>();
-                    piece_cell.add(i);
-                    piece_cell.add(j);
-                    piece_cells.add(piece_cell);
-                }
-            }
-        }
+    /**
+     * Simulates a strike on the calling board. Is used to play a move or to see if
+     * a piece can do the move. It also updates the castling rights and the square
+     * where a pawn can be eaten in passing.
+     *
+     * @param start_square Starting square of the strike, see {@link #square(int, int)}
+     * @param end_square Ending square of the strike
+     * @return The eaten piece, or null if no piece has been eaten.
+     */
+    public Piece simulation(int start_square, int end_square) {
+        return play(start_square, end_square);
+    }
 
-        return piece_cells;
+    /**
+     * Plays a move in place, so that it can be taken back with {@link #unmakeMove()}. Is used
+     * to check the consequences of a move without cloning the board. The moves are taken back
+     * in the reverse order they have been played.
+     *
+     * @param start_square Starting square of the move, see {@link #square(int, int)}
+     * @param end_square Ending square of the move
+     * @return The eaten piece, or null if no piece has been eaten
+     */
+    public Piece makeMove(int start_square, int end_square) {
+        if ( ply == MAX_PLY )
+            throw new IllegalStateException("More than " + MAX_PLY + " moves to take back");
+        Piece eaten_piece = simulation(start_square, end_square);
+        undo_moves[ply] = -1;
+        ply++;
+        return eaten_piece;
     }
 
     /**
-     * Gets a clone of the board. Useful to simulates a strike not on the actual board.
-     * For example to check if then the player is not in check. Do not copy the counter
-     * and the history as not useful for the purpose.
+     * Plays a whole ply in place, so that it can be taken back with {@link #unmakeMove()}: the
+     * move, the rook of a castling, the promotion of a pawn, then the color to play changes.
+     * The move is expected to be valid, see {@link MoveGenerator}.
      *
-     * @return The cloned board
+     * @param move The move, see {@link Move}
      */
-    public Board getClone(){
+    public void makeMove(int move) {
+        if ( ply == MAX_PLY )
+            throw new IllegalStateException("More than " + MAX_PLY + " moves to take back");
+
+        int start_square = Move.start(move);
+        int end_square   = Move.end(move);
+        Piece moved_piece = board[start_square];
+        play(start_square, end_square);
+
+        if ( Move.isCastling(move) ) {
+            int rook_start = castlingRookStart(end_square);
+            int rook_end   = ( start_square + end_square ) / 2;
+            put(remove(rook_start), rook_end);
+        }
+        if ( Move.promotion(move) != Protocol.NONE ) {
+            remove(end_square);
+            put(piece(Move.promotion(move) - 1, moved_piece.getColor()), end_square);
+        }
+
+        undo_moves[ply] = move;
+        undo_moved_pieces[ply] = moved_piece;
+        setSideToMove(Color.getOpponentColor(side_to_move));
+        ply++;
+    }
 
-        Board new_board = new Board();
+    /*
+     * Gives the starting square of the rook of a castling, from the ending square of the king.
+     */
+    private static int castlingRookStart(int king_end_square) {
+        return ( column(king_end_square) == BOARD_WIDTH - 2 ) ? king_end_square + 1 : king_end_square - 2;
+    }
 
-        for (int i=0; i<board.length; i++){
-            for (int j=0; j<board[i].length; j++){
-                new_board.getBoard()[i][j] = PieceFactoryPrototype.getPiece(board[i][j]);
+    /**
+     * Takes back the last move played with {@link #makeMove(int, int)} or {@link #makeMove(int)},
+     * restoring the eaten piece, the castling rights and the square where a pawn can be eaten in
+     * passing.
+     */
+    public void unmakeMove() {
+        if ( ply == 0 )
+            throw new IllegalStateException("No move to take back");
+        ply--;
+        if ( legal_moves != null )
+            legal_moves.invalidate();
+
+        int record = undo_records[ply];
+        int start_square = record & 0x3F;
+        int end_square   = ( record >>> 6 ) & 0x3F;
+        int eaten_square = ( record >>> 12 ) & 0x3F;
+
+        int move = undo_moves[ply];
+        if ( move >= 0 ) {
+            setSideToMove(Color.getOpponentColor(side_to_move));
+            if ( Move.isCastling(move) ) {
+                int rook_start = castlingRookStart(end_square);
+                int rook_end   = ( start_square + end_square ) / 2;
+                put(remove(rook_end), rook_start);
             }
+            if ( Move.promotion(move) != Protocol.NONE ) {
+                remove(end_square);
+                put(undo_moved_pieces[ply], end_square);
+            }
+            undo_moved_pieces[ply] = null;
         }
 
-        return new_board;
+        put(remove(end_square), start_square);
+        if ( undo_eaten_pieces[ply] != null ) {
+            put(undo_eaten_pieces[ply], eaten_square);
+            undo_eaten_pieces[ply] = null;
+        }
+        setCastlingRights(( record >>> 18 ) & 0xF);
+        setEnPassant(( record >>> 22 ) - 1);
     }
 
-    /**
-     * Simulates a strike on the calling board. Is used to play a move or to see if
-     * a piece can do the move. It also updates the attributes of the moved piece
-     * if it is a pawn, rook or king.
+    /*
+     * Plays a move and writes its undo record at the current ply. It also updates the castling
+     * rights and the square where a pawn can be eaten in passing.
      *
-     * @param start_cell Starting cell of the strike.
-     * @param end_cell Ending cell of the strike.
-     * @return The eaten piece, or null if no piece has been eaten.
+     * @return The eaten piece, or null if no piece has been eaten
      */
-    public Piece simulation(List<Integer> start_cell, List<Integer>end_cell) {
+    private Piece play(int start_square, int end_square) {
 
-        Piece moved_piece = board[start_cell.get(0)][start_cell.get(1)];
-        Piece eaten_piece = board[end_cell.get(0)][end_cell.get(1)];
+        int eaten_square = end_square;
+        int record = start_square | ( end_square << 6 ) | ( castling_rights << 18 ) | ( ( en_passant + 1 ) << 22 );
 
-        /* Manages the case of in passing and updates the attribute(s) */
-        switch (moved_piece.str()) {
-            case "pawn":
-                if (!((Pawn) moved_piece).hasMoved()) {
-                    ((Pawn) moved_piece).setHasMoved(true);
-                    ((Pawn) moved_piece).setInPassing(true);
-                }
-                int horizontal_move = end_cell.get(1) - start_cell.get(1);
-                Piece next_to = board[start_cell.get(0)][start_cell.get(1) + horizontal_move];
-
-                /* Conditions to eat in passing */
-                if ((horizontal_move != 0) && (next_to != null) && next_to.str().equals("pawn")
-                        && (((Pawn) next_to).isInPassing()) && (next_to.getColor() != moved_piece.getColor())) {
-                    board[start_cell.get(0)][start_cell.get(1) + horizontal_move] = null;
-                    eaten_piece = next_to;
-                }
-                break;
-            case "king":
-                ((King) moved_piece).setCanCastle(false);
-                break;
-            case "rook":
-                ((Rook) moved_piece).setCanCastle(false);
-                break;
+        Piece moved_piece = remove(start_square);
+        Piece eaten_piece = remove(end_square);
+
+        /* Eating in passing: the eaten pawn is next to the starting cell */
+        if ( ( kind(moved_piece) == PAWN ) && ( end_square == en_passant ) ) {
+            eaten_square = square(row(start_square), column(end_square));
+            eaten_piece  = remove(eaten_square);
         }
 
+        undo_records[ply]      = record | ( eaten_square << 12 );
+        undo_eaten_pieces[ply] = eaten_piece;
+        if ( legal_moves != null )
+            legal_moves.invalidate();
+
+        /* A pawn moving 2 cells ahead can be eaten in passing by the next strike only */
+        if ( ( kind(moved_piece) == PAWN ) && ( Math.abs(end_square - start_square) == 2*BOARD_WIDTH ) )
+            setEnPassant(( start_square + end_square ) / 2);
+        else
+            setEnPassant(-1);
+
+        /* Castling rights are lost when the king moves, or when a rook leaves or is eaten on its cell */
+        setCastlingRights(castling_rights & ~( LOST_CASTLING_RIGHTS[start_square] | LOST_CASTLING_RIGHTS[end_square] ));
+
         /* Actually plays the move */
-        board[start_cell.get(0)][start_cell.get(1)] = null;
-        board[end_cell.get(0)][end_cell.get(1)] = moved_piece;
+        put(moved_piece, end_square);
 
         return eaten_piece;
     }
@@ -334,7 +825,7 @@ public class Board {
 
         for (int i=0; i<BOARD_HEIGHT; i++){
             for (int j=0; j<BOARD_WIDTH; j++){
-                Piece piece = board[i][j];
+                Piece piece = board[square(i, j)];
 
                 /* Empty cell */
                 if ( piece == null ) {
@@ -362,8 +853,9 @@ public class Board {
     public void displayBoard(){
 
         display("______________________________\n");
-        for (Piece[] pieces : board) {
-            for (Piece piece : pieces) {
+        for (int i=0; i<BOARD_HEIGHT; i++) {
+            for (int j=0; j<BOARD_WIDTH; j++) {
+                Piece piece = board[square(i, j)];
                 if (piece == null) {
                     display(".");
                 } else {
@@ -1,94 +1,79 @@
 package game;
 
-import pieces.King;
-import pieces.Pawn;
-import pieces.Piece;
-import pieces.Rook;
-
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 
 /**
- * This class represents the history of the boards of a chess game.
+ * This class represents the history of the boards of a chess game, as the hashes of the
+ * positions reached after each strike (see {@link Board#getHash()}).
  */
 public class History {
 
-    List<Piece[][]> boards = new ArrayList<>();
+    private long[] hashes = new long[256];
+    private int size = 0;
 
-    public void add(Board board){
-        boards.add(board.getBoard());
-    }
+    /* Index of the first position which can repeat: a pawn move or a capture cannot be undone */
+    private int last_irreversible = 0;
 
     /**
-     * Checks if the current board configuration already happened 5 times.
+     * Adds the position reached after a strike.
      *
-     * @param board The board to consider
-     * @param current_color The color of the player to play
-     * @return A boolean for the purpose
+     * @param hash The hash of the position
+     * @param irreversible Whether the strike moved a pawn or ate a piece
      */
-    public boolean FiveInHistory(Board board, int current_color){
-
-        int len_history = boards.size();
-        int counter = 0;
-
-        for (int h=0; h<len_history; h++){
-            if ( (h%2) == current_color ) // BLACK=0 and WHITE=1... and the first strike is done by the white player
-                continue;
-            if ( equivalent(boards.get(h), board.getBoard()) )
-                counter++;
-        }
+    public void add(long hash, boolean irreversible){
+        if ( size == hashes.length )
+            hashes = Arrays.copyOf(hashes, 2*size);
+        if ( irreversible )
+            last_irreversible = size;
+        hashes[size++] = hash;
+    }
 
-        return (5 < counter);
+    /**
+     * Gives the number of the positions which can repeat, reached since the last pawn move or
+     * capture, see {@link #getRepeatable(int)}.
+     *
+     * @return The number of positions
+     */
+    public int getRepeatableCount() {
+        return size - last_irreversible;
     }
 
+    /**
+     * Gives a position which can repeat.
+     *
+     * @param i The index of the position, from 0 for the last one added to {@link #getRepeatableCount()} - 1
+     * @return The hash of the position
+     */
+    public long getRepeatable(int i) {
+        return hashes[size - 1 - i];
+    }
 
-    /*
-     * Checks if the board configurations are equivalent.
+    /**
+     * Checks if the current board configuration already happened 5 times.
      * By definition, two boards configuration are the same if:
      *      - The same kind of pieces occupy the same cells
      *      - The possibility to take "in_passing" are the same
      *      - The possibility of castling are the same
+     *      - The same color is to play
      * @see https://en.wikipedia.org/wiki/Threefold_repetition
+     * <p>
+     * Only the positions since the last pawn move or capture are considered, the previous
+     * ones cannot happen again. Among them, one out of two has the same color to play.
      *
-     * @param board1 First board
-     * @param board2 Second board
+     * @param hash The hash of the current position, the last one added
      * @return A boolean for the purpose
      */
-    private boolean equivalent(Piece[][] board1, Piece[][] board2) {
+    public boolean FiveInHistory(long hash){
 
-        for (int i=0; i<Board.BOARD_HEIGHT; i++){
-            for (int j=0; j<Board.BOARD_WIDTH; j++){
-                Piece history_p = board1[i][j];
-                Piece piece     = board2[i][j];
-
-                if ( ( piece == null ) && ( history_p == null ) )
-                    continue;
-                if ( (( piece == null ) && ( history_p != null )) || (( piece != null ) && ( history_p == null )) )
-                    return false;
-
-                if ( !piece.str().equals(history_p.str()) )
-                    return false;
+        int counter = 0;
 
-                switch (piece.str()) {
-                    case "pawn":
-                        if ((((Pawn) piece).isInPassing() != ((Pawn) history_p).isInPassing()))
-                            return false;
-                        break;
-                    case "rook":
-                        if ((((Rook) piece).canCastle() != ((Rook) history_p).canCastle()))
-                            return false;
-                        break;
-                    case "king":
-                        if ((((King) piece).canCastle() != ((King) history_p).canCastle()))
-                            return false;
-                        break;
-                }
-            }
+        for (int h=size-1; h>=last_irreversible; h-=2){
+            if ( hashes[h] == hash )
+                counter++;
         }
 
-        return true;
+        return (5 < counter);
     }
 
-
 }
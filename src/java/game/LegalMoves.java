@@ -0,0 +1,111 @@
+package game;
+
+
+/**
+ * This class holds the legal moves of a position (see {@link MoveGenerator}), listed once and
+ * indexed so that checking a strike is a lookup: the ending squares of the moves are kept as a
+ * bitboard per starting square, the castlings apart as they are moves of the king too.
+ * <p>
+ * The moves are kept by the board and listed again after the position changed, see
+ * {@link Board#getLegalMoves()}, unless the position is found in the cache of the board (see
+ * {@link PositionCache}).
+ */
+public class LegalMoves {
+
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+    private int count = 0;
+
+    private final long[] targets = new long[Board.BOARD_HEIGHT*Board.BOARD_WIDTH];
+    private long castling_targets = 0; // Ending squares of the king for the castlings
+
+    private boolean in_check = false; // Whether the color to play is in check
+
+    private boolean up_to_date = false;
+
+    boolean isUpToDate() {
+        return up_to_date;
+    }
+
+    void invalidate() {
+        up_to_date = false;
+    }
+
+    /*
+     * Lists the legal moves of the color to play on a board, or copies them from the cache
+     * of the positions, which keeps them once listed.
+     */
+    void update(Board board, PositionCache cache) {
+        for (int i=0; i<count; i++)
+            targets[Move.start(moves[i])] = 0;
+        castling_targets = 0;
+
+        PositionCache.Position position = ( cache == null ) ? null : cache.find(board);
+        if ( position != null ) {
+            count = position.copyMoves(moves);
+            in_check = position.isInCheck();
+        }
+        else {
+            int color = board.getSideToMove();
+            count = MoveGenerator.legalMoves(board, moves);
+            in_check = board.isAttacked(board.kingSquare(color), Color.getOpponentColor(color));
+            if ( cache != null )
+                cache.add(board, moves, count, in_check);
+        }
+        for (int i=0; i<count; i++){
+            if ( Move.isCastling(moves[i]) )
+                castling_targets |= 1L << Move.end(moves[i]);
+            else
+                targets[Move.start(moves[i])] |= 1L << Move.end(moves[i]);
+        }
+        up_to_date = true;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Tells whether the color to play is in check, checkmate if it has no legal move.
+     *
+     * @return A boolean for the purpose
+     */
+    public boolean isInCheck() {
+        return in_check;
+    }
+
+    public boolean isCheckmate() {
+        return in_check && ( count == 0 );
+    }
+
+    public boolean isStalemate() {
+        return !in_check && ( count == 0 );
+    }
+
+    /**
+     * Gives a legal move.
+     *
+     * @param i The index of the move, lower than {@link #size()}
+     * @return The move, see {@link Move}
+     */
+    public int get(int i) {
+        return moves[i];
+    }
+
+    /**
+     * Checks whether a move is legal. The piece of a promotion is not compared, it is checked
+     * when promoting (see {@link Board#update}).
+     *
+     * @param move The move, see {@link Move}
+     * @return A boolean for the purpose
+     */
+    public boolean contains(int move) {
+        if ( Move.isCastling(move) )
+            return ( castling_targets & ( 1L << Move.end(move) ) ) != 0;
+        return ( targets[Move.start(move)] & ( 1L << Move.end(move) ) ) != 0;
+    }
+
+}
@@ -0,0 +1,76 @@
+package game;
+
+import network.Protocol;
+
+
+/**
+ * This class packs a move in an int: starting square (6 bits), ending square (6 bits), code of
+ * the piece of promotion (4 bits) and flags for the special moves. The 16 low bits are the move
+ * of the protocol, see {@link Protocol#move(int, int, int)}. The squares are numbered as for
+ * the bitboards, see {@link Board#square(int, int)}.
+ */
+public final class Move {
+
+    /* Flags of the special moves */
+    public static final int CASTLING   = 1 << 16;
+    public static final int EN_PASSANT = 1 << 17;
+
+    private Move() {}
+
+    public static int of(int start_square, int end_square) {
+        return Protocol.move(start_square, end_square, Protocol.NONE);
+    }
+
+    /**
+     * Packs a move.
+     *
+     * @param start_square The starting square
+     * @param end_square The ending square
+     * @param promotion The code of the piece of promotion, {@link Protocol#NONE} if none
+     * @return The move
+     */
+    public static int of(int start_square, int end_square, int promotion) {
+        return Protocol.move(start_square, end_square, promotion);
+    }
+
+    public static int start(int move) {
+        return Protocol.startCell(move);
+    }
+
+    public static int end(int move) {
+        return Protocol.endCell(move);
+    }
+
+    public static int promotion(int move) {
+        return Protocol.promotion(move);
+    }
+
+    public static boolean isCastling(int move) {
+        return ( move & CASTLING ) != 0;
+    }
+
+    public static boolean isEnPassant(int move) {
+        return ( move & EN_PASSANT ) != 0;
+    }
+
+    /**
+     * Gives the move in the format of the strikes, for example "e2-e4", "e7-e8q" for a promotion.
+     *
+     * @param move The move
+     * @return The representation
+     */
+    public static String str(int move) {
+        String str = name(start(move)) + "-" + name(end(move));
+        if ( promotion(move) != Protocol.NONE )
+            str += Character.toLowerCase(Protocol.pieceId(promotion(move)));
+        return str;
+    }
+
+    /*
+     * Gives the human understandable representation of a square, for example "a2".
+     */
+    private static String name(int square) {
+        return (char) ('a' + square % 8) + "" + (char) ('1' + square / 8);
+    }
+
+}
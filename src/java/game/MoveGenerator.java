@@ -0,0 +1,235 @@
+package game;
+
+import network.Protocol;
+
+
+/**
+ * This class lists the legal moves of a position, for the color to play. The moves are written
+ * in a buffer given by the caller (see {@link Move}), which can be reused from a position to
+ * another so that listing the moves does not allocate.
+ * <p>
+ * The moves following the rules of the pieces are generated from the bitboards, then the ones
+ * leaving the king in check are removed without playing them: when the king is in check, the
+ * other pieces have to eat the checking piece or to come between it and the king (check evasion
+ * mask), and a piece pinned on the king can only move on the line of the pin. The moves of the
+ * king are checked against the attacks of the opponent, the king being removed from the board.
+ * Only the rare eating in passing, which can uncover the king, is played to be checked.
+ */
+public final class MoveGenerator {
+
+    /**
+     * Size of the buffers of moves, more than the maximum number of legal moves in a position (218).
+     */
+    public static final int MAX_MOVES = 256;
+
+    private static final int[] PROMOTIONS = { Protocol.QUEEN, Protocol.ROOK, Protocol.BISHOP, Protocol.KNIGHT };
+
+    private MoveGenerator() {}
+
+    /**
+     * Lists the legal moves of the color to play.
+     *
+     * @param board The board to consider
+     * @param moves The buffer where to write the moves, of {@link #MAX_MOVES} moves at least
+     * @return The number of legal moves
+     */
+    public static int legalMoves(Board board, int[] moves) {
+        return legalMoves(board, board.getSideToMove(), moves, false);
+    }
+
+    /**
+     * Checks whether a color has a legal move, that is whether the game goes on. The checks
+     * stop at the first legal move found.
+     *
+     * @param board The board to consider
+     * @param color The color to consider
+     * @param moves A buffer of {@link #MAX_MOVES} moves at least, overwritten
+     * @return A boolean for the purpose
+     */
+    public static boolean hasLegalMove(Board board, int color, int[] moves) {
+        return legalMoves(board, color, moves, true) > 0;
+    }
+
+    /*
+     * Lists the legal moves of a color, or only the first one found.
+     *
+     * @return The number of legal moves
+     */
+    private static int legalMoves(Board board, int color, int[] moves, boolean first_only) {
+
+        int opponent_color = Color.getOpponentColor(color);
+        int king = board.kingSquare(color);
+        long occupied = board.getOccupancy();
+        int count = pseudoLegalMoves(board, color, moves);
+
+        /* Pieces checking the king: with one, the other pieces have to eat it or to come in between */
+        long checkers = board.attackers(king, opponent_color, occupied);
+        long evasion_mask = -1L;
+        if ( Long.bitCount(checkers) > 1 )
+            evasion_mask = 0;
+        else if ( checkers != 0 )
+            evasion_mask = checkers | Attacks.between(king, Long.numberOfTrailingZeros(checkers));
+        long pinned = pinnedPieces(board, color, king, occupied);
+
+        /* Keeping the moves which do not leave the king in check */
+        int legal_count = 0;
+        for (int i=0; i<count; i++){
+            int move  = moves[i];
+            int start = Move.start(move);
+            int end   = Move.end(move);
+            boolean legal;
+            if ( start == king )
+                legal = board.attackers(end, opponent_color, occupied & ~( 1L << king )) == 0;
+            else if ( Move.isEnPassant(move) ) {
+                board.makeMove(move);
+                legal = !board.isAttacked(king, opponent_color);
+                board.unmakeMove();
+            }
+            else
+                legal = ( ( evasion_mask & ( 1L << end ) ) != 0 )
+                        && ( ( ( pinned & ( 1L << start ) ) == 0 ) || ( ( Attacks.line(king, start) & ( 1L << end ) ) != 0 ) );
+            if ( legal ) {
+                moves[legal_count++] = move;
+                if ( first_only )
+                    break;
+            }
+        }
+
+        return legal_count;
+    }
+
+    /*
+     * Gives the pieces of a color pinned on its king: the only piece between the king and a
+     * rook, a bishop or a queen of the opponent aligned with it.
+     */
+    private static long pinnedPieces(Board board, int color, int king, long occupied) {
+        int opponent_color = Color.getOpponentColor(color);
+        long queens = board.getBitboard(opponent_color, Board.QUEEN);
+        long snipers = ( Attacks.rook(king, 0) & ( board.getBitboard(opponent_color, Board.ROOK) | queens ) )
+                | ( Attacks.bishop(king, 0) & ( board.getBitboard(opponent_color, Board.BISHOP) | queens ) );
+
+        long pinned = 0;
+        for (; snipers!=0; snipers&=snipers-1){
+            long blockers = Attacks.between(king, Long.numberOfTrailingZeros(snipers)) & occupied;
+            if ( Long.bitCount(blockers) == 1 )
+                pinned |= blockers & board.getOccupancy(color);
+        }
+        return pinned;
+    }
+
+    /*
+     * Lists the moves of a color following the rules of the pieces, the king may be left in
+     * check. The castlings are fully checked, except the ending square of the king.
+     *
+     * @return The number of moves
+     */
+    private static int pseudoLegalMoves(Board board, int color, int[] moves) {
+
+        int opponent_color = Color.getOpponentColor(color);
+        long own      = board.getOccupancy(color);
+        long opponent = board.getOccupancy(opponent_color);
+        long occupied = own | opponent;
+        int count = 0;
+
+        /* Pawns, the white ones going toward the eighth rank */
+        int forward       = ( color == Color.WHITE ) ? 8 : -8;
+        int starting_rank = ( color == Color.WHITE ) ? 1 : 6;
+        int last_rank     = ( color == Color.WHITE ) ? 7 : 0;
+        int en_passant    = ( color == board.getSideToMove() ) ? board.getEnPassant() : -1;
+        for (long pawns=board.getBitboard(color, Board.PAWN); pawns!=0; pawns&=pawns-1){
+            int square = Long.numberOfTrailingZeros(pawns);
+            int ahead  = square + forward;
+            if ( ( occupied & ( 1L << ahead ) ) == 0 ) {
+                count = addPawnMoves(moves, count, square, ahead, last_rank);
+                if ( ( square / 8 == starting_rank ) && ( ( occupied & ( 1L << ( ahead + forward ) ) ) == 0 ) )
+                    moves[count++] = Move.of(square, ahead + forward);
+            }
+            for (long captures=Attacks.pawn(color, square) & opponent; captures!=0; captures&=captures-1)
+                count = addPawnMoves(moves, count, square, Long.numberOfTrailingZeros(captures), last_rank);
+            if ( ( en_passant >= 0 ) && ( ( Attacks.pawn(color, square) & ( 1L << en_passant ) ) != 0 ) )
+                moves[count++] = Move.of(square, en_passant) | Move.EN_PASSANT;
+        }
+
+        /* Other pieces */
+        for (int kind=Board.KNIGHT; kind<=Board.KING; kind++){
+            for (long pieces=board.getBitboard(color, kind); pieces!=0; pieces&=pieces-1){
+                int square = Long.numberOfTrailingZeros(pieces);
+                for (long targets=attacks(kind, square, occupied) & ~own; targets!=0; targets&=targets-1)
+                    moves[count++] = Move.of(square, Long.numberOfTrailingZeros(targets));
+            }
+        }
+
+        /* Castlings: cells between the king and the rook empty, king not in check and not going through a check */
+        int king = board.kingSquare(color);
+        if ( board.canCastle(color, true) && ( ( occupied & ( 3L << ( king + 1 ) ) ) == 0 )
+                && !board.isAttacked(king, opponent_color) && !board.isAttacked(king + 1, opponent_color) )
+            moves[count++] = Move.of(king, king + 2) | Move.CASTLING;
+        if ( board.canCastle(color, false) && ( ( occupied & ( 7L << ( king - 3 ) ) ) == 0 )
+                && !board.isAttacked(king, opponent_color) && !board.isAttacked(king - 1, opponent_color) )
+            moves[count++] = Move.of(king, king - 2) | Move.CASTLING;
+
+        return count;
+    }
+
+    /*
+     * Adds the move of a pawn, or its 4 promotions if it reaches the last rank.
+     *
+     * @return The new number of moves
+     */
+    private static int addPawnMoves(int[] moves, int count, int start_square, int end_square, int last_rank) {
+        if ( end_square / 8 != last_rank ) {
+            moves[count++] = Move.of(start_square, end_square);
+            return count;
+        }
+        for (int promotion: PROMOTIONS)
+            moves[count++] = Move.of(start_square, end_square, promotion);
+        return count;
+    }
+
+    /*
+     * Gives the cells attacked by a piece other than a pawn.
+     */
+    private static long attacks(int kind, int square, long occupied) {
+        switch (kind) {
+            case Board.KNIGHT: return Attacks.knight(square);
+            case Board.BISHOP: return Attacks.bishop(square, occupied);
+            case Board.ROOK:   return Attacks.rook(square, occupied);
+            case Board.QUEEN:  return Attacks.queen(square, occupied);
+            default:           return Attacks.king(square);
+        }
+    }
+
+    /**
+     * Counts the positions reached after a number of plies from a position (performance test).
+     * Comparing with the known counts of reference positions checks the rules, and the time
+     * taken measures the speed of the generation.
+     *
+     * @param board The board to consider, left unchanged
+     * @param depth The number of plies
+     * @return The number of positions reached
+     */
+    public static long perft(Board board, int depth) {
+        if ( depth == 0 )
+            return 1;
+        return perft(board, depth, new int[depth][MAX_MOVES]);
+    }
+
+    /*
+     * Counts the positions reached, the buffers of moves being indexed by the remaining depth.
+     */
+    private static long perft(Board board, int depth, int[][] buffers) {
+        int[] moves = buffers[depth - 1];
+        int count = legalMoves(board, moves);
+        if ( depth == 1 )
+            return count;
+
+        long nodes = 0;
+        for (int i=0; i<count; i++){
+            board.makeMove(moves[i]);
+            nodes += perft(board, depth - 1, buffers);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+
+}
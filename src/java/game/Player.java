@@ -1,12 +1,11 @@
 package game;
 
-import pieces.Piece;
+import network.Connection;
+import network.Frame;
+import network.Protocol;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.net.SocketException;
-import java.util.List;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 
 
 /**
@@ -15,11 +14,35 @@ import java.util.List;
 public class Player {
 
     private int color;
-    private final Socket socket;
+    private final Connection connection;
 
+    /* Set once the time of the player ran out, see flagFall() */
+    private volatile boolean flag_fallen = false;
 
-    public Player(Socket socket) {
-        this.socket = socket;
+    /* Preferences sent by the player when joining, see Protocol#join(int, int) */
+    private int time_control = Protocol.ANY_TIME_CONTROL;
+    private int rating       = Protocol.NO_RATING;
+
+    /* Credentials sent by the player rejoining a game, see Protocol#rejoin(long, long) */
+    private boolean rejoining = false;
+    private long rejoin_game  = 0;
+    private long rejoin_token = 0;
+
+    /* Number of strikes of the player refused as not allowed */
+    private int invalid_strikes = 0;
+
+    /* Buffer of the moves generated to check whether the player can play */
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+
+    /**
+     * Initialize the player.
+     *
+     * @param connection The connection with the client, null for a player only replaying a
+     *                   game, to which nothing is sent
+     */
+    public Player(Connection connection) {
+        this.connection = connection;
     }
 
     public int getColor() {
@@ -30,35 +53,47 @@ public class Player {
         this.color = color;
     }
 
+    public int getTimeControl() {
+        return time_control;
+    }
 
-    /**
-     * Update the timeout of the the socket.
-     *
-     * @param delay The delay to subtract to the current timeout
-     */
-    public void updateTimeout(int delay){
-        try {
-            socket.setSoTimeout(socket.getSoTimeout()-delay);
-        } catch (SocketException e) { e.printStackTrace(); }
+    public int getRating() {
+        return rating;
     }
 
+    public boolean isRejoining() {
+        return rejoining;
+    }
+
+    public long getRejoinGame() {
+        return rejoin_game;
+    }
+
+    public long getRejoinToken() {
+        return rejoin_token;
+    }
+
+    public int getInvalidStrikes() {
+        return invalid_strikes;
+    }
+
+    public void addInvalidStrike() {
+        invalid_strikes++;
+    }
+
+
     /**
-     * Checks whether the player can play a move (not in Checkmate or Stalemate).
+     * Checks whether the player can play a move (not in Checkmate or Stalemate). Stops at the
+     * first legal move found, see {@link MoveGenerator#hasLegalMove(Board, int, int[])}, unless
+     * the board has a cache of the positions, where the legal moves are looked for.
      *
      * @param board The board to consider
      * @return A boolean for the purpose
      */
     public boolean canPlay(Board board){
-
-        /* Fetching the piece cells of the player */
-        List<List<Integer>> piece_cells = board.fetchPieces(color);
-
-        for ( List<Integer> piece_cell: piece_cells ){
-            Piece piece = board.getBoard()[piece_cell.get(0)][piece_cell.get(1)];
-            if ( piece.canMove(board, this, piece_cell) )
-                return true;
-        }
-        return false;
+        if ( ( board.getPositionCache() != null ) && ( board.getSideToMove() == color ) )
+            return !board.getLegalMoves().isEmpty();
+        return MoveGenerator.hasLegalMove(board, color, moves);
     }
 
 
@@ -69,92 +104,124 @@ public class Player {
      * @return A boolean for the purpose
      */
     public boolean isInCheck(Board board) {
+        return board.isAttacked(board.kingSquare(color), Color.getOpponentColor(color));
+    }
 
-        Piece[][] board_game = board.getBoard();
-
-        /* Fetching the cells of the pieces of the opponent player */
-        int opponent_color = Color.getOpponentColor(color);
-        List<List<Integer>> opponent_piece_cells = board.fetchPieces(opponent_color);
-
-        /* Fetching king cell of current player */
-        List<List<Integer>> piece_cells = board.fetchPieces(color);
-        List<Integer> king_cell = piece_cells.stream().filter(i -> board_game[i.get(0)][i.get(1)].str().equals("king") ).findFirst().get();
+    /**
+     * Fetch the next strike of the player. The requests of the state of the board are
+     * answered meanwhile.
+     *
+     * @param board The board to consider
+     * @return The next strike
+     * @throws IOException if the player is unreachable
+     */
+    public Strike nextStrike(Board board) throws IOException {
+        byte[] frame = readFromClient(board);
+        while ( Frame.kind(frame) != Frame.MOVE )
+            frame = readFromClient(board);
+        Frame.checkPayload(frame, Protocol.MOVE_LENGTH);
+        return Strike.fromMove(Protocol.readMove(frame, 1), color, board);
+    }
 
-        /* Checking if the king is in check */
-        for (List<Integer> opponent_piece_cell: opponent_piece_cells){
-            Piece opponent_piece = board_game[opponent_piece_cell.get(0)][opponent_piece_cell.get(1)];
-            if ( opponent_piece.allowedMove(opponent_piece_cell, king_cell)
-                && opponent_piece.canGoThrough(board_game, opponent_piece_cell, king_cell) )
-                return true;
+    /**
+     * Fetch the request of the player to join a game, the first frame sent by the client,
+     * and keep its preferences, or its credentials if the player rejoins a game.
+     *
+     * @param timeout The maximum time in milliseconds to wait for the request
+     * @throws SocketTimeoutException if the request did not come in time
+     * @throws IOException if the player is unreachable or did not start with the request
+     */
+    public void readJoin(int timeout) throws IOException {
+        byte[] frame = connection.read(timeout);
+        if ( frame == null )
+            throw new SocketTimeoutException("No request to join a game");
+        byte kind = Frame.kind(frame);
+        if ( kind == Frame.REJOIN ) {
+            Frame.checkPayload(frame, Protocol.REJOIN_LENGTH);
+            rejoining    = true;
+            rejoin_game  = Protocol.gameId(frame);
+            rejoin_token = Protocol.token(frame);
+            return;
         }
-
-        return false;
+        if ( kind != Frame.JOIN )
+            throw new IOException("Request to join a game expected");
+        Frame.checkPayload(frame, Protocol.JOIN_LENGTH);
+        time_control = Protocol.timeControl(frame);
+        rating       = Protocol.rating(frame);
     }
 
     /**
-     * Fetch the next strike of the player.
+     * Fetch the piece chosen by the player for a promotion. The requests of the state of
+     * the board are answered meanwhile.
      *
      * @param board The board to consider
-     * @return The next strike
+     * @return The code of the piece, see {@link Protocol}
+     * @throws IOException if the player is unreachable
+     */
+    public int readPromotion(Board board) throws IOException {
+        byte[] frame = readFromClient(board);
+        while ( Frame.kind(frame) != Frame.PROMOTION )
+            frame = readFromClient(board);
+        Frame.checkPayload(frame, Protocol.PROMOTION_LENGTH);
+        return frame[1];
+    }
+
+    /*
+     * Read a frame from the player, answering the requests of the state of the board.
+     *
+     * @param board The board to consider
+     * @return The frame read, other than a request of the state of the board
+     * @throws SocketTimeoutException if the time of the player ran out
      * @throws IOException if the player is unreachable
-     * @throws ClassNotFoundException if the player is unreachable
      */
-    public Strike nextStrike(Board board) throws IOException, ClassNotFoundException {
-        String from_client = readFromClient();
-        while ( from_client.equals("display_board") ){
-            sendMessage(board.getState());
-            from_client = readFromClient();
+    private byte[] readFromClient(Board board) throws IOException {
+        while ( true ) {
+            byte[] frame = connection.read(0);
+            if ( ( frame == null ) || flag_fallen ) // Even if a frame came at the same time
+                throw new SocketTimeoutException("Time of the player ran out");
+            if ( Frame.kind(frame) != Frame.BOARD_REQUEST )
+                return frame;
+            send(Protocol.board(board.getState()));
         }
-        return new Strike(from_client, color);
     }
 
     /**
-     * Read a message from the player.
+     * Sends a frame to the player. The same frame can be sent to several players.
      *
-     * @return The message read
+     * @param frame The frame to send, see {@link Protocol}
      * @throws IOException if the player is unreachable
-     * @throws ClassNotFoundException if the player is unreachable
      */
-    public String readFromClient() throws IOException, ClassNotFoundException {
-        long start_time = System.currentTimeMillis();
-        ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
-        long end_time   = System.currentTimeMillis();
-        updateTimeout((int) (end_time - start_time));
-        return (String) ois.readObject();
+    public void send(ByteBuffer frame) throws IOException {
+        if ( connection != null )
+            connection.send(frame.duplicate());
     }
 
     /**
-     * Sends a message to the player.
+     * Sends an event to the player.
      *
-     * @param message The message to sent
+     * @param code The code of the event, see {@link Protocol}
+     * @param args The arguments of the event
      * @throws IOException if the player is unreachable
      */
-    public void sendMessage(Object message) throws IOException {
-        ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
-        oos.writeObject(message);
-        oos.flush();
+    public void sendEvent(byte code, int... args) throws IOException {
+        if ( connection != null )
+            connection.send(Protocol.event(code, args));
     }
 
     /**
-     * Disconnect the player.
+     * Disconnect the player, once the messages already sent are delivered.
      */
     public void disconnect() {
-        try {
-            if (socket != null)
-                socket.close();
-        } catch (IOException e) { e.printStackTrace(); }
+        if (connection != null)
+            connection.close();
     }
 
     /**
-     * Set the timeout of the player.
-     *
-     * @param strike_timeout Timeout to set in milliseconds
+     * Notifies the player that its time ran out: the strike being read is refused. Called by
+     * the timer of the clock of the player, see server.Clock.
      */
-    public void setTimeout(int strike_timeout) {
-        try {
-            socket.setSoTimeout(strike_timeout);
-        } catch (SocketException e) {
-            e.printStackTrace();
-        }
+    public void flagFall() {
+        flag_fallen = true;
+        connection.wakeUp();
     }
 }
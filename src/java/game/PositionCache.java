@@ -0,0 +1,388 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * This class caches the legal moves of the positions met by the games, shared by all the games
+ * of the process: the first plies of the games repeat heavily, so that their moves are listed
+ * once instead of once per game. A position is found from its hash (see {@link Board#getHash()})
+ * and the occupancy of its squares, which rules out the collisions of the hash in practice.
+ * <p>
+ * The cache holds the legal moves of the color to play and whether it is in check, from which
+ * come the checkmate and the stalemate. Its memory is bounded by a capacity in bytes, estimated
+ * from the entries: beyond it, the positions not used lately are evicted with the CLOCK policy,
+ * an approximation of LRU where a lookup only marks the position as used, so that the lookups
+ * take no lock. The positions are shared out by hash among stripes, each with its share of the
+ * capacity, its own clock and its own table of positions, so that the games adding positions at
+ * the same time seldom wait for each other. The tables are indexed by the hash itself, without
+ * boxing it. The positions of the opening book (see {@link #load(File)}) are never evicted.
+ * <p>
+ * A board consults the cache once given, see {@link Board#setPositionCache(PositionCache)}.
+ */
+public class PositionCache {
+
+    /* Estimated bytes taken by a position besides its moves: the position, its array, its slots
+    in the table (at most half full) and in the clock */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    /* Number of stripes of the positions, a power of 2 */
+    private static final int STRIPES = 16;
+
+    /* Initial number of slots of the table of a stripe, a power of 2 */
+    private static final int TABLE_SLOTS = 64;
+
+    private final long capacity;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder memory = new LongAdder();
+
+    private final LongAdder hits      = new LongAdder();
+    private final LongAdder misses    = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    /**
+     * A position of the cache, immutable but for its use mark.
+     */
+    static final class Position {
+
+        private final long hash;
+        private final long occupancy;
+        private final int[] moves;
+        private final boolean in_check;
+        private volatile boolean referenced = false; // Used since the clock last passed
+
+        private Position(long hash, long occupancy, int[] moves, boolean in_check) {
+            this.hash = hash;
+            this.occupancy = occupancy;
+            this.moves = moves;
+            this.in_check = in_check;
+        }
+
+        /**
+         * Copies the legal moves of the position.
+         *
+         * @param buffer The buffer where to write the moves, of {@link MoveGenerator#MAX_MOVES} moves at least
+         * @return The number of legal moves
+         */
+        int copyMoves(int[] buffer) {
+            System.arraycopy(moves, 0, buffer, 0, moves.length);
+            return moves.length;
+        }
+
+        boolean isInCheck() {
+            return in_check;
+        }
+
+        private long bytes() {
+            return ENTRY_OVERHEAD + 4L*moves.length;
+        }
+    }
+
+
+    /*
+     * The positions of a stripe and their eviction state, guarded by the stripe. The table is
+     * read without lock, and replaced by a larger one when half full.
+     */
+    private static final class Stripe {
+
+        private volatile Table table = new Table(TABLE_SLOTS);
+        private final ArrayDeque<Position> clock = new ArrayDeque<>(); // Evictable positions
+        private long memory = 0;
+    }
+
+
+    /*
+     * An open addressing table of positions with linear probing, indexed by the high bits of the
+     * hash (the low ones select the stripe). Each slot keeps the hash of its position, so that a
+     * probe compares primitives and only reads the positions of the same hash. Modified with its
+     * stripe locked, a lookup without lock can miss a position being moved but never gives a
+     * wrong one, the positions being immutable but for their use mark.
+     */
+    private static final class Table {
+
+        private final long[] hashes;
+        private final Position[] positions; // null for a free slot
+        private final int mask;
+        private int size = 0;
+
+        private Table(int slots) {
+            hashes = new long[slots];
+            positions = new Position[slots];
+            mask = slots - 1;
+        }
+
+        private int index(long hash) {
+            return (int) ( hash >>> 32 ) & mask;
+        }
+
+        private Position get(long hash) {
+            int i = index(hash);
+            for (int probes=0; probes<=mask; probes++) {
+                if ( hashes[i] == hash ) {
+                    Position position = positions[i];
+                    if ( position == null )
+                        return null;
+                    if ( position.hash == hash )
+                        return position;
+                }
+                else if ( positions[i] == null )
+                    return null;
+                i = ( i + 1 ) & mask;
+            }
+            return null;
+        }
+
+        private boolean isFull() {
+            return 2*( size + 1 ) > positions.length;
+        }
+
+        /* Called on a position not in the table, the table not full */
+        private void put(Position position) {
+            int i = index(position.hash);
+            while ( positions[i] != null )
+                i = ( i + 1 ) & mask;
+            positions[i] = position;
+            hashes[i] = position.hash;
+            size++;
+        }
+
+        private void remove(Position position) {
+            int i = index(position.hash);
+            while ( positions[i] != position ) {
+                if ( positions[i] == null )
+                    return;
+                i = ( i + 1 ) & mask;
+            }
+
+            /* The next positions of the run move back to the freed slot when their probe passes
+            by it, so that no probe stops before its position */
+            for (int j = ( i + 1 ) & mask; positions[j] != null; j = ( j + 1 ) & mask) {
+                Position next = positions[j];
+                if ( ( ( j - index(next.hash) ) & mask ) >= ( ( j - i ) & mask ) ) {
+                    positions[i] = next;
+                    hashes[i] = next.hash;
+                    i = j;
+                }
+            }
+            positions[i] = null;
+            hashes[i] = 0;
+            size--;
+        }
+
+        private Table grown() {
+            Table table = new Table(2*positions.length);
+            for (Position position : positions) {
+                if ( position != null )
+                    table.put(position);
+            }
+            return table;
+        }
+    }
+
+
+    /**
+     * Initialize an empty cache.
+     *
+     * @param capacity The maximum memory taken by the positions, in bytes
+     */
+    public PositionCache(long capacity) {
+        this.capacity = capacity;
+        for (int i=0; i<STRIPES; i++)
+            stripes[i] = new Stripe();
+    }
+
+    /**
+     * Gives the position of a board, marked as used.
+     *
+     * @param board The board to consider
+     * @return The position, null if not cached
+     */
+    Position find(Board board) {
+        long hash = board.getHash();
+        Position position = stripes[(int) hash & ( STRIPES - 1 )].table.get(hash);
+        if ( ( position == null ) || ( position.occupancy != board.getOccupancy() ) ) {
+            misses.increment();
+            return null;
+        }
+        if ( !position.referenced )
+            position.referenced = true;
+        hits.increment();
+        return position;
+    }
+
+    /**
+     * Caches the legal moves of a board, the positions not used lately being evicted if the
+     * cache is full.
+     *
+     * @param board The board to consider
+     * @param moves The legal moves of the color to play, see {@link MoveGenerator#legalMoves(Board, int[])}
+     * @param count The number of legal moves
+     * @param in_check Whether the color to play is in check
+     */
+    void add(Board board, int[] moves, int count, boolean in_check) {
+        add(board, moves, count, in_check, false);
+    }
+
+    /*
+     * Caches a position, unless already cached. A pinned position is never evicted. Only the
+     * stripe of the position is locked.
+     *
+     * @return Whether the position was cached
+     */
+    private boolean add(Board board, int[] moves, int count, boolean in_check, boolean pinned) {
+        long hash = board.getHash();
+        Stripe stripe = stripes[(int) hash & ( STRIPES - 1 )];
+        if ( stripe.table.get(hash) != null )
+            return false;
+        int[] copy = new int[count];
+        System.arraycopy(moves, 0, copy, 0, count);
+        Position position = new Position(hash, board.getOccupancy(), copy, in_check);
+
+        synchronized (stripe) {
+            if ( pinned && ( stripe.memory + position.bytes() > capacity / STRIPES ) )
+                return false;
+            Table table = stripe.table;
+            if ( table.get(hash) != null )
+                return false;
+            if ( table.isFull() ) {
+                table = table.grown();
+                stripe.table = table;
+            }
+            table.put(position);
+            stripe.memory += position.bytes();
+            memory.add(position.bytes());
+            if ( !pinned ) {
+                stripe.clock.addLast(position);
+                evict(stripe);
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Evicts positions of a stripe until it fits in its share of the capacity: the clock sweeps
+     * the positions from the oldest, a position used since the last sweep getting a second chance.
+     * Called with the stripe locked.
+     */
+    private void evict(Stripe stripe) {
+        while ( ( stripe.memory > capacity / STRIPES ) && !stripe.clock.isEmpty() ) {
+            Position position = stripe.clock.pollFirst();
+            if ( position.referenced ) {
+                position.referenced = false;
+                stripe.clock.addLast(position);
+                continue;
+            }
+            stripe.table.remove(position);
+            stripe.memory -= position.bytes();
+            memory.add(-position.bytes());
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Loads an opening book, the positions of which are never evicted. The book is a text file
+     * with one opening per line, given as its strikes from the initial position (ex: "e2-e4
+     * e7-e5 g1-f3 b8-c6 f1-b5"), castlings as "0-0" and "0-0-0", without promotion. The lines
+     * starting with '#' are comments. An opening with a strike not allowed is kept up to this
+     * strike. The positions beyond the capacity of the cache are not loaded.
+     *
+     * @param book The opening book
+     * @return The number of positions loaded, the positions shared by openings counted once
+     * @throws IOException If the book cannot be read
+     */
+    public int load(File book) throws IOException {
+        int loaded = 0;
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        try (BufferedReader reader = new BufferedReader(new FileReader(book))) {
+            String line;
+            while ( ( line = reader.readLine() ) != null ) {
+                line = line.trim();
+                if ( line.isEmpty() || line.startsWith("#") )
+                    continue;
+                Board board = new Board();
+                for (String token : line.split("\\s+")) {
+                    int count = MoveGenerator.legalMoves(board, moves);
+                    if ( pin(board, moves, count) )
+                        loaded++;
+
+                    /* The strike is found among the legal moves, which carry the flags of the special moves */
+                    int strike = Strike.parse(token, board.getSideToMove()) & 0xFFFF;
+                    int legal = -1;
+                    for (int i=0; ( i<count ) && ( legal < 0 ); i++) {
+                        if ( ( moves[i] & 0xFFFF ) == strike )
+                            legal = moves[i];
+                    }
+                    if ( legal < 0 )
+                        break;
+                    board.makeMove(legal);
+                }
+                if ( pin(board, moves, MoveGenerator.legalMoves(board, moves)) )
+                    loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /*
+     * Caches the position of a board for good.
+     *
+     * @return Whether the position was cached, false if already cached or if the cache is full
+     */
+    private boolean pin(Board board, int[] moves, int count) {
+        int color = board.getSideToMove();
+        return add(board, moves, count, board.isAttacked(board.kingSquare(color), Color.getOpponentColor(color)), true);
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gives the memory taken by the positions, as estimated from their number of moves.
+     *
+     * @return The memory in bytes
+     */
+    public long getMemory() {
+        return memory.sum();
+    }
+
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.table.size;
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gives the ratio of the lookups finding their position.
+     *
+     * @return The ratio, from 0 to 1, 0 if no lookup
+     */
+    public double getHitRate() {
+        long found = hits.sum();
+        long lookups = found + misses.sum();
+        return ( lookups == 0 ) ? 0 : (double) found / lookups;
+    }
+
+}
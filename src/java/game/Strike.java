@@ -1,152 +1,151 @@
 package game;
 
+import network.Protocol;
 import pieces.*;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
 public class Strike {
-    
+
     private static final int KING_CASTLING_COLUMN_START        = 4;
     private static final int KING_LITTLE_CASTLING_COLUMN_END   = 6;
-    private static final int KING_BIG_CASTLING_COLUMN_END      = 2;
-    private static final int ROOK_LITTLE_CASTLING_COLUMN_START = 0;
-    private static final int ROOK_LITTLE_CASTLING_COLUMN_END   = 3;
-    private static final int ROOK_BIG_CASTLING_COLUMN_START    = 7;
-    private static final int ROOK_BIG_CASTLING_COLUMN_END      = 5;
+    private static final int ROOK_LITTLE_CASTLING_COLUMN_START = 7;
+    private static final int ROOK_BIG_CASTLING_COLUMN_START    = 0;
 
 
     /**
-     * Starting cells for the strike. Can include one or two moves (two if castling).
+     * The strike packed in an int (see {@link Move}), -1 if the strike is not in a valid format.
+     * A castling is the move of the king, flagged {@link Move#CASTLING}.
      */
-    private final List<List<Integer>> start_cells = new ArrayList<>();
+    private final int move;
 
-    /**
-     * Ending cells for the strike. Can include one or two moves (two if castling).
-     */
-    private final List<List<Integer>> end_cells   = new ArrayList<>();
+    public int getMove() {
+        return move;
+    }
+
+    public int getStartSquare() {
+        return Move.start(move);
+    }
+
+    public int getEndSquare() {
+        return Move.end(move);
+    }
 
     /**
-     * Human understandable representation of the strike (ex:a2-a3).
+     * Code of the piece replacing the pawn in case of promotion, Protocol.NONE if to be asked.
      */
-    private String str_strike = null;
+    public int getPromotion() {
+        return Move.promotion(move);
+    }
 
-    public List<List<Integer>> getStartCells() {
-        return start_cells;
+    public boolean isCastling() {
+        return ( move >= 0 ) && Move.isCastling(move);
     }
 
+    /**
+     * Gives the human understandable representation of the strike (ex: a2-a3, 0-0).
+     *
+     * @return The representation, null if the strike is not in a valid format
+     */
     public String getStrStrike() {
-        return str_strike;
+        if ( move < 0 )
+            return null;
+        if ( isCastling() )
+            return ( Board.column(getEndSquare()) == KING_LITTLE_CASTLING_COLUMN_END ) ? "0-0" : "0-0-0";
+        return Move.str(move);
     }
 
-    public List<List<Integer>> getEndCells() {
-        return end_cells;
+    /**
+     * Initialize a strike from its packed representation.
+     *
+     * @param move The move, see {@link Move}, -1 if not valid
+     */
+    public Strike(int move) {
+        this.move = move;
     }
 
     /**
-     * The constructor initialize the starting cells and ending cells of the strike,
-     * depending on the message received from the clients.
-     * @see Player#nextStrike(Board) 
+     * The constructor parses the strike received from the clients.
+     * @see #parse(CharSequence, int)
      *
      * @param str_strike The strike received from the client
      * @param color Color of the piece(s) moving
      */
     public Strike(String str_strike, int color) {
-        // For castles, first [i,j] is the king, the second is the rook
-        if ( str_strike.equals("0-0") || str_strike.equals("0-0-0") ) {
-            this.str_strike = str_strike;
-            start_cells.add(new ArrayList<>());
-            start_cells.add(new ArrayList<>());
-            end_cells.add(new ArrayList<>());
-            end_cells.add(new ArrayList<>());
-
-            // King side castle
-            if ( str_strike.equals("0-0") ) {
-                if (color == Color.BLACK) {
-                    start_cells.get(0).add(0);
-                    start_cells.get(0).add(4);
-                    end_cells.get(0).add(0);
-                    end_cells.get(0).add(6);
-                    start_cells.get(1).add(0);
-                    start_cells.get(1).add(7);
-                    end_cells.get(1).add(0);
-                    end_cells.get(1).add(5);
-                }
-                if (color == Color.WHITE) {
-                    start_cells.get(0).add(7);
-                    start_cells.get(0).add(4);
-                    end_cells.get(0).add(7);
-                    end_cells.get(0).add(6);
-                    start_cells.get(1).add(7);
-                    start_cells.get(1).add(7);
-                    end_cells.get(1).add(7);
-                    end_cells.get(1).add(5);
-                }
-            }
-            // Queen side castle
-            else {
-                if ( color == Color.BLACK ) {
-                    start_cells.get(0).add(0);
-                    start_cells.get(0).add(4);
-                    end_cells.get(0).add(0);
-                    end_cells.get(0).add(2);
-                    start_cells.get(1).add(0);
-                    start_cells.get(1).add(0);
-                    end_cells.get(1).add(0);
-                    end_cells.get(1).add(3);
-                }
-                if ( color == Color.WHITE ) {
-                    start_cells.get(0).add(7);
-                    start_cells.get(0).add(4);
-                    end_cells.get(0).add(7);
-                    end_cells.get(0).add(2);
-                    start_cells.get(1).add(7);
-                    start_cells.get(1).add(0);
-                    end_cells.get(1).add(7);
-                    end_cells.get(1).add(3);
-                }
-            }
+        this(parse(str_strike, color));
+    }
+
+    /**
+     * Gives the strike corresponding to a move received from the client. A move of the
+     * king by two columns from its initial cell is a castling.
+     *
+     * @param move The move, see {@link Protocol#move(int, int, int)}
+     * @param color Color of the piece(s) moving
+     * @param board The board to consider
+     * @return The strike
+     */
+    public static Strike fromMove(int move, int color, Board board) {
+        move &= 0xFFFF;
+        int start_square = Move.start(move);
+        int end_square   = Move.end(move);
+        Piece piece = board.getPiece(start_square);
+
+        if ( ( piece != null ) && ( Board.kind(piece) == Board.KING ) && ( start_square == kingSquare(color) )
+                && ( ( end_square == start_square + 2 ) || ( end_square == start_square - 2 ) ) )
+            move |= Move.CASTLING;
+        else if ( ( piece != null ) && ( Board.kind(piece) == Board.PAWN ) && ( end_square == board.getEnPassant() )
+                && ( Board.column(start_square) != Board.column(end_square) ) )
+            move |= Move.EN_PASSANT;
+
+        return new Strike(move);
+    }
+
+    /**
+     * Parses a strike without allocating: "e2-e4" for a move, "0-0" and "0-0-0" for the
+     * little and big castlings.
+     *
+     * @param str_strike The strike received from the client
+     * @param color Color of the piece(s) moving
+     * @return The move, see {@link Move}, -1 if the strike is not in a valid format
+     */
+    public static int parse(CharSequence str_strike, int color) {
+        int length = str_strike.length();
+
+        /* Castlings, moving the king */
+        if ( ( ( length == 3 ) || ( length == 5 ) ) && ( str_strike.charAt(0) == '0' )
+                && ( str_strike.charAt(1) == '-' ) && ( str_strike.charAt(2) == '0' ) ) {
+            int king_square = kingSquare(color);
+            if ( length == 3 )
+                return Move.of(king_square, king_square + 2) | Move.CASTLING;
+            if ( ( str_strike.charAt(3) == '-' ) && ( str_strike.charAt(4) == '0' ) )
+                return Move.of(king_square, king_square - 2) | Move.CASTLING;
+            return -1;
         }
+
         /* Normal strike (ex: a2-a3) */
-        else if ( str_strike.length() == 5 ){
-            String[] cells = str_strike.split("-");
-            if ( ( cells.length == 2 ) && (cells[0].length() == 2) &&  (cells[1].length() == 2) ){
-                List<Integer> start_cell = fillCell(cells[0]);
-                List<Integer> end_cell   = fillCell(cells[1]);
-                if ( ( start_cell != null ) && ( end_cell != null ) ) {
-                    this.str_strike = str_strike;
-                    start_cells.add(start_cell);
-                    end_cells.add(end_cell);
-                }
-            }
-        }
+        if ( ( length != 5 ) || ( str_strike.charAt(2) != '-' ) )
+            return -1;
+        int start_square = parseSquare(str_strike.charAt(0), str_strike.charAt(1));
+        int end_square   = parseSquare(str_strike.charAt(3), str_strike.charAt(4));
+        if ( ( start_square < 0 ) || ( end_square < 0 ) )
+            return -1;
+        return Move.of(start_square, end_square);
+    }
 
+    /*
+     * Gives the square given a cell, for example 'a', '2'.
+     *
+     * @return The square, -1 if not on the board
+     */
+    private static int parseSquare(char column, char row) {
+        if ( ( column < 'a' ) || ( 'h' < column ) || ( row < '1' ) || ( '8' < row ) )
+            return -1;
+        return ( row - '1' ) * Board.BOARD_WIDTH + ( column - 'a' );
     }
 
     /*
-     * Gives the cell indexes [i, j] on the board, given a cell for example "a2"
-     * 
-     * @param str_cell The cell in human understandable representation
-     * @return The cell index in the board [i, j]
+     * Gives the initial square of the king of a color.
      */
-    private List<Integer> fillCell(String str_cell) {
-        char column = str_cell.charAt(0);
-        int column_index;
-        if ( ( 'a' <= column ) && ( column <= 'h' ) )
-            column_index = column - 'a';
-        else
-            return null;
-        char row = str_cell.charAt(1);
-        int row_index;
-        if ( ( '1' <= row ) && ( row <= '8' ) )
-            row_index = 7-(row - '1');
-        else
-            return null;
-        List<Integer> cell = new ArrayList<>();
-        cell.add(row_index);
-        cell.add(column_index);
-        return cell;
+    private static int kingSquare(int color) {
+        return Board.square(color*(Board.BOARD_HEIGHT-1), KING_CASTLING_COLUMN_START);
     }
 
     /**
@@ -157,36 +156,45 @@ public class Strike {
      * @param board The board the consider
      * @param player The player to consider
      * @return A boolean for the purpose
-     * @see Piece#canMove(Board, Player, List) 
+     * @see Piece#canMove(Board, Player, int, int)
      */
     public boolean isAllowed(Board board, Player player) {
 
         /* Check the move is in good format */
-        if ( start_cells.size() == 0 )
+        if ( move < 0 )
             return false;
 
         /* Check the player is playing one of his/her piece */
-        for (List<Integer> start_cell : start_cells) {
-            Piece piece = board.getBoard()[start_cell.get(0)][start_cell.get(1)];
-            if ( ( piece == null ) || ( piece.getColor() != player.getColor() ) )
-                return false;
-        }
+        Piece piece = board.getPiece(getStartSquare());
+        if ( ( piece == null ) || ( piece.getColor() != player.getColor() ) )
+            return false;
 
-        /* Manage first the  */
-        if ( str_strike.equals("0-0") )
-            return castleIsAllowed(board, player, KING_LITTLE_CASTLING_COLUMN_END, ROOK_LITTLE_CASTLING_COLUMN_START, ROOK_LITTLE_CASTLING_COLUMN_END );
-        else if ( str_strike.equals("0-0-0") )
-            return castleIsAllowed(board, player, KING_BIG_CASTLING_COLUMN_END, ROOK_BIG_CASTLING_COLUMN_START, ROOK_BIG_CASTLING_COLUMN_END );
-        else {
-            /* Normal cases, start end end cells are length 1 */
-            Piece piece = board.getBoard()[start_cells.get(0).get(0)][start_cells.get(0).get(1)];
-            return piece.canMove(board, player, start_cells.get(0), end_cells.get(0));
+        /* Manage first the castlings */
+        if ( isCastling() ) {
+            if ( Board.column(getEndSquare()) == KING_LITTLE_CASTLING_COLUMN_END )
+                return castleIsAllowed(board, player, true, ROOK_LITTLE_CASTLING_COLUMN_START);
+            return castleIsAllowed(board, player, false, ROOK_BIG_CASTLING_COLUMN_START);
         }
+
+        /* Normal cases */
+        return piece.canMove(board, player, getStartSquare(), getEndSquare());
+    }
+
+    /**
+     * Determines if a strike is allowed, given the legal moves of the position, see
+     * {@link Board#getLegalMoves()}. The piece of a promotion is not compared, it is checked
+     * when promoting (see {@link Board#update}).
+     *
+     * @param legal_moves The legal moves of the position
+     * @return A boolean for the purpose
+     */
+    public boolean isAllowed(LegalMoves legal_moves) {
+        return ( move >= 0 ) && legal_moves.contains(move);
     }
 
     /*
      * Check if the castle is allowed. A castle is allowed if
-     *        - The king and rook have not moved yet
+     *        - The king and rook have not moved yet (castling right of the board)
      *        - The king is not in check
      *        - There is no piece between the rook and the king
      *        - The king does not go into a check after castling
@@ -195,43 +203,33 @@ public class Strike {
      * 
      * @param board The board to consider
      * @param player The player to consider
-     * @param k_column_end Ending king column after the castle
-     * @param r_column_start Starting rook column after the castle
-     * @param r_column_end Ending rook column after the castle
+     * @param little true for the little castling, false for the big one
+     * @param r_column_start Starting rook column of the castle
      * @return A boolean for the purpose
      */
-    private boolean castleIsAllowed(Board board, Player player, int k_column_end, int r_column_start, int r_column_end){
+    private boolean castleIsAllowed(Board board, Player player, boolean little, int r_column_start){
 
         int color = player.getColor();
-        Piece piece_k = board.getBoard()[color*(Board.BOARD_HEIGHT-1)][KING_CASTLING_COLUMN_START];
-        Piece piece_r = board.getBoard()[color*(Board.BOARD_HEIGHT-1)][r_column_start];
-        int castle_dir = 1;
+        int row   = color*(Board.BOARD_HEIGHT-1);
+        int castle_dir = little ? 1 : -1;
 
-        /* Determine the direction of the castling: little or big */
-        if ( r_column_start < k_column_end )
-            castle_dir = -1;
+        if ( !board.canCastle(color, little) || ( getStartSquare() != kingSquare(color) ) )
+            return false;
 
         /* Check that no piece between the rook and the king */
         for (int j=Math.min(KING_CASTLING_COLUMN_START+castle_dir, r_column_start-castle_dir);
                  j<=Math.max(KING_CASTLING_COLUMN_START+castle_dir, r_column_start-castle_dir); j++){
-            if ( board.getBoard()[color*(Board.BOARD_HEIGHT-1)][j] != null )
+            if ( ( board.getOccupancy() & Board.bit(row, j) ) != 0 )
                 return false;
         }
 
-        /* Check king not in castle / not going through one a castle / both rook and king can move */
-        /* No need to check color as can_castle ensure the color */
-        if ( !piece_k.str().equals("king") || !((King) piece_k).canCastle() ||
-                !piece_r.str().equals("rook") || !((Rook) piece_r).canCastle() ||
-                player.isInCheck(board) ||
-                !piece_r.canMove(board, player, Arrays.asList(color*(Board.BOARD_HEIGHT-1), r_column_start),
-                        Arrays.asList(color*(Board.BOARD_HEIGHT-1), r_column_end)) ||
-                !piece_k.canMove(board, player, Arrays.asList(color*(Board.BOARD_HEIGHT-1), KING_CASTLING_COLUMN_START),
-                        Arrays.asList(color*(Board.BOARD_HEIGHT-1), KING_CASTLING_COLUMN_START+castle_dir)) )
-            return false;
+        /* Check king not in check / not going through a check / not going into a check */
+        int opponent_color = Color.getOpponentColor(color);
+        for (int j=0; j<=2; j++){
+            if ( board.isAttacked(Board.square(row, KING_CASTLING_COLUMN_START+j*castle_dir), opponent_color) )
+                return false;
+        }
 
-        /* Have to simulate because moving 2 is not an allowed move for the king */
-        Board new_board = board.getClone();
-        new_board.simulation(Arrays.asList(color*7, KING_CASTLING_COLUMN_START), Arrays.asList(color*7, KING_CASTLING_COLUMN_START+2*castle_dir));
-        return !player.isInCheck(new_board);
+        return true;
     }
 }
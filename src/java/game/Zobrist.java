@@ -0,0 +1,78 @@
+package game;
+
+import java.util.SplittableRandom;
+
+
+/**
+ * This class gives the random keys hashing a position of the board (Zobrist hashing): the hash
+ * of a position is the XOR of the keys of its pieces on their squares, of its castling rights,
+ * of the file where a pawn can be eaten in passing and of the color to play. Playing a move only
+ * XORs the keys of what changed, see {@link Board#getHash()}.
+ * <p>
+ * The keys are generated from a fixed seed so that a position has the same hash in every run.
+ */
+public final class Zobrist {
+
+    private static final long SEED = 0x5EED_C4E55L;
+
+    private static final long[][][] PIECES = new long[2][6][64];
+    private static final long[] CASTLING   = new long[16];
+    private static final long[] EN_PASSANT = new long[8];
+    private static final long BLACK_TO_PLAY;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (long[][] color: PIECES) {
+            for (long[] kind: color) {
+                for (int square=0; square<64; square++)
+                    kind[square] = random.nextLong();
+            }
+        }
+        /* The castling rights are a 4 bits mask, the key of a mask is the XOR of the keys of its rights */
+        long[] rights = new long[4];
+        for (int i=0; i<rights.length; i++)
+            rights[i] = random.nextLong();
+        for (int mask=0; mask<CASTLING.length; mask++) {
+            for (int i=0; i<rights.length; i++) {
+                if ( ( mask & ( 1 << i ) ) != 0 )
+                    CASTLING[mask] ^= rights[i];
+            }
+        }
+        for (int file=0; file<EN_PASSANT.length; file++)
+            EN_PASSANT[file] = random.nextLong();
+        BLACK_TO_PLAY = random.nextLong();
+    }
+
+    private Zobrist() {}
+
+    /**
+     * Gives the key of a piece on a square.
+     *
+     * @param color The color of the piece
+     * @param kind The kind of the piece, see {@link Board#PAWN}...
+     * @param square The square, see {@link Board#square(int, int)}
+     * @return The key
+     */
+    public static long piece(int color, int kind, int square) {
+        return PIECES[color][kind][square];
+    }
+
+    public static long castling(int castling_rights) {
+        return CASTLING[castling_rights];
+    }
+
+    /**
+     * Gives the key of the square where a pawn can be eaten in passing, only its file matters.
+     *
+     * @param square The square, -1 if none
+     * @return The key, 0 if none
+     */
+    public static long enPassant(int square) {
+        return ( square < 0 ) ? 0 : EN_PASSANT[square % 8];
+    }
+
+    public static long sideToPlay(int color) {
+        return ( color == Color.BLACK ) ? BLACK_TO_PLAY : 0;
+    }
+
+}
@@ -0,0 +1,197 @@
+package network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * This class represents the connection with one client, served by one of the I/O
+ * threads of the {@link Transport}. The game threads send and read frames through
+ * queues, the actual reads and writes on the channel being done by the I/O thread.
+ */
+public class Connection {
+
+    /* Marker queued when the connection is closed, to wake up the readers */
+    private static final byte[] EOF = new byte[0];
+
+    /* Marker queued to wake up the reader, see wakeUp() */
+    private static final byte[] WAKE_UP = new byte[0];
+
+    /* Maximum number of frames received and not read yet. A client sends a frame at a time
+    and waits for the answer, beyond this number it floods the server */
+    static final int MAX_INBOUND = 64;
+
+    private final SocketChannel channel;
+    private final IoLoop loop;
+    SelectionKey key = null;
+
+    /* Frames received, without the length prefix, and the markers */
+    private final BlockingQueue<byte[]> inbound = new LinkedBlockingQueue<>();
+
+    /* Frames received and not read, at most MAX_INBOUND: the markers are not counted */
+    private final AtomicInteger unread = new AtomicInteger(0);
+
+    /* Frames to send, including the length prefix. Only the I/O thread consumes them */
+    final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    final AtomicBoolean flush_requested = new AtomicBoolean(false);
+
+    /* Bytes received but not forming a complete frame yet */
+    private ByteBuffer pending = null;
+
+    private volatile boolean closing = false;
+    private volatile boolean closed  = false;
+
+
+    Connection(SocketChannel channel, IoLoop loop) {
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Sends a frame to the client. The frame is written asynchronously by the I/O thread.
+     *
+     * @param frame The frame, as given by the encoding methods of {@link Frame}
+     * @throws IOException If the connection is closed
+     */
+    public void send(ByteBuffer frame) throws IOException {
+        if ( closing || closed )
+            throw new IOException("Connection closed");
+        outbound.add(frame);
+        if ( flush_requested.compareAndSet(false, true) )
+            loop.requestFlush(this);
+    }
+
+    /**
+     * Reads the next frame received from the client.
+     *
+     * @param timeout Maximum time to wait in milliseconds, 0 to wait indefinitely
+     * @return The frame without the length prefix, null if the timeout expired or the reader was woken up
+     * @throws IOException If the connection is closed or the thread is interrupted
+     */
+    public byte[] read(long timeout) throws IOException {
+        byte[] frame;
+        try {
+            if ( timeout == 0 )
+                frame = inbound.take();
+            else
+                frame = inbound.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading");
+        }
+        if ( frame == EOF ) {
+            inbound.add(EOF); // For the next readers
+            throw new IOException("Connection closed");
+        }
+        if ( ( frame == WAKE_UP ) || ( frame == null ) )
+            return null;
+        unread.decrementAndGet();
+        return frame;
+    }
+
+    /**
+     * Makes the reader of the connection return without a frame, for example when its time
+     * ran out. Frames already received are read first.
+     */
+    public void wakeUp() {
+        inbound.add(WAKE_UP);
+    }
+
+    /**
+     * Closes the connection once the frames already sent are written.
+     */
+    public void close() {
+        if ( closing || closed )
+            return;
+        closing = true;
+        if ( flush_requested.compareAndSet(false, true) )
+            loop.requestFlush(this);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    boolean isClosing() {
+        return closing;
+    }
+
+    /*
+     * Extracts the complete frames from the received bytes. Called by the I/O thread.
+     *
+     * @param data The received bytes, ready to be read
+     * @throws IOException If a frame is corrupted or the client sent too many frames
+     */
+    void receive(ByteBuffer data) throws IOException {
+
+        ByteBuffer buffer = data;
+        if ( pending != null ) {
+            if ( pending.remaining() < data.remaining() ) {
+                ByteBuffer larger = ByteBuffer.allocate(pending.position() + data.remaining());
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            }
+            pending.put(data);
+            pending.flip();
+            buffer = pending;
+        }
+
+        while ( buffer.remaining() >= Frame.HEADER_LENGTH ) {
+            int length = buffer.getInt(buffer.position());
+            if ( ( length <= 0 ) || ( Frame.MAX_LENGTH < length ) )
+                throw new IOException("Corrupted frame of length " + length);
+            if ( buffer.remaining() < Frame.HEADER_LENGTH + length )
+                break;
+            if ( unread.get() >= MAX_INBOUND )
+                throw new IOException("Too many frames received and not read");
+            byte[] frame = new byte[length];
+            buffer.position(buffer.position() + Frame.HEADER_LENGTH);
+            buffer.get(frame);
+            unread.incrementAndGet();
+            inbound.add(frame);
+        }
+
+        /* Keeping the incomplete frame for the next reception */
+        if ( !buffer.hasRemaining() )
+            pending = null;
+        else if ( buffer == pending )
+            pending.compact();
+        else {
+            pending = ByteBuffer.allocate(Math.max(256, buffer.remaining()));
+            pending.put(buffer);
+        }
+    }
+
+    /*
+     * Closes the channel and wakes up the readers. Called by the I/O thread.
+     */
+    void terminate() {
+        if ( closed )
+            return;
+        closed = true;
+        if ( key != null )
+            key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        outbound.clear();
+        inbound.add(EOF);
+        loop.closed(this);
+    }
+
+}
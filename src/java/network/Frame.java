@@ -0,0 +1,110 @@
+package network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * This class defines the frames exchanged between the server and the clients.
+ * A frame is a length-prefixed message: the length (4 bytes, big-endian) of the rest
+ * of the frame, the type of the frame (1 byte) and its payload. The high nibble of the
+ * type byte is the version of the protocol, the low nibble is the kind of frame.
+ * The content of the payloads is described in {@link Protocol}.
+ */
+public class Frame {
+
+    public static final int VERSION = 3;
+
+    /* Kinds of frames sent by the server */
+    public static final byte EVENT = 1;
+    public static final byte BOARD = 2;
+    public static final byte CREDENTIALS = 7;
+
+    /* Kinds of frames sent by the clients */
+    public static final byte MOVE          = 3;
+    public static final byte PROMOTION     = 4;
+    public static final byte BOARD_REQUEST = 5;
+    public static final byte JOIN          = 6;
+    public static final byte REJOIN        = 8;
+
+    /**
+     * Size of the length prefix of the frames.
+     */
+    public static final int HEADER_LENGTH = Integer.BYTES;
+
+    /**
+     * Maximum length of a frame, without the length prefix. A peer announcing a longer
+     * frame is considered as corrupted.
+     */
+    public static final int MAX_LENGTH = 1 << 16;
+
+    private Frame() {}
+
+    /**
+     * Allocates a frame and writes its header.
+     *
+     * @param kind The kind of frame
+     * @param payload_length The length of the payload
+     * @return The frame, ready to receive the payload
+     */
+    public static ByteBuffer allocate(byte kind, int payload_length) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + 1 + payload_length);
+        return frame.putInt(1 + payload_length).put((byte) ((VERSION << 4) | kind));
+    }
+
+    /**
+     * Gives the kind of a received frame, checking the version of the protocol.
+     *
+     * @param frame The frame, without the length prefix
+     * @return The kind of frame
+     * @throws IOException If the frame comes from another version of the protocol
+     */
+    public static byte kind(byte[] frame) throws IOException {
+        if ( ( frame[0] >>> 4 ) != VERSION )
+            throw new IOException("Unsupported version of the protocol: " + ( frame[0] >>> 4 ));
+        return (byte) ( frame[0] & 0xF );
+    }
+
+    /**
+     * Checks the length of the payload of a received frame, before its content is read.
+     *
+     * @param frame The frame, without the length prefix
+     * @param payload_length The length of the payload expected for its kind
+     * @throws IOException If the payload is shorter than expected, the frame being corrupted
+     */
+    public static void checkPayload(byte[] frame, int payload_length) throws IOException {
+        if ( frame.length < 1 + payload_length )
+            throw new IOException("Frame too short: " + ( frame.length - 1 ) + " bytes of payload instead of " + payload_length);
+    }
+
+    /**
+     * Writes a frame on a blocking stream.
+     *
+     * @param out The stream
+     * @param frame The frame, ready to be written
+     * @throws IOException If the peer is unreachable
+     */
+    public static void write(DataOutputStream out, ByteBuffer frame) throws IOException {
+        out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        out.flush();
+    }
+
+    /**
+     * Reads a frame from a blocking stream.
+     *
+     * @param in The stream
+     * @return The frame, without the length prefix
+     * @throws IOException If the peer is unreachable or the frame is corrupted
+     */
+    public static byte[] read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if ( ( length <= 0 ) || ( MAX_LENGTH < length ) )
+            throw new IOException("Corrupted frame of length " + length);
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+
+}
@@ -0,0 +1,187 @@
+package network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/*
+ * One I/O thread of the transport: a selector serving its share of the connections.
+ * The direct buffers used to read from and write to the channels are shared by all
+ * the connections of the thread.
+ */
+class IoLoop implements Runnable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /* Milliseconds waited before selecting again after a failure */
+    private static final int SELECT_PAUSE = 100;
+
+    private final Transport transport;
+    private final Selector selector;
+    private final ByteBuffer read_buffer  = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer write_buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final Queue<Connection> registrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> flushes       = new ConcurrentLinkedQueue<>();
+
+    /* Bytes exchanged with the clients, only written by the thread */
+    volatile long bytes_read    = 0;
+    volatile long bytes_written = 0;
+
+
+    IoLoop(Transport transport) throws IOException {
+        this.transport = transport;
+        this.selector = Selector.open();
+    }
+
+    /*
+     * Hands a connection over to the thread.
+     */
+    void register(Connection connection) {
+        registrations.add(connection);
+        selector.wakeup();
+    }
+
+    /*
+     * Asks the thread to write the pending frames of a connection.
+     */
+    void requestFlush(Connection connection) {
+        flushes.add(connection);
+        selector.wakeup();
+    }
+
+    /*
+     * Notifies the transport that a connection is closed.
+     */
+    void closed(Connection connection) {
+        transport.closed(connection);
+    }
+
+    void shutdown() {
+        try {
+            selector.close();
+        } catch (IOException ignored) {}
+    }
+
+    @Override
+    public void run() {
+
+        while ( selector.isOpen() ) {
+            try {
+                selector.select();
+
+                Connection connection;
+                while ( ( connection = registrations.poll() ) != null ) {
+                    try {
+                        connection.key = connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+                        flush(connection); // Frames sent before the registration
+                    } catch (IOException e) {
+                        connection.terminate();
+                    }
+                }
+
+                while ( ( connection = flushes.poll() ) != null )
+                    flush(connection);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while ( keys.hasNext() ) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    connection = (Connection) key.attachment();
+                    if ( key.isValid() && key.isReadable() )
+                        read(connection);
+                    if ( key.isValid() && key.isWritable() )
+                        flush(connection);
+                }
+            } catch (ClosedSelectorException e) { // The transport is shut down
+                break;
+            } catch (IOException e) {
+                /* The thread is the only one serving its connections, it keeps going after a pause */
+                System.err.println("I/O thread " + Thread.currentThread().getName() + " unable to select: " + e.getMessage());
+                try {
+                    Thread.sleep(SELECT_PAUSE);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /*
+     * Reads the available bytes of a connection and extracts the complete frames.
+     */
+    private void read(Connection connection) {
+        try {
+            read_buffer.clear();
+            int nb_bytes = connection.getChannel().read(read_buffer);
+            if ( nb_bytes < 0 ) { // The client disconnected
+                connection.terminate();
+                return;
+            }
+            bytes_read += nb_bytes; // Only written by this thread
+            read_buffer.flip();
+            connection.receive(read_buffer);
+        } catch (IOException e) {
+            connection.terminate();
+        }
+    }
+
+    /*
+     * Writes as many pending frames of a connection as the channel accepts, gathering
+     * them in the direct buffer. The frames not entirely written remain in the queue
+     * and the connection waits for the channel to be writable again.
+     */
+    private void flush(Connection connection) {
+
+        if ( connection.isClosed() || ( connection.key == null ) )
+            return;
+        connection.flush_requested.set(false);
+
+        try {
+            while ( !connection.outbound.isEmpty() ) {
+
+                write_buffer.clear();
+                for (ByteBuffer frame : connection.outbound) {
+                    if ( !write_buffer.hasRemaining() )
+                        break;
+                    ByteBuffer chunk = frame.duplicate();
+                    if ( chunk.remaining() > write_buffer.remaining() )
+                        chunk.limit(chunk.position() + write_buffer.remaining());
+                    write_buffer.put(chunk);
+                }
+                write_buffer.flip();
+
+                int left = connection.getChannel().write(write_buffer);
+                bytes_written += left;
+                while ( left > 0 ) {
+                    ByteBuffer frame = connection.outbound.peek();
+                    int nb_bytes = Math.min(left, frame.remaining());
+                    frame.position(frame.position() + nb_bytes);
+                    left -= nb_bytes;
+                    if ( !frame.hasRemaining() )
+                        connection.outbound.poll();
+                }
+
+                /* The channel is full, waiting to be able to write again */
+                if ( write_buffer.hasRemaining() ) {
+                    connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            connection.key.interestOps(SelectionKey.OP_READ);
+
+            if ( connection.isClosing() )
+                connection.terminate();
+
+        } catch (IOException | RuntimeException e) {
+            connection.terminate();
+        }
+    }
+
+}
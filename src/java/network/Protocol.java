@@ -0,0 +1,322 @@
+package network;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * This class describes the content of the frames (see {@link Frame}) exchanged between
+ * the server and the clients. Everything is encoded with codes rather than text, the
+ * clients being in charge of displaying them.
+ * <ul>
+ *     <li>EVENT: the code of the event (1 byte) followed by its arguments, 1 byte each
+ *     except for {@link #MOVE_PLAYED}: strike number (2 bytes), move (2 bytes), moved piece
+ *     (high nibble) and eaten piece (low nibble) (1 byte), flags (1 byte).</li>
+ *     <li>BOARD: the 64 cells of the board, one nibble each (piece code, plus {@link #BLACK}
+ *     for the black pieces), the cell a1 being the low nibble of the first byte.</li>
+ *     <li>MOVE: the move (2 bytes) as given by {@link #move(int, int, int)}.</li>
+ *     <li>PROMOTION: the code of the piece replacing the pawn (1 byte).</li>
+ *     <li>BOARD_REQUEST: no payload.</li>
+ *     <li>JOIN: the first frame of a client, the time control (1 byte, minutes per strike,
+ *     {@link #ANY_TIME_CONTROL} for the default one) and the rating of the player (2 bytes,
+ *     {@link #NO_RATING} if unknown).</li>
+ *     <li>CREDENTIALS: sent by the server when a game starts, the identifier of the game (8 bytes)
+ *     and the token of the player (8 bytes), to rejoin the game if the server restarts.</li>
+ *     <li>REJOIN: the first frame of a client rejoining a game instead of JOIN, with the
+ *     credentials received.</li>
+ * </ul>
+ * The cells are numbered from 0 (a1) to 63 (h8), file by file then rank by rank.
+ */
+public class Protocol {
+
+    /* Events, with their arguments */
+    public static final byte WAITING_OPPONENT     = 1;  // timeout in minutes
+    public static final byte NO_OPPONENT          = 2;
+    public static final byte OPPONENT_JOINED      = 3;  // strike timeout in minutes
+    public static final byte COLOR                = 4;  // color of the player
+    public static final byte YOUR_TURN            = 5;
+    public static final byte OPPONENT_TURN        = 6;
+    public static final byte INVALID_MOVE         = 7;
+    public static final byte PROMOTION_REQUEST    = 8;  // cell of the pawn
+    public static final byte INVALID_PROMOTION    = 9;
+    public static final byte MOVE_PLAYED          = 10; // see the class description
+    public static final byte CHECKMATE            = 11; // color in checkmate
+    public static final byte STALEMATE            = 12; // color which cannot move
+    public static final byte TIMEOUT              = 13; // winner color, timeout in minutes
+    public static final byte OPPONENT_UNREACHABLE = 14; // color unreachable
+    public static final byte DRAW_75_STRIKES      = 15;
+    public static final byte DRAW_FIVE_REPETITIONS = 16;
+    public static final byte ABORTED              = 17;
+    public static final byte HEARTBEAT            = 18;
+
+    /* Flags of the MOVE_PLAYED event */
+    public static final int LITTLE_CASTLING = 1;
+    public static final int BIG_CASTLING    = 2;
+    public static final int CHECK           = 4;
+
+    /* Preferences of the JOIN frame */
+    public static final int ANY_TIME_CONTROL = 0;
+    public static final int NO_RATING        = 0;
+
+    /* Lengths of the payloads of the frames sent by the clients */
+    public static final int MOVE_LENGTH      = 2;
+    public static final int PROMOTION_LENGTH = 1;
+    public static final int JOIN_LENGTH      = 3;
+    public static final int REJOIN_LENGTH    = 16;
+
+    /* Piece codes */
+    public static final int NONE   = 0;
+    public static final int PAWN   = 1;
+    public static final int KNIGHT = 2;
+    public static final int BISHOP = 3;
+    public static final int ROOK   = 4;
+    public static final int QUEEN  = 5;
+    public static final int KING   = 6;
+    public static final int BLACK  = 8;
+
+    /* IDs of the pieces (see pieces.Piece#getID()) indexed by piece code */
+    private static final String IDS = " pcftdr";
+
+    private Protocol() {}
+
+    /**
+     * Gives the cell number of a cell of the board.
+     *
+     * @param row The row on the board, 0 being the eighth rank
+     * @param column The column on the board, 0 being the file a
+     * @return The cell number
+     */
+    public static int cell(int row, int column) {
+        return (7 - row) * 8 + column;
+    }
+
+    public static int row(int cell) {
+        return 7 - (cell >>> 3);
+    }
+
+    public static int column(int cell) {
+        return cell & 7;
+    }
+
+    /**
+     * Packs a move on 16 bits: starting cell (6 bits), ending cell (6 bits) and the code of
+     * the piece of promotion (4 bits, {@link #NONE} if no promotion).
+     *
+     * @param start_cell The starting cell
+     * @param end_cell The ending cell
+     * @param promotion The code of the piece of promotion
+     * @return The move
+     */
+    public static int move(int start_cell, int end_cell, int promotion) {
+        return ( start_cell << 10 ) | ( end_cell << 4 ) | promotion;
+    }
+
+    public static int startCell(int move) {
+        return ( move >>> 10 ) & 0x3F;
+    }
+
+    public static int endCell(int move) {
+        return ( move >>> 4 ) & 0x3F;
+    }
+
+    public static int promotion(int move) {
+        return move & 0xF;
+    }
+
+    /**
+     * Gives the code of a piece from its ID.
+     *
+     * @param id The ID of the piece, in lower case for black and upper case for white
+     * @return The code of the piece, including {@link #BLACK} if needed
+     * @see pieces.Piece#getID()
+     */
+    public static int pieceCode(char id) {
+        int code = IDS.indexOf(Character.toLowerCase(id));
+        if ( code <= 0 )
+            return NONE;
+        return Character.isLowerCase(id) ? ( code | BLACK ) : code;
+    }
+
+    /**
+     * Gives the ID of a piece from its code.
+     *
+     * @param code The code of the piece, including {@link #BLACK} if needed
+     * @return The ID of the piece, in lower case for black and upper case for white
+     */
+    public static char pieceId(int code) {
+        char id = IDS.charAt(code & 7);
+        return ( code & BLACK ) != 0 ? id : Character.toUpperCase(id);
+    }
+
+    /**
+     * Encodes an event.
+     *
+     * @param code The code of the event
+     * @param args The arguments of the event, 1 byte each
+     * @return The frame
+     */
+    public static ByteBuffer event(byte code, int... args) {
+        ByteBuffer frame = Frame.allocate(Frame.EVENT, 1 + args.length).put(code);
+        for (int arg : args)
+            frame.put((byte) arg);
+        return frame.flip();
+    }
+
+    /**
+     * Encodes the event of a strike played.
+     *
+     * @param strike_number The number of the strike in the game
+     * @param move The move, as given by {@link #move(int, int, int)}
+     * @param moved_piece The code of the moved piece
+     * @param eaten_piece The code of the eaten piece, {@link #NONE} if none
+     * @param flags The flags of the strike (castling, check)
+     * @return The frame
+     */
+    public static ByteBuffer movePlayed(int strike_number, int move, int moved_piece, int eaten_piece, int flags) {
+        return Frame.allocate(Frame.EVENT, 7)
+                .put(MOVE_PLAYED)
+                .putShort((short) strike_number)
+                .putShort((short) move)
+                .put((byte) ( ( moved_piece << 4 ) | eaten_piece ))
+                .put((byte) flags)
+                .flip();
+    }
+
+    public static byte code(byte[] event) {
+        return event[1];
+    }
+
+    public static int arg(byte[] event, int index) {
+        return event[2 + index] & 0xFF;
+    }
+
+    public static int strikeNumber(byte[] move_played) {
+        return ( ( move_played[2] & 0xFF ) << 8 ) | ( move_played[3] & 0xFF );
+    }
+
+    public static int readMove(byte[] frame, int offset) {
+        return ( ( frame[offset] & 0xFF ) << 8 ) | ( frame[offset + 1] & 0xFF );
+    }
+
+    public static int movedPiece(byte[] move_played) {
+        return ( move_played[6] >>> 4 ) & 0xF;
+    }
+
+    public static int eatenPiece(byte[] move_played) {
+        return move_played[6] & 0xF;
+    }
+
+    public static int flags(byte[] move_played) {
+        return move_played[7];
+    }
+
+    /**
+     * Encodes the state of the board on 32 bytes.
+     *
+     * @param board The state of the board, as given by game.Board#getState()
+     * @return The frame
+     */
+    public static ByteBuffer board(char[][] board) {
+        ByteBuffer frame = Frame.allocate(Frame.BOARD, 32);
+        for (int cell=0; cell<64; cell+=2) {
+            int low  = pieceCode(board[row(cell)][column(cell)]);
+            int high = pieceCode(board[row(cell + 1)][column(cell + 1)]);
+            frame.put((byte) ( ( high << 4 ) | low ));
+        }
+        return frame.flip();
+    }
+
+    /**
+     * Decodes the state of the board.
+     *
+     * @param frame The frame, without the length prefix
+     * @return The state of the board, an empty cell being ' '
+     */
+    public static char[][] toBoard(byte[] frame) {
+        char[][] board = new char[8][8];
+        for (int cell=0; cell<64; cell++) {
+            int code = ( frame[1 + cell/2] >>> ( 4 * ( cell % 2 ) ) ) & 0xF;
+            board[row(cell)][column(cell)] = code == NONE ? ' ' : pieceId(code);
+        }
+        return board;
+    }
+
+    /**
+     * Encodes a move sent by a client.
+     *
+     * @param move The move, as given by {@link #move(int, int, int)}
+     * @return The frame
+     */
+    public static ByteBuffer moveRequest(int move) {
+        return Frame.allocate(Frame.MOVE, MOVE_LENGTH).putShort((short) move).flip();
+    }
+
+    /**
+     * Encodes the choice of a piece of promotion sent by a client.
+     *
+     * @param piece The code of the piece
+     * @return The frame
+     */
+    public static ByteBuffer promotionChoice(int piece) {
+        return Frame.allocate(Frame.PROMOTION, PROMOTION_LENGTH).put((byte) piece).flip();
+    }
+
+    /**
+     * Encodes the request to join a game sent by a client when connecting.
+     *
+     * @param time_control The minutes per strike wanted, {@link #ANY_TIME_CONTROL} for the default
+     * @param rating The rating of the player, {@link #NO_RATING} if unknown
+     * @return The frame
+     */
+    public static ByteBuffer join(int time_control, int rating) {
+        return Frame.allocate(Frame.JOIN, JOIN_LENGTH).put((byte) time_control).putShort((short) rating).flip();
+    }
+
+    public static int timeControl(byte[] join) {
+        return join[1] & 0xFF;
+    }
+
+    public static int rating(byte[] join) {
+        return ( ( join[2] & 0xFF ) << 8 ) | ( join[3] & 0xFF );
+    }
+
+    /**
+     * Encodes the credentials of a player to rejoin its game, sent by the server.
+     *
+     * @param game The identifier of the game
+     * @param token The token of the player
+     * @return The frame
+     */
+    public static ByteBuffer credentials(long game, long token) {
+        return Frame.allocate(Frame.CREDENTIALS, 16).putLong(game).putLong(token).flip();
+    }
+
+    /**
+     * Encodes the request to rejoin a game sent by a client when connecting, with the
+     * credentials received from the server.
+     *
+     * @param game The identifier of the game
+     * @param token The token of the player
+     * @return The frame
+     */
+    public static ByteBuffer rejoin(long game, long token) {
+        return Frame.allocate(Frame.REJOIN, REJOIN_LENGTH).putLong(game).putLong(token).flip();
+    }
+
+    public static long gameId(byte[] credentials) {
+        return ByteBuffer.wrap(credentials, 1, 8).getLong();
+    }
+
+    public static long token(byte[] credentials) {
+        return ByteBuffer.wrap(credentials, 9, 8).getLong();
+    }
+
+    /**
+     * Encodes the request of the state of the board sent by a client.
+     *
+     * @return The frame
+     */
+    public static ByteBuffer boardRequest() {
+        return Frame.allocate(Frame.BOARD_REQUEST, 0).flip();
+    }
+
+}
@@ -0,0 +1,123 @@
+package network;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * This class is the non-blocking transport of the server: a small number of I/O threads,
+ * each owning a selector, serve all the connections. The messages are exchanged as
+ * length-prefixed frames (see {@link Frame}).
+ */
+public class Transport {
+
+    private final IoLoop[] loops;
+    private final AtomicInteger next_loop = new AtomicInteger();
+    private final AtomicInteger nb_connections = new AtomicInteger();
+
+
+    /**
+     * Starts the I/O threads.
+     *
+     * @param nb_threads Number of I/O threads
+     * @throws IOException If a selector cannot be opened
+     */
+    public Transport(int nb_threads) throws IOException {
+        loops = new IoLoop[nb_threads];
+        for (int i=0; i<nb_threads; i++) {
+            loops[i] = new IoLoop(this);
+            Thread thread = new Thread(loops[i], "io-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Starts as many I/O threads as half the available processors, and at least one.
+     *
+     * @throws IOException If a selector cannot be opened
+     */
+    public Transport() throws IOException {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Hands a connected channel over to one of the I/O threads.
+     *
+     * @param channel The channel of the client
+     * @return The connection with the client
+     * @throws IOException If the channel cannot be configured
+     */
+    public Connection register(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        IoLoop loop = loops[Math.floorMod(next_loop.getAndIncrement(), loops.length)];
+        Connection connection = new Connection(channel, loop);
+        nb_connections.incrementAndGet();
+        loop.register(connection);
+        return connection;
+    }
+
+    public int getConnections() {
+        return nb_connections.get();
+    }
+
+    /**
+     * Gives the number of bytes received from the clients since the start of the transport.
+     *
+     * @return The number of bytes
+     */
+    public long getBytesRead() {
+        long bytes = 0;
+        for (IoLoop loop : loops)
+            bytes += loop.bytes_read;
+        return bytes;
+    }
+
+    /**
+     * Gives the number of bytes sent to the clients since the start of the transport.
+     *
+     * @return The number of bytes
+     */
+    public long getBytesWritten() {
+        long bytes = 0;
+        for (IoLoop loop : loops)
+            bytes += loop.bytes_written;
+        return bytes;
+    }
+
+    /*
+     * Called by the I/O threads when a connection is closed.
+     */
+    void closed(Connection connection) {
+        synchronized (nb_connections) {
+            nb_connections.decrementAndGet();
+            nb_connections.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the I/O threads, once the closed connections wrote their pending frames.
+     *
+     * @param timeout Maximum time to wait for the connections in milliseconds
+     */
+    public void shutdown(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (nb_connections) {
+            long remaining;
+            while ( ( nb_connections.get() > 0 ) && ( ( remaining = deadline - System.currentTimeMillis() ) > 0 ) ) {
+                try {
+                    nb_connections.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        for (IoLoop loop : loops)
+            loop.shutdown();
+    }
+
+}
@@ -1,36 +1,14 @@
 package pieces;
 
-import java.util.Arrays;
-
 /**
  * Represents a Bishop.
  */
 public class Bishop extends Piece {
 
+    private static final MoveTable MOVES = MoveTable.sliding(new int[][]{ {1,1}, {-1,1}, {1,-1}, {-1,-1} });
+
     public Bishop(int color){
-        super(color);
-        for (int i=1; i<8; i++){
-            allowed_moves.add(Arrays.asList(i,i));
-            allowed_moves.add(Arrays.asList(-i,i));
-            allowed_moves.add(Arrays.asList(i,-i));
-            allowed_moves.add(Arrays.asList(-i,-i));
-        }
+        super(color, PieceType.BISHOP, MOVES);
     }
 
-    /**
-     * {@inheritDoc}
-     *
-     * @return The description
-     */
-    @Override
-    public String str() { return "bishop"; }
-
-    /**
-     * {@inheritDoc}
-     *
-     * @return The ID
-     */
-    @Override
-    public char getID() { return 'f'; }
-
 }
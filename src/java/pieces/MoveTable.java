@@ -0,0 +1,83 @@
+package pieces;
+
+import game.Board;
+
+
+/**
+ * This class represents the moves allowed to a kind of piece, each move in this shape
+ * [vertical move, horizontal move]. A table is built once per kind of piece and shared by
+ * all its pieces. The moves are also indexed in a 15x15 table, one cell per move from -7
+ * to 7 cells in each direction, so that checking a move is a single lookup.
+ */
+public final class MoveTable {
+
+    private static final int MAX_MOVE = Board.BOARD_WIDTH - 1;
+    private static final int SIZE     = 2*MAX_MOVE + 1;
+
+    private final int[] vertical_moves;
+    private final int[] horizontal_moves;
+    private final boolean[] allowed = new boolean[SIZE*SIZE];
+
+    /**
+     * Builds the table of a piece moving by steps.
+     *
+     * @param moves The allowed moves, [vertical move, horizontal move]
+     */
+    MoveTable(int[][] moves) {
+        vertical_moves   = new int[moves.length];
+        horizontal_moves = new int[moves.length];
+        for (int i=0; i<moves.length; i++){
+            vertical_moves[i]   = moves[i][0];
+            horizontal_moves[i] = moves[i][1];
+            allowed[index(moves[i][0], moves[i][1])] = true;
+        }
+    }
+
+    /**
+     * Builds the table of a piece sliding in some directions, as far as the board allows.
+     *
+     * @param directions The directions, [vertical move, horizontal move] of one cell
+     * @return The table
+     */
+    static MoveTable sliding(int[][] directions) {
+        int[][] moves = new int[MAX_MOVE*directions.length][];
+        for (int i=1; i<=MAX_MOVE; i++){
+            for (int d=0; d<directions.length; d++)
+                moves[(i-1)*directions.length + d] = new int[]{ i*directions[d][0], i*directions[d][1] };
+        }
+        return new MoveTable(moves);
+    }
+
+    /*
+     * Gives the index of a move in the 15x15 table.
+     */
+    private static int index(int vertical_move, int horizontal_move) {
+        return ( vertical_move + MAX_MOVE )*SIZE + horizontal_move + MAX_MOVE;
+    }
+
+    public int size() {
+        return vertical_moves.length;
+    }
+
+    public int verticalMove(int i) {
+        return vertical_moves[i];
+    }
+
+    public int horizontalMove(int i) {
+        return horizontal_moves[i];
+    }
+
+    /**
+     * Checks that a move is allowed.
+     *
+     * @param vertical_move The vertical move
+     * @param horizontal_move The horizontal move
+     * @return A boolean for the purpose
+     */
+    public boolean contains(int vertical_move, int horizontal_move) {
+        if ( ( Math.abs(vertical_move) > MAX_MOVE ) || ( Math.abs(horizontal_move) > MAX_MOVE ) )
+            return false;
+        return allowed[index(vertical_move, horizontal_move)];
+    }
+
+}
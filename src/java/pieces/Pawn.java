@@ -4,113 +4,71 @@ import game.Board;
 import game.Color;
 import game.Player;
 
-import java.util.Arrays;
-import java.util.List;
-
 /**
  * Represents a pawn.
  */
 public class Pawn extends Piece {
 
-    private boolean has_moved  = false;
-    private boolean in_passing = false;
-    private int direction = -1;
-
-
+    private static final MoveTable MOVES = new MoveTable(new int[][]{ {1,0}, {2,0}, {1,-1}, {1,1} });
 
-    public boolean hasMoved() { return has_moved; }
+    private final int direction;
+    private final int starting_row;
 
-    public void setHasMoved(boolean has_moved) {
-        this.has_moved = has_moved;
-    }
-
-    public boolean isInPassing() {
-        return in_passing;
-    }
-
-    public void setInPassing(boolean in_passing) {
-        this.in_passing = in_passing;
-    }
 
     public Pawn(int color){
-        super(color);
-        if ( color == Color.BLACK )
-            direction = 1;
-        allowed_moves.add(Arrays.asList(1,0));
-        allowed_moves.add(Arrays.asList(2,0));
-        allowed_moves.add(Arrays.asList(1,-1));
-        allowed_moves.add(Arrays.asList(1,1));
-    }
-
-    /**
-     * {@inheritDoc}
-     *
-     * @return The description
-     */
-    @Override
-    public String str() {
-        return "pawn";
+        super(color, PieceType.PAWN, MOVES);
+        direction    = ( color == Color.BLACK ) ? 1 : -1;
+        starting_row = ( color == Color.BLACK ) ? 1 : Board.BOARD_HEIGHT - 2;
     }
 
-    /**
-     * {@inheritDoc}
-     *
-     * @return The ID
-     */
-    @Override
-    public char getID() { return 'p'; }
-
     /**
      * {@inheritDoc}
      *
      * @param board The board to consider
      * @param player The player owning the piece
-     * @param start_cell The starting cell to consider
-     * @param end_cell The ending cell to consider
+     * @param start_square The starting square to consider
+     * @param end_square The ending square to consider
      * @return A boolean for the purpose
      */
     @Override
-    public boolean canMove(Board board, Player player, List<Integer> start_cell, List<Integer> end_cell) {
+    public boolean canMove(Board board, Player player, int start_square, int end_square) {
 
-        int vertical_move   = (end_cell.get(0)-start_cell.get(0))*direction;
-        int horizontal_move = end_cell.get(1)-start_cell.get(1);
+        int start_row       = Board.row(start_square);
+        int vertical_move   = (Board.row(end_square)-start_row)*direction;
+        int horizontal_move = Board.column(end_square)-Board.column(start_square);
 
-        Piece[][] board_game = board.getBoard();
+        long end_bit = 1L << end_square;
 
-        /* Move in allowed_moves + 2 ahead only if first move */
-        if ( !allowed_moves.contains(Arrays.asList(vertical_move, horizontal_move)) || ((vertical_move == 2) && has_moved) )
+        /* Move in allowed_moves + 2 ahead only if first move (the pawn is still on its starting row) */
+        if ( !allowed_moves.contains(vertical_move, horizontal_move)
+                || ((vertical_move == 2) && ( start_row != starting_row )) )
             return false;
         /* Checking nobody on the cell(s) when moving ahead */
         else if ( horizontal_move == 0 ){
             for (int i=1; i<=vertical_move; i++){
-                Piece piece = board_game[start_cell.get(0)+direction*i][start_cell.get(1)];
-                if ( piece != null )
+                if ( ( board.getOccupancy() & Board.bit(start_row+direction*i, Board.column(start_square)) ) != 0 )
                     return false;
             }
         }
         /* Checks if can eat (in passing or normal) */
         else {
-            Piece piece = board_game[end_cell.get(0)][end_cell.get(1)];
-            /* In passing */
-            if ( piece == null ) {
-                Piece in_passing_piece = board_game[start_cell.get(0)][start_cell.get(1)+horizontal_move];
-                if ( ( in_passing_piece == null ) || !in_passing_piece.str().equals("pawn") ||
-                        ( in_passing_piece.getColor() == color ) ||
-                        !((Pawn) in_passing_piece).isInPassing())
+            /* In passing: the pawn next to the starting cell has just moved 2 cells ahead */
+            if ( ( board.getOccupancy() & end_bit ) == 0 ) {
+                if ( end_square != board.getEnPassant() )
                     return false;
             }
             /* Can only eat opposite color */
-            else if ( piece.getColor() == color )
+            else if ( ( board.getOccupancy(color) & end_bit ) != 0 )
                 return false;
         }
 
         /* Checking that not in check after playing the move */
-        Board cloned_board = board.getClone();
-        cloned_board.simulation(start_cell, end_cell);
-        return !player.isInCheck(cloned_board);
+        board.makeMove(start_square, end_square);
+        boolean in_check = player.isInCheck(board);
+        board.unmakeMove();
+        return !in_check;
     }
 
-
     /**
      * {@inheritDoc}
      *
@@ -3,30 +3,40 @@ package pieces;
 import game.Board;
 import game.Player;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
 
 /**
- * This class represents a chess piece.
+ * This class represents a chess piece. A piece is immutable, the state of the game (castling
+ * rights, possibility to eat in passing) being kept by the board, so that a single piece of
+ * each kind and color is shared by all the boards, see {@link Board#piece(int, int)}.
  */
 public abstract class Piece {
 
     protected final int color;
+    protected final PieceType type;
 
-    /* Each allowed move is a list in this shape [vertical move, horizontal move] */
-    protected final List<List<Integer>> allowed_moves = new ArrayList<>();
+    /* The allowed moves, shared by the pieces of the same kind */
+    protected final MoveTable allowed_moves;
 
 
-    public Piece(int color){ this.color = color; }
+    public Piece(int color, PieceType type, MoveTable allowed_moves){
+        this.color = color;
+        this.type  = type;
+        this.allowed_moves = allowed_moves;
+    }
+
+    /**
+     * Gets the kind of the piece, to switch on it rather than on its description.
+     *
+     * @return The kind
+     */
+    public final PieceType getType() { return type; }
 
     /**
      * Gets a string describing the piece.
      *
      * @return The description
      */
-    public abstract String str();
+    public final String str() { return type.str(); }
 
     /**
      *
@@ -39,7 +49,7 @@ public abstract class Piece {
      *
      * @return The ID
      */
-    public abstract char getID();
+    public final char getID() { return type.getID(); }
 
     /**
      * This function determines if, given a starting cell, the piece can do a move on the board.
@@ -47,20 +57,22 @@ public abstract class Piece {
      *
      * @param board The board to consider
      * @param player The player owning the piece
-     * @param start_cell The starting cell to consider
+     * @param start_square The starting square to consider, see {@link Board#square(int, int)}
      * @return A boolean for the purpose
      */
-    public boolean canMove(Board board, Player player, List<Integer> start_cell) {
+    public boolean canMove(Board board, Player player, int start_square) {
+
+        int start_row    = Board.row(start_square);
+        int start_column = Board.column(start_square);
 
-        for (List<Integer> move: allowed_moves){
-            List<Integer> end_cell = new ArrayList<>();
-            end_cell.add(start_cell.get(0)+move.get(0)*getDirection());
-            end_cell.add(start_cell.get(1)+move.get(1));
+        for (int i=0; i<allowed_moves.size(); i++){
+            int end_row    = start_row+allowed_moves.verticalMove(i)*getDirection();
+            int end_column = start_column+allowed_moves.horizontalMove(i);
 
             /* Check the move is not out of the board */
-            if ( (-1 < end_cell.get(0)) && (end_cell.get(0) < Board.BOARD_HEIGHT) &&
-                    (-1 < end_cell.get(1)) && (end_cell.get(1) < Board.BOARD_WIDTH) &&
-                    canMove(board, player, start_cell, end_cell) ) {
+            if ( (-1 < end_row) && (end_row < Board.BOARD_HEIGHT) &&
+                    (-1 < end_column) && (end_column < Board.BOARD_WIDTH) &&
+                    canMove(board, player, start_square, Board.square(end_row, end_column)) ) {
                 return true;
             }
         }
@@ -75,55 +87,55 @@ public abstract class Piece {
      *
      * @param board The board to consider
      * @param player The player owning the piece
-     * @param start_cell The starting cell to consider
-     * @param end_cell The ending cell to consider
+     * @param start_square The starting square to consider, see {@link Board#square(int, int)}
+     * @param end_square The ending square to consider
      * @return A boolean for the purpose
      */
-    public boolean canMove(Board board, Player player, List<Integer> start_cell, List<Integer> end_cell) {
-
-        Piece[][] board_game = board.getBoard();
-        Piece opponent_piece = board_game[end_cell.get(0)][end_cell.get(1)];
+    public boolean canMove(Board board, Player player, int start_square, int end_square) {
 
         /* Move in allowed_moves
          + If eat a piece, this piece is the opposite color
          + Check the piece can go through another piece */
-        if ( !allowedMove(start_cell, end_cell) ||
-                (( opponent_piece != null ) && ( opponent_piece.getColor() == color )) ||
-                !canGoThrough(board_game, start_cell, end_cell) )
+        if ( !allowedMove(start_square, end_square) ||
+                (( board.getOccupancy(color) & ( 1L << end_square ) ) != 0) ||
+                !canGoThrough(board, start_square, end_square) )
             return false;
 
         /* Checking that not in check after playing the move */
-        Board cloned_board = board.getClone();
-        cloned_board.simulation(start_cell, end_cell);
-        return !player.isInCheck(cloned_board);
+        board.makeMove(start_square, end_square);
+        boolean in_check = player.isInCheck(board);
+        board.unmakeMove();
+        return !in_check;
     }
 
     /**
      * Checks that the move is in allowed_moves
      *
-     * @param start_cell The starting cell to consider
-     * @param end_cell The ending cell to consider
+     * @param start_square The starting square to consider
+     * @param end_square The ending square to consider
      * @return A boolean for the purpose
      */
-    public boolean allowedMove(List<Integer> start_cell, List<Integer> end_cell) {
-        int vertical_move   = (end_cell.get(0)-start_cell.get(0))*getDirection();
-        int horizontal_move = end_cell.get(1)-start_cell.get(1);
-        return allowed_moves.contains(Arrays.asList(vertical_move, horizontal_move));
+    public boolean allowedMove(int start_square, int end_square) {
+        int vertical_move   = (Board.row(end_square)-Board.row(start_square))*getDirection();
+        int horizontal_move = Board.column(end_square)-Board.column(start_square);
+        return allowed_moves.contains(vertical_move, horizontal_move);
     }
 
     /**
      * Checks whether the piece is stopped by other pieces for moving.
      * The default behaviour is a piece cannot go through another piece.
      *
-     * @param board_game The board to consider
-     * @param start_cell The starting cell to consider
-     * @param end_cell The ending cell to consider
+     * @param board The board to consider
+     * @param start_square The starting square to consider
+     * @param end_square The ending square to consider
      * @return A boolean for the purpose
      */
-    public boolean canGoThrough(Piece[][] board_game, List<Integer> start_cell, List<Integer> end_cell){
+    public boolean canGoThrough(Board board, int start_square, int end_square){
 
-        int vertical_move   = (end_cell.get(0)-start_cell.get(0))*getDirection();
-        int horizontal_move = end_cell.get(1)-start_cell.get(1);
+        int start_row    = Board.row(start_square);
+        int start_column = Board.column(start_square);
+        int vertical_move   = (Board.row(end_square)-start_row)*getDirection();
+        int horizontal_move = Board.column(end_square)-start_column;
         int vertical_direction   = 0;
         int horizontal_direction = 0;
 
@@ -133,8 +145,9 @@ public abstract class Piece {
             horizontal_direction = horizontal_move/Math.abs(horizontal_move);
 
         /* The default behaviour is a piece cannot go through another piece */
+        long occupied = board.getOccupancy();
         for (int i=1; i<Math.max(Math.abs(vertical_move), Math.abs(horizontal_move)); i++){
-            if ( board_game[start_cell.get(0)+i*vertical_direction][start_cell.get(1)+i*horizontal_direction] != null )
+            if ( ( occupied & Board.bit(start_row+i*vertical_direction*getDirection(), start_column+i*horizontal_direction) ) != 0 )
                 return false;
         }
 
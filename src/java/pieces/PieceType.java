@@ -0,0 +1,36 @@
+package pieces;
+
+/**
+ * The kinds of pieces. The ordinal of a kind is the index of its bitboard, see game.Board#PAWN...
+ */
+public enum PieceType {
+
+    PAWN("pawn", 'p'),
+    KNIGHT("knight", 'c'),
+    BISHOP("bishop", 'f'),
+    ROOK("rook", 't'),
+    QUEEN("queen", 'd'),
+    KING("king", 'r');
+
+    private final String str;
+    private final char id;
+
+    PieceType(String str, char id) {
+        this.str = str;
+        this.id  = id;
+    }
+
+    public String str() {
+        return str;
+    }
+
+    /**
+     * Gets the ID of the kind, the ID of the black pieces. The IDs are the French initials.
+     *
+     * @return The ID
+     */
+    public char getID() {
+        return id;
+    }
+
+}
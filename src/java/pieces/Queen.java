@@ -1,43 +1,14 @@
 package pieces;
 
-import java.util.Arrays;
-
 /**
  * Represents a queen.
  */
 public class Queen extends Piece {
 
-    public Queen(int color){
-        super(color);
-        for (int i=1; i<8; i++){
-            allowed_moves.add(Arrays.asList(i,i));
-            allowed_moves.add(Arrays.asList(-i,i));
-            allowed_moves.add(Arrays.asList(i,-i));
-            allowed_moves.add(Arrays.asList(-i,-i));
-            allowed_moves.add(Arrays.asList(i,0));
-            allowed_moves.add(Arrays.asList(-i,0));
-            allowed_moves.add(Arrays.asList(0,i));
-            allowed_moves.add(Arrays.asList(0,-i));
-        }
-    }
+    private static final MoveTable MOVES = MoveTable.sliding(new int[][]{ {1,1}, {-1,1}, {1,-1}, {-1,-1}, {1,0}, {-1,0}, {0,1}, {0,-1} });
 
-    /**
-     * {@inheritDoc}
-     *
-     * @return The description
-     */
-    @Override
-    public String str() {
-        return "queen";
+    public Queen(int color){
+        super(color, PieceType.QUEEN, MOVES);
     }
 
-    /**
-     * {@inheritDoc}
-     *
-     * @return The ID
-     */
-    @Override
-    public char getID() { return 'd'; }
-
-
 }
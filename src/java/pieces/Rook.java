@@ -1,41 +1,14 @@
 package pieces;
 
-import java.util.Arrays;
-
 /**
  * Represents a rook.
  */
 public class Rook extends Piece {
 
-    private boolean can_castle = true;
+    private static final MoveTable MOVES = MoveTable.sliding(new int[][]{ {1,0}, {-1,0}, {0,1}, {0,-1} });
 
     public Rook(int color){
-        super(color);
-        for (int i=1; i<8; i++){
-            allowed_moves.add(Arrays.asList(i,0));
-            allowed_moves.add(Arrays.asList(-i,0));
-            allowed_moves.add(Arrays.asList(0,i));
-            allowed_moves.add(Arrays.asList(0,-i));
-        }
+        super(color, PieceType.ROOK, MOVES);
     }
 
-    /**
-     * {@inheritDoc}
-     *
-     * @return The description
-     */
-    @Override
-    public String str() { return "rook"; }
-
-    /**
-     * {@inheritDoc}
-     *
-     * @return The ID
-     */
-    @Override
-    public char getID() { return 't'; }
-
-    public boolean canCastle() { return can_castle; }
-
-    public void setCanCastle(boolean can_castle) { this.can_castle = can_castle; }
 }
@@ -0,0 +1,126 @@
+package server;
+
+import exceptions.Break75StrikeRuleException;
+import exceptions.FiveInHistoryException;
+import game.Board;
+import game.Player;
+import game.Strike;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+
+/**
+ * This class is a game of the archive (see {@link GameArchive}), read in place from the mapping
+ * of the archive: nothing is copied until a strike or a field is asked. The record of a game is
+ * a header followed by the strikes of the game, 2 bytes per strike, padded to 8 bytes:
+ * <ul>
+ *     <li>identifier of the game (8 bytes), 0 marking the end of the archive</li>
+ *     <li>hash of the final position (8 bytes), see {@link Board#getHash()}</li>
+ *     <li>location of the previous game archived ending in the same position, 0 if none
+ *     (8 bytes)</li>
+ *     <li>time of the end of the game in milliseconds since the epoch (8 bytes)</li>
+ *     <li>number of strikes (2 bytes)</li>
+ *     <li>code of the result, see network.Protocol (1 byte), color of the winner, -1 if none
+ *     (1 byte), time control (1 byte), and 3 bytes reserved</li>
+ * </ul>
+ */
+public class ArchivedGame {
+
+    static final int HEADER_LENGTH = 40;
+
+    static final int ID           = 0;
+    static final int HASH         = 8;
+    static final int PREVIOUS     = 16;
+    static final int END_TIME     = 24;
+    static final int NB_MOVES     = 32;
+    static final int RESULT       = 34;
+    static final int WINNER       = 35;
+    static final int TIME_CONTROL = 36;
+
+    private final ByteBuffer record;
+
+
+    ArchivedGame(ByteBuffer record) {
+        this.record = record;
+    }
+
+    /**
+     * Gives the length of the record of a game.
+     *
+     * @param nb_moves The number of strikes of the game
+     * @return The length in bytes, a multiple of 8
+     */
+    static int length(int nb_moves) {
+        return ( HEADER_LENGTH + 2*nb_moves + 7 ) & ~7;
+    }
+
+    public long getId() {
+        return record.getLong(ID);
+    }
+
+    public long getHash() {
+        return record.getLong(HASH);
+    }
+
+    /**
+     * Gives the previous game archived ending in the same position.
+     *
+     * @return The location of the game in the archive, 0 if none
+     */
+    long getPrevious() {
+        return record.getLong(PREVIOUS);
+    }
+
+    public long getEndTime() {
+        return record.getLong(END_TIME);
+    }
+
+    public int getNbMoves() {
+        return record.getShort(NB_MOVES) & 0xFFFF;
+    }
+
+    public byte getResult() {
+        return record.get(RESULT);
+    }
+
+    public int getWinner() {
+        return record.get(WINNER);
+    }
+
+    public int getTimeControl() {
+        return record.get(TIME_CONTROL) & 0xFF;
+    }
+
+    /**
+     * Gives a strike of the game.
+     *
+     * @param strike The number of the strike, from 0
+     * @return The move, see game.Move, with the piece of a promotion
+     */
+    public int getMove(int strike) {
+        return record.getShort(HEADER_LENGTH + 2*strike) & 0xFFFF;
+    }
+
+    /**
+     * Replays the strikes of the game on a new board.
+     *
+     * @return The board in the final position of the game
+     */
+    public Board replay() {
+        Board board = new Board();
+        List<Player> players = GameStore.offlinePlayers();
+        int nb_moves = getNbMoves();
+        try {
+            for (int i=0; i<nb_moves; i++)
+                board.update(players, Strike.fromMove(getMove(i), board.getSideToMove(), board));
+        } catch (Break75StrikeRuleException | FiveInHistoryException e) {
+            // The draws are detected once the last strike is played
+        } catch (IOException e) {
+            // Not sent, the players have no connection
+        }
+        return board;
+    }
+
+}
@@ -0,0 +1,92 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * This class represents the clock of a player. The player has a total time for the game,
+ * credited with an increment after each strike (Fischer), and the clock only starts running
+ * once the delay of each strike has passed. The flag of the player falls when the total time
+ * runs out, the fall being fired by a {@link TimerWheel} rather than by a thread waiting for
+ * the player.
+ * <p>
+ * A total time of 0 with a delay gives a fixed time per strike.
+ */
+public class Clock {
+
+    private final long increment; // In milliseconds
+    private final long delay;     // In milliseconds
+
+    private long remaining;        // In milliseconds
+    private long start_time = 0;   // In nanoseconds, when the clock was started
+    private TimerWheel.Timeout flag_fall = null;
+
+
+    /**
+     * Initialize the clock.
+     *
+     * @param total_time The time of the player for the game in milliseconds
+     * @param increment The time credited after each strike in milliseconds
+     * @param delay The time of each strike not counted on the clock in milliseconds
+     */
+    public Clock(long total_time, long increment, long delay) {
+        this.remaining = total_time;
+        this.increment = increment;
+        this.delay = delay;
+    }
+
+    /**
+     * Gives a clock allowing a fixed time per strike.
+     *
+     * @param strike_time The time of each strike in milliseconds
+     * @return The clock
+     */
+    public static Clock perStrike(long strike_time) {
+        return new Clock(0, 0, strike_time);
+    }
+
+    /**
+     * Starts the clock at the beginning of the turn of the player.
+     *
+     * @param timers The wheel firing the fall of the flag
+     * @param on_flag_fall The task run by the wheel if the flag falls
+     */
+    public void start(TimerWheel timers, Runnable on_flag_fall) {
+        start_time = System.nanoTime();
+        flag_fall = timers.schedule(on_flag_fall, delay + remaining);
+    }
+
+    /**
+     * Stops the clock at the end of the turn of the player, and credits the increment.
+     *
+     * @return false if the flag fell before, true otherwise
+     */
+    public boolean stop() {
+        if ( !flag_fall.cancel() )
+            return false;
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start_time);
+        remaining -= Math.max(0, elapsed - delay);
+        if ( remaining < 0 )
+            return false; // Fell between two ticks of the wheel
+        remaining += increment;
+        return true;
+    }
+
+    /**
+     * Cancels the fall of the flag, when the game ends during the turn of the player.
+     */
+    public void cancel() {
+        if ( flag_fall != null )
+            flag_fall.cancel();
+    }
+
+    /**
+     * Gives the time left to the player, as of the last strike.
+     *
+     * @return The time in milliseconds
+     */
+    public long getRemaining() {
+        return remaining;
+    }
+
+}
@@ -0,0 +1,299 @@
+package server;
+
+import game.Color;
+import game.Move;
+import network.Protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * This class is the log of the events of the server: connections, starts of the games, moves,
+ * results and timeouts. The log is written in rolling files, one event per line:
+ * <pre>
+ * time_in_ms game EVENT arguments
+ * 1718000000000 12 MOVE 1 e2-e4
+ * </pre>
+ * The game 0 is used for the events outside of the games.
+ * <p>
+ * Logging an event does not wait for the disk: the threads of the games put their events in
+ * a ring buffer, without lock, and a single writer thread drains it by batches into the files.
+ * When the ring buffer is full the event is dropped rather than waiting, the number of dropped
+ * events being logged afterward.
+ */
+public class EventLog {
+
+    private static final int CAPACITY = 1 << 16; // Events, a power of 2
+    private static final long MAX_FILE_SIZE = 64L << 20;
+    private static final long IDLE_WAIT = 5_000_000; // In nanoseconds, when the ring buffer is empty
+
+    private static final byte CONNECTION = 1;
+    private static final byte START      = 2;
+    private static final byte MOVE       = 3;
+    private static final byte RESULT     = 4;
+    private static final byte TIMEOUT    = 5;
+
+    /* Ring buffer, the fields of the events in parallel arrays */
+    private final long[] times  = new long[CAPACITY];
+    private final long[] games  = new long[CAPACITY];
+    private final byte[] kinds  = new byte[CAPACITY];
+    private final int[] first_args  = new int[CAPACITY];
+    private final int[] second_args = new int[CAPACITY];
+
+    /* Sequence number of the event published in each slot, -1 if none yet */
+    private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+
+    private final AtomicLong next_sequence = new AtomicLong();
+    private volatile long written_sequence = 0; // Sequence of the next event to write
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final boolean enabled;
+    private final File directory;
+    private FileChannel file = null;
+    private long file_size = 0;
+    private volatile boolean closed = false;
+    private Thread writer = null;
+
+
+    private EventLog(File directory) {
+        this.enabled = directory != null;
+        this.directory = directory;
+        for (int i=0; i<CAPACITY; i++)
+            published.set(i, -1);
+    }
+
+    /**
+     * Gives a log discarding the events, when the verbose mode is off.
+     *
+     * @return The log
+     */
+    public static EventLog disabled() {
+        return new EventLog(null);
+    }
+
+    /**
+     * Starts the writer thread of a log.
+     *
+     * @param directory The directory of the files of the log, created if needed
+     * @return The log
+     * @throws IOException If the first file cannot be created
+     */
+    public static EventLog open(File directory) throws IOException {
+        EventLog log = new EventLog(directory);
+        if ( !directory.isDirectory() && !directory.mkdirs() )
+            throw new IOException("Unable to create the directory " + directory);
+        log.roll();
+        log.writer = new Thread(log::write, "event-log");
+        log.writer.setDaemon(true);
+        log.writer.start();
+        return log;
+    }
+
+    public void connection() {
+        add(0, CONNECTION, 0, 0);
+    }
+
+    /**
+     * Logs the start of a game.
+     *
+     * @param game The identifier of the game
+     * @param strike_timeout The timeout of the strikes in milliseconds
+     */
+    public void start(long game, int strike_timeout) {
+        add(game, START, strike_timeout, 0);
+    }
+
+    /**
+     * Logs a move played.
+     *
+     * @param game The identifier of the game
+     * @param strike The number of the strike in the game
+     * @param move The move, see {@link Move}
+     */
+    public void move(long game, int strike, int move) {
+        add(game, MOVE, strike, move);
+    }
+
+    /**
+     * Logs the end of a game.
+     *
+     * @param game The identifier of the game
+     * @param result The event ending the game, see {@link Protocol}
+     * @param color The color given by the event, -1 if none
+     */
+    public void result(long game, byte result, int color) {
+        add(game, RESULT, result, color);
+    }
+
+    /**
+     * Logs the fall of the flag of a player.
+     *
+     * @param game The identifier of the game
+     * @param color The color of the player
+     */
+    public void timeout(long game, int color) {
+        add(game, TIMEOUT, color, 0);
+    }
+
+    /**
+     * Stops the writer thread once the events logged are written.
+     */
+    public void close() {
+        if ( !enabled || closed )
+            return;
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Puts an event in the ring buffer, or drops it if the buffer is full.
+     */
+    private void add(long game, byte kind, int first_arg, int second_arg) {
+        if ( !enabled )
+            return;
+
+        long sequence;
+        do {
+            sequence = next_sequence.get();
+            if ( sequence - written_sequence >= CAPACITY ) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while ( !next_sequence.compareAndSet(sequence, sequence + 1) );
+
+        int slot = (int) (sequence & (CAPACITY - 1));
+        times[slot] = System.currentTimeMillis();
+        games[slot] = game;
+        kinds[slot] = kind;
+        first_args[slot]  = first_arg;
+        second_args[slot] = second_arg;
+        published.lazySet(slot, sequence); // Makes the fields visible to the writer
+    }
+
+    /*
+     * The loop of the writer thread: writes the published events by batches.
+     */
+    private void write() {
+        StringBuilder lines = new StringBuilder();
+        long reported_dropped = 0;
+        while ( true ) {
+            boolean closing = closed;
+            long sequence = written_sequence;
+            int slot = (int) (sequence & (CAPACITY - 1));
+            while ( published.get(slot) == sequence ) {
+                format(lines, slot);
+                sequence++;
+                slot = (int) (sequence & (CAPACITY - 1));
+            }
+            written_sequence = sequence; // Frees the slots
+
+            long nb_dropped = dropped.get();
+            if ( nb_dropped != reported_dropped ) {
+                lines.append(System.currentTimeMillis()).append(" 0 DROPPED ").append(nb_dropped - reported_dropped).append('\n');
+                reported_dropped = nb_dropped;
+            }
+
+            if ( lines.length() > 0 ) {
+                flush(lines);
+                lines.setLength(0);
+            }
+            else if ( closing )
+                break;
+            else
+                LockSupport.parkNanos(IDLE_WAIT);
+        }
+        try {
+            file.close();
+        } catch (IOException ignored) {}
+    }
+
+    /*
+     * Appends the line of an event.
+     */
+    private void format(StringBuilder lines, int slot) {
+        lines.append(times[slot]).append(' ').append(games[slot]).append(' ');
+        switch ( kinds[slot] ) {
+            case CONNECTION:
+                lines.append("CONNECTION");
+                break;
+            case START:
+                lines.append("START ").append(first_args[slot]/60000);
+                break;
+            case MOVE:
+                lines.append("MOVE ").append(first_args[slot]).append(' ').append(Move.str(second_args[slot]));
+                break;
+            case RESULT:
+                lines.append("RESULT ").append(result(first_args[slot]));
+                if ( Color.str(second_args[slot]) != null )
+                    lines.append(' ').append(Color.str(second_args[slot]));
+                break;
+            case TIMEOUT:
+                lines.append("TIMEOUT ").append(Color.str(first_args[slot]));
+                break;
+        }
+        lines.append('\n');
+    }
+
+    /*
+     * Gives the name of an event ending a game.
+     */
+    private static String result(int result) {
+        switch ( result ) {
+            case Protocol.CHECKMATE:             return "CHECKMATE";
+            case Protocol.STALEMATE:             return "STALEMATE";
+            case Protocol.TIMEOUT:               return "TIMEOUT";
+            case Protocol.OPPONENT_UNREACHABLE:  return "UNREACHABLE";
+            case Protocol.DRAW_75_STRIKES:       return "DRAW_75_STRIKES";
+            case Protocol.DRAW_FIVE_REPETITIONS: return "DRAW_FIVE_REPETITIONS";
+            case Protocol.ABORTED:               return "ABORTED";
+            default:                             return Integer.toString(result);
+        }
+    }
+
+    /*
+     * Appends lines to the current file, rolling to a new file when it is full. The events are
+     * lost if the disk fails, the games go on.
+     */
+    private void flush(StringBuilder lines) {
+        try {
+            ByteBuffer bytes = StandardCharsets.US_ASCII.encode(lines.toString());
+            if ( file_size + bytes.remaining() > MAX_FILE_SIZE )
+                roll();
+            while ( bytes.hasRemaining() )
+                file_size += file.write(bytes);
+        } catch (IOException e) {
+            System.out.println("Unable to write the event log: " + e.getMessage());
+            System.out.flush();
+        }
+    }
+
+    /*
+     * Closes the current file and opens the next one, named after the current time.
+     */
+    private void roll() throws IOException {
+        if ( file != null )
+            file.close();
+        String name = "server-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File path = new File(directory, name + ".log");
+        for (int i=1; path.exists(); i++)
+            path = new File(directory, name + "-" + i + ".log");
+        file = FileChannel.open(path.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        file_size = 0;
+    }
+
+}
@@ -0,0 +1,259 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * This class archives the finished games in memory-mapped segment files of 256 MB, appended
+ * one game after the other (see {@link ArchivedGame} for the record of a game). Two sidecar
+ * indexes give the location of the games from their identifier and from the hash of their
+ * final position (see {@link IdIndex} and {@link HashIndex}), the games ending in the same
+ * position being chained from the last one. The archive is read in place from the mappings,
+ * so that it holds tens of millions of games without taking room in the heap: a lookup gives
+ * a view of the record in the mapping.
+ * <p>
+ * A location packs the number of the segment (high 32 bits) and the offset of the record in
+ * the segment (low 32 bits). The identifier of a game is written last, so that a record cut
+ * by a crash ends the archive. The games archived but not indexed when the server stopped are
+ * indexed when the archive opens.
+ * <p>
+ * A failure of the disk does not stop the games: the archive reports it and stops archiving.
+ */
+public class GameArchive {
+
+    private static final int MAGIC   = 0x43484741; // "CHGA"
+    private static final int VERSION = 1;
+
+    private static final int SEGMENT_HEADER_LENGTH = 64;
+    private static final int SEGMENT_LENGTH        = 1 << 28;
+
+    public static final String ID_INDEX   = "games.id.index";
+    public static final String HASH_INDEX = "games.hash.index";
+
+    private final File directory;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final IdIndex ids;
+    private final HashIndex hashes;
+    private long end; // Location of the next game
+    private boolean failed = false;
+
+
+    private GameArchive(File directory, IdIndex ids, HashIndex hashes) {
+        this.directory = directory;
+        this.ids = ids;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Gives an archive keeping nothing, the games being lost once finished.
+     *
+     * @return The archive
+     */
+    public static GameArchive disabled() {
+        GameArchive archive = new GameArchive(null, null, null);
+        archive.failed = true;
+        return archive;
+    }
+
+    /**
+     * Opens the archive, and indexes the games archived but not indexed yet.
+     *
+     * @param directory The directory of the archive
+     * @return The archive
+     * @throws IOException If the archive cannot be mapped
+     */
+    public static GameArchive open(File directory) throws IOException {
+        if ( !directory.isDirectory() && !directory.mkdirs() )
+            throw new IOException("Unable to create the directory " + directory);
+        GameArchive archive = new GameArchive(directory, IdIndex.open(new File(directory, ID_INDEX)),
+                HashIndex.open(new File(directory, HASH_INDEX)));
+        for (int number=0; ( number == 0 ) || segmentFile(directory, number).exists(); number++)
+            archive.mapSegment(number);
+        archive.recover();
+        return archive;
+    }
+
+    /*
+     * Gives the file of a segment.
+     */
+    private static File segmentFile(File directory, int number) {
+        return new File(directory, String.format("games-%06d.archive", number));
+    }
+
+    /*
+     * Maps a segment, created if needed.
+     */
+    private void mapSegment(int number) throws IOException {
+        MappedByteBuffer segment;
+        try (FileChannel file = FileChannel.open(segmentFile(directory, number).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = file.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_LENGTH);
+        }
+        if ( segment.getInt(0) == 0 )
+            segment.putInt(0, MAGIC).putInt(4, VERSION);
+        else if ( ( segment.getInt(0) != MAGIC ) || ( segment.getInt(4) != VERSION ) )
+            throw new IOException("Not a segment of the archive: " + segmentFile(directory, number));
+        segments.add(segment);
+    }
+
+    /*
+     * Finds the end of the archive from the end of the indexed games, indexing the games
+     * archived after it.
+     */
+    private void recover() throws IOException {
+        long indexed_end = Math.min(ids.getIndexedEnd(), hashes.getIndexedEnd());
+        end = ( indexed_end == 0 ) ? location(0, SEGMENT_HEADER_LENGTH) : indexed_end;
+        while ( true ) {
+            ByteBuffer segment = segments.get(segment(end));
+            int offset = offset(end);
+            long id = ( offset + ArchivedGame.HEADER_LENGTH <= SEGMENT_LENGTH ) ? segment.getLong(offset + ArchivedGame.ID) : 0;
+            if ( id == 0 ) {
+                if ( segment(end) + 1 == segments.size() )
+                    break;
+                end = location(segment(end) + 1, SEGMENT_HEADER_LENGTH); // The next game did not fit in the segment
+                continue;
+            }
+            int length = ArchivedGame.length(segment.getShort(offset + ArchivedGame.NB_MOVES) & 0xFFFF);
+            if ( offset + length > SEGMENT_LENGTH )
+                break;
+            if ( end >= ids.getIndexedEnd() )
+                ids.put(id, end);
+            if ( end >= hashes.getIndexedEnd() )
+                hashes.put(segment.getLong(offset + ArchivedGame.HASH), end);
+            end += length;
+        }
+        ids.setIndexedEnd(end);
+        hashes.setIndexedEnd(end);
+    }
+
+    /**
+     * Archives a finished game.
+     *
+     * @param id The identifier of the game
+     * @param time_control The minutes per strike, Protocol.ANY_TIME_CONTROL for the default
+     * @param result The code of the result, see network.Protocol
+     * @param winner The color of the winner, -1 if none
+     * @param hash The hash of the final position, see game.Board#getHash()
+     * @param moves The strikes of the game, see game.Move, with the piece of a promotion
+     * @param nb_moves The number of strikes
+     */
+    public synchronized void add(long id, int time_control, byte result, int winner, long hash, int[] moves, int nb_moves) {
+        if ( failed )
+            return;
+        try {
+            int length = ArchivedGame.length(nb_moves);
+            if ( offset(end) + length > SEGMENT_LENGTH ) {
+                mapSegment(segments.size());
+                end = location(segments.size() - 1, SEGMENT_HEADER_LENGTH);
+            }
+
+            ByteBuffer segment = segments.get(segment(end));
+            int offset = offset(end);
+            for (int i=0; i<nb_moves; i++)
+                segment.putShort(offset + ArchivedGame.HEADER_LENGTH + 2*i, (short) moves[i]);
+            segment.putLong(offset + ArchivedGame.HASH, hash);
+            segment.putLong(offset + ArchivedGame.PREVIOUS, hashes.find(hash));
+            segment.putLong(offset + ArchivedGame.END_TIME, System.currentTimeMillis());
+            segment.putShort(offset + ArchivedGame.NB_MOVES, (short) nb_moves);
+            segment.put(offset + ArchivedGame.RESULT, result);
+            segment.put(offset + ArchivedGame.WINNER, (byte) winner);
+            segment.put(offset + ArchivedGame.TIME_CONTROL, (byte) time_control);
+            segment.putLong(offset + ArchivedGame.ID, id);
+
+            long location = end;
+            end += length;
+            ids.put(id, location);
+            hashes.put(hash, location);
+            ids.setIndexedEnd(end);
+            hashes.setIndexedEnd(end);
+        } catch (IOException e) {
+            failed = true;
+            System.out.println("Unable to archive the games, the games are no longer archived: " + e.getMessage());
+            System.out.flush();
+        }
+    }
+
+    /**
+     * Gives an archived game from its identifier.
+     *
+     * @param id The identifier of the game
+     * @return The game, read in place, null if the game is not in the archive
+     */
+    public synchronized ArchivedGame get(long id) {
+        if ( ids == null )
+            return null;
+        long location = ids.find(id);
+        if ( location == 0 )
+            return null;
+        ArchivedGame game = game(location);
+        return ( game.getId() == id ) ? game : null;
+    }
+
+    /**
+     * Gives the archived games ending in a position.
+     *
+     * @param hash The hash of the final position, see game.Board#getHash()
+     * @return The games, read in place, in the order they were archived
+     */
+    public synchronized List<ArchivedGame> findByFinalPosition(long hash) {
+        List<ArchivedGame> games = new ArrayList<>();
+        if ( hashes == null )
+            return games;
+        for (long location=hashes.find(hash); location != 0; location=games.get(games.size() - 1).getPrevious())
+            games.add(game(location));
+        Collections.reverse(games);
+        return games;
+    }
+
+    /**
+     * Gives the number of archived games.
+     *
+     * @return The number
+     */
+    public synchronized long size() {
+        return ( ids == null ) ? 0 : ids.size();
+    }
+
+    /**
+     * Writes the archive and its indexes to the disk.
+     */
+    public synchronized void close() {
+        if ( ids == null )
+            return;
+        for (MappedByteBuffer segment : segments)
+            segment.force();
+        ids.force();
+        hashes.force();
+    }
+
+    /*
+     * Gives a view of the record of a game in its segment.
+     */
+    private ArchivedGame game(long location) {
+        ByteBuffer segment = segments.get(segment(location));
+        int offset = offset(location);
+        int length = ArchivedGame.length(segment.getShort(offset + ArchivedGame.NB_MOVES) & 0xFFFF);
+        return new ArchivedGame(segment.slice(offset, length));
+    }
+
+    private static long location(int segment, int offset) {
+        return ( (long) segment << 32 ) | offset;
+    }
+
+    private static int segment(long location) {
+        return (int) ( location >>> 32 );
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+}
@@ -0,0 +1,355 @@
+package server;
+
+import exceptions.Break75StrikeRuleException;
+import exceptions.FiveInHistoryException;
+import game.*;
+import network.Protocol;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * This class represents one game hosted by the server, from the choice of the colors
+ * to the disconnection of the players. Each session owns its board and its players, so
+ * that an error in one game (a player disconnecting for example) only ends this game.
+ * The clocks of the players are run by a timer wheel shared by the games, see {@link Clock},
+ * the moves and the result are written in the event log of the server, and the steps of the
+ * game loop are measured in the metrics of the server.
+ * <p>
+ * Each strike is recorded in the store of the games before being sent to the players, so that
+ * the game can resume from the same position if the server crashes: the players receive a
+ * token when the game starts (see {@link Protocol#credentials(long, long)}) to rejoin it.
+ * Once finished, the game is archived with its strikes and its result, see {@link GameArchive}.
+ */
+public class GameSession implements Runnable {
+
+    public static final int default_strike_timeout = 600000; // 10 minutes
+
+    private final long id;
+    private final List<Player> players;
+    private final int strike_timeout; // In milliseconds
+    private final int time_control;
+    private final TimerWheel timers;
+    private final EventLog events;
+    private final Metrics metrics;
+    private final GameStore store;
+    private final GameArchive archive;
+    private final PositionCache positions;
+    private final Clock[] clocks = new Clock[2]; // Indexed by color
+    private final RecoveredGame recovered; // null for a new game
+
+    private Board board;
+    private int[] moves = new int[128];
+    private int nb_moves = 0;
+    private byte result = Protocol.ABORTED;
+    private int winner = -1;
+
+
+    /**
+     * Initialize the session.
+     *
+     * @param id The identifier of the game, used in the messages displayed by the server
+     * @param players The 2 connected players
+     * @param time_control The minutes per strike, Protocol.ANY_TIME_CONTROL for the default
+     * @param services The services of the server
+     */
+    public GameSession(long id, List<Player> players, int time_control, Services services) {
+        this(id, players, time_control, services, null);
+    }
+
+    /**
+     * Initialize the session of a game resuming after a crash of the server.
+     *
+     * @param game The game rebuilt from the journal, both players rejoined
+     * @param services The services of the server
+     */
+    public GameSession(RecoveredGame game, Services services) {
+        this(game.getId(), game.getPlayers(), game.getTimeControl(), services, game);
+    }
+
+    private GameSession(long id, List<Player> players, int time_control, Services services, RecoveredGame recovered) {
+        this.id = id;
+        this.players = players;
+        this.time_control = time_control;
+        this.strike_timeout = strikeTimeout(time_control);
+        this.timers = services.getTimers();
+        this.events = services.getEvents();
+        this.metrics = services.getMetrics();
+        this.store = services.getStore();
+        this.archive = services.getArchive();
+        this.positions = services.getPositions();
+        this.recovered = recovered;
+        for (int color=0; color<clocks.length; color++)
+            clocks[color] = Clock.perStrike(strike_timeout);
+    }
+
+    /**
+     * Gives the timeout of the strikes for a time control.
+     *
+     * @param time_control The minutes per strike, Protocol.ANY_TIME_CONTROL for the default
+     * @return The timeout in milliseconds
+     */
+    public static int strikeTimeout(int time_control) {
+        if ( time_control == Protocol.ANY_TIME_CONTROL )
+            return default_strike_timeout;
+        return time_control*60000;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getStrikeTimeout() {
+        return strike_timeout;
+    }
+
+    /**
+     * Plays the game until its end, then disconnects the players. Never throws, whatever
+     * happens to the game, so that the other games hosted by the server are not impacted.
+     */
+    @Override
+    public void run() {
+        metrics.gameStarted();
+        long start_bytes = Metrics.allocatedBytes();
+        try {
+            play();
+        } catch (RuntimeException e) {
+            display("Unexpected error, the game is aborted: " + e);
+            ended(Protocol.ABORTED, -1, -1);
+            sendToPlayers(Protocol.event(Protocol.ABORTED));
+        } finally {
+            for (Clock clock: clocks)
+                clock.cancel();
+            store.end(id);
+            if ( board != null )
+                archive.add(id, time_control, result, winner, board.getHash(), moves, nb_moves);
+            disconnectPlayers();
+            metrics.gameEnded(start_bytes);
+        }
+    }
+
+    /*
+     * The game loop.
+     */
+    private void play() {
+
+        int color_to_play;
+        if ( recovered == null ) {
+            /* Choose the color of the players, players.get(0) choose randomly, and notify the players */
+            int random_color = new Random().nextInt(2);
+            if ( random_color == Color.WHITE )
+                swap();
+            players.get(Color.BLACK).setColor(Color.BLACK);
+            players.get(Color.WHITE).setColor(Color.WHITE);
+            long[] tokens = store.newTokens();
+            store.start(id, time_control, tokens);
+            try {
+                players.get(Color.BLACK).send(Protocol.credentials(id, tokens[Color.BLACK]));
+                players.get(Color.BLACK).sendEvent(Protocol.COLOR, Color.BLACK);
+            } catch (IOException ignored) {}
+            try {
+                players.get(Color.WHITE).send(Protocol.credentials(id, tokens[Color.WHITE]));
+                players.get(Color.WHITE).sendEvent(Protocol.COLOR, Color.WHITE);
+            } catch (IOException ignored) {}
+            board = new Board();
+            board.setPositionCache(positions);
+            display("Game starts");
+        }
+        else {
+            /* The players rejoined with their color, their clients kept the board */
+            players.get(Color.BLACK).setColor(Color.BLACK);
+            players.get(Color.WHITE).setColor(Color.WHITE);
+            board = recovered.getBoard();
+            board.setPositionCache(positions);
+            for (int move : recovered.getMoves())
+                played(move);
+            display("Game resumes after " + board.getStrikeCounter() + " strikes");
+        }
+
+        /* *********************************** Game Loop *********************************** */
+        color_to_play = board.getSideToMove();
+        events.start(id, strike_timeout);
+
+        try {
+
+            /* The legal moves are listed once per strike, to know whether the game goes on and to check the strikes */
+            while ( canMove(board) ) {
+
+                players.get(color_to_play).sendEvent(Protocol.YOUR_TURN);
+                players.get(Color.getOpponentColor(color_to_play)).sendEvent(Protocol.OPPONENT_TURN);
+
+                /* The clock of the player runs until its strike is played, promotion included */
+                clocks[color_to_play].start(timers, players.get(color_to_play)::flagFall);
+
+                Strike strike = players.get(color_to_play).nextStrike(board);
+
+                while (!isAllowed(strike, board)) {
+                    players.get(color_to_play).addInvalidStrike();
+                    metrics.invalidMove();
+                    players.get(color_to_play).sendEvent(Protocol.INVALID_MOVE);
+                    strike = players.get(color_to_play).nextStrike(board);
+                }
+
+                /* The clock stops before the board changes, a strike played too late being left out of the game */
+                strike = board.choosePromotion(players.get(color_to_play), strike);
+                if ( !clocks[color_to_play].stop() )
+                    throw new SocketTimeoutException("Time of the player ran out");
+
+                long start_time = System.nanoTime();
+                ByteBuffer event = board.update(players, strike);
+                metrics.recordUpdate(start_time);
+                metrics.move();
+                played(board.getLastMove());
+                store.move(id, board.getLastMove());
+                sendToPlayers(event);
+                events.move(id, board.getStrikeCounter(), board.getLastMove());
+                color_to_play = Color.getOpponentColor(color_to_play);
+            }
+
+            byte result = board.result(players.get(color_to_play));
+            sendToPlayers(Protocol.event(result, color_to_play));
+            ended(result, color_to_play, ( result == Protocol.CHECKMATE ) ? Color.getOpponentColor(color_to_play) : -1);
+            if ( result == Protocol.CHECKMATE )
+                display("The "+Color.str(color_to_play)+" player is in checkmate. The "+Color.str(Color.getOpponentColor(color_to_play))+" player wins.");
+            else
+                display("The "+Color.str(color_to_play)+" player cannot move and is not in check. Stalemate.");
+
+        } catch (SocketTimeoutException e){ // If timeout expired
+            try {
+                /* A heartbeat need to be sent to make sure the player didn't disconnected while waiting */
+                players.get(Color.getOpponentColor(color_to_play)).sendEvent(Protocol.HEARTBEAT);
+            } catch (IOException ignored) {}
+            sendToPlayers(Protocol.event(Protocol.TIMEOUT, Color.getOpponentColor(color_to_play), strike_timeout/60000));
+            events.timeout(id, color_to_play);
+            metrics.timeout();
+            ended(Protocol.TIMEOUT, Color.getOpponentColor(color_to_play), Color.getOpponentColor(color_to_play));
+            display("Timeout expired - " + (strike_timeout/60000) + " minutes. Game ends. Player "
+                    +Color.str(Color.getOpponentColor(color_to_play))+" wins");
+        }
+        catch (IOException e) { // If someone disconnected
+            int alive_color = Color.BLACK;
+            try {
+                players.get(Color.BLACK).sendEvent(Protocol.HEARTBEAT);
+            } catch (IOException ignored) {
+                alive_color = Color.WHITE;
+            }
+            try {
+                players.get(alive_color).sendEvent(Protocol.OPPONENT_UNREACHABLE, Color.getOpponentColor(alive_color));
+            } catch (IOException ignored) {}
+            ended(Protocol.OPPONENT_UNREACHABLE, Color.getOpponentColor(alive_color), alive_color);
+            metrics.disconnection();
+            display("Player "+Color.str(Color.getOpponentColor(alive_color))+" is unreachable, the connection is corrupted. Game ends. Player "+Color.str(alive_color)+" wins.");
+        }
+        catch (Break75StrikeRuleException e) { // If the 75 strike rule applies
+            sendToPlayers(Protocol.event(Protocol.DRAW_75_STRIKES));
+            played(board.getLastMove());
+            events.move(id, board.getStrikeCounter(), board.getLastMove());
+            ended(Protocol.DRAW_75_STRIKES, -1, -1);
+            display("Each player has played 50 strikes without eating any piece. Draw.");
+        } catch (FiveInHistoryException e) { // If the 76 hold rule applies
+            sendToPlayers(Protocol.event(Protocol.DRAW_FIVE_REPETITIONS));
+            played(board.getLastMove());
+            events.move(id, board.getStrikeCounter(), board.getLastMove());
+            ended(Protocol.DRAW_FIVE_REPETITIONS, -1, -1);
+            display("This game configuration already happened 5 times. Draw.");
+        }
+
+        int white_invalid_strikes = players.get(Color.WHITE).getInvalidStrikes();
+        int black_invalid_strikes = players.get(Color.BLACK).getInvalidStrikes();
+        if ( white_invalid_strikes + black_invalid_strikes > 0 )
+            display("Invalid strikes refused: " + white_invalid_strikes + " from the white player, "
+                    + black_invalid_strikes + " from the black player.");
+    }
+
+    /*
+     * Keeps a strike played, to archive the game.
+     *
+     * @param move The move, see Move, with the piece of a promotion
+     */
+    private void played(int move) {
+        if ( nb_moves == moves.length )
+            moves = Arrays.copyOf(moves, 2*nb_moves);
+        moves[nb_moves++] = move;
+    }
+
+    /*
+     * Logs the result of the game, and keeps it to archive the game.
+     *
+     * @param result The code of the result, see Protocol
+     * @param color The color sent with the result to the players, -1 if none
+     * @param winner The color of the winner, -1 if none
+     */
+    private void ended(byte result, int color, int winner) {
+        this.result = result;
+        this.winner = winner;
+        events.result(id, result, color);
+    }
+
+    /*
+     * Lists the legal moves of the color to play (see Board#getLegalMoves()) to know whether
+     * the game goes on.
+     */
+    private boolean canMove(Board board) {
+        long start_time = System.nanoTime();
+        boolean can_move = !board.getLegalMoves().isEmpty();
+        metrics.recordLegalMoves(start_time);
+        return can_move;
+    }
+
+    /*
+     * Checks whether a strike is allowed, against the legal moves listed by canMove().
+     */
+    private boolean isAllowed(Strike strike, Board board) {
+        long start_time = System.nanoTime();
+        boolean allowed = strike.isAllowed(board.getLegalMoves());
+        metrics.recordStrikeCheck(start_time);
+        return allowed;
+    }
+
+    /*
+     * Swap the players. May be used when deciding the color.
+     */
+    private void swap() {
+        Player tmp = players.get(0);
+        players.set(0, players.get(1));
+        players.set(1, tmp);
+    }
+
+    /*
+     * Disconnect the players of the game.
+     */
+    private void disconnectPlayers(){
+        for (Player player : players) {
+            player.disconnect();
+        }
+    }
+
+    /*
+     * Sends an event to both players.
+     *
+     * @param event The event to send
+     */
+    private void sendToPlayers(ByteBuffer event) {
+        for (Player player: players){
+            try {
+                player.send(event);
+            } catch (IOException ignored) {} // The client disconnected, nothing to do, the disconnections are already managed in play()
+        }
+    }
+
+    /*
+     * Display a message on the terminal, prefixed by the game identifier.
+     *
+     * @param message The message to display
+     */
+    private void display(String message) {
+        System.out.println("[game " + id + "] " + message);
+        System.out.flush();
+    }
+
+}
@@ -0,0 +1,393 @@
+package server;
+
+import exceptions.Break75StrikeRuleException;
+import exceptions.FiveInHistoryException;
+import game.Board;
+import game.Color;
+import game.Player;
+import game.Strike;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * This class keeps the games of the server in a journal (see {@link Journal}) so that they
+ * survive a crash of the server. When the server starts, the games still in progress in the
+ * journal are rebuilt by replaying their strikes on a board, and wait for their players to
+ * rejoin them (see {@link RecoveredGame}). The journal is then compacted: it is rewritten with
+ * the games in progress only, the identifiers of the games going on from the last one.
+ * <p>
+ * A failure of the disk does not stop the games: the store reports it and stops journaling.
+ */
+public class GameStore {
+
+    public static final String JOURNAL = "games.journal";
+
+    private final Journal journal; // null when disabled
+    private final AtomicLong last_game;
+    private final Map<Long, RecoveredGame> recovered = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private volatile boolean failed = false;
+    private long recovery_time = 0; // In milliseconds
+
+
+    /*
+     * A game in progress read from the journal.
+     */
+    private static class GameRecord {
+        private final int time_control;
+        private final long[] tokens;
+        private int[] moves = new int[64];
+        private int nb_moves = 0;
+
+        private GameRecord(int time_control, long[] tokens) {
+            this.time_control = time_control;
+            this.tokens = tokens;
+        }
+
+        private void add(int move) {
+            if ( nb_moves == moves.length )
+                moves = Arrays.copyOf(moves, 2 * nb_moves);
+            moves[nb_moves++] = move;
+        }
+    }
+
+
+    private GameStore(Journal journal, long last_game) {
+        this.journal = journal;
+        this.last_game = new AtomicLong(last_game);
+    }
+
+    /**
+     * Gives a store keeping nothing, the games being lost if the server stops.
+     *
+     * @return The store
+     */
+    public static GameStore disabled() {
+        return new GameStore(null, 0);
+    }
+
+    /**
+     * Opens the store: rebuilds the games in progress from the journal, compacts the journal
+     * and opens it to record the next strikes.
+     *
+     * @param directory The directory of the journal
+     * @return The store
+     * @throws IOException If the journal cannot be read or written
+     */
+    public static GameStore open(File directory) throws IOException {
+        long start_time = System.nanoTime();
+        if ( !directory.isDirectory() && !directory.mkdirs() )
+            throw new IOException("Unable to create the directory " + directory);
+        File path = new File(directory, JOURNAL);
+
+        long[] last_game = { 0 };
+        Map<Long, GameRecord> records = path.exists() ? read(path, last_game) : new LinkedHashMap<>();
+        List<RecoveredGame> games = new ArrayList<>();
+        for (Map.Entry<Long, GameRecord> entry : records.entrySet()) {
+            RecoveredGame game = replay(entry.getKey(), entry.getValue());
+            if ( game != null )
+                games.add(game);
+        }
+        compact(path, records, games, last_game[0]);
+
+        GameStore store = new GameStore(new Journal(path), last_game[0]);
+        for (RecoveredGame game : games)
+            store.recovered.put(game.getId(), game);
+        store.recovery_time = (System.nanoTime() - start_time) / 1000000;
+        return store;
+    }
+
+    /*
+     * Reads the games in progress in a journal, in the order of their start. A record cut by a
+     * crash ends the journal.
+     *
+     * @param path The file of the journal
+     * @param last_game Set to the highest identifier of game read
+     * @return The records of the games in progress by identifier
+     */
+    private static Map<Long, GameRecord> read(File path, long[] last_game) throws IOException {
+        Map<Long, GameRecord> records = new LinkedHashMap<>();
+        try (FileChannel file = FileChannel.open(path.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            while ( buffer.hasRemaining() ) {
+                int position = buffer.position();
+                byte kind = buffer.get(position);
+                int length = ( kind == Journal.START ) ? Journal.START_LENGTH
+                        : ( kind == Journal.MOVE ) ? Journal.MOVE_LENGTH
+                        : ( kind == Journal.END ) ? Journal.END_LENGTH : -1;
+                if ( ( length < 0 ) || ( buffer.remaining() < length ) )
+                    break;
+                long game = buffer.getLong(position + 1);
+                last_game[0] = Math.max(last_game[0], game);
+                if ( kind == Journal.START ) {
+                    long[] tokens = { buffer.getLong(position + 10), buffer.getLong(position + 18) };
+                    records.put(game, new GameRecord(buffer.get(position + 9) & 0xFF, tokens));
+                }
+                else if ( kind == Journal.MOVE ) {
+                    GameRecord record = records.get(game);
+                    if ( record != null )
+                        record.add(buffer.getShort(position + 9) & 0xFFFF);
+                }
+                else
+                    records.remove(game);
+                buffer.position(position + length);
+            }
+        }
+        return records;
+    }
+
+    /*
+     * Rebuilds the board of a game by replaying its strikes.
+     *
+     * @return The game, null if it actually ended with its last strike or if a strike cannot
+     *         be replayed
+     */
+    private static RecoveredGame replay(long id, GameRecord record) {
+        Board board = new Board();
+        List<Player> players = offlinePlayers();
+        try {
+            for (int i=0; i<record.nb_moves; i++)
+                board.update(players, Strike.fromMove(record.moves[i], board.getSideToMove(), board));
+        } catch (Break75StrikeRuleException | FiveInHistoryException e) {
+            return null;
+        } catch (IOException e) {
+            return null; // Not sent, the players have no connection
+        } catch (RuntimeException e) {
+            System.out.println("[game " + id + "] Not recovered, its strikes in the journal are corrupted: " + e);
+            System.out.flush();
+            return null;
+        }
+        if ( board.getLegalMoves().isEmpty() )
+            return null;
+        return new RecoveredGame(id, record.time_control, record.tokens, Arrays.copyOf(record.moves, record.nb_moves), board);
+    }
+
+    /*
+     * Gives players without connection, indexed by color, to replay strikes on a board.
+     */
+    static List<Player> offlinePlayers() {
+        List<Player> players = new ArrayList<>();
+        players.add(new Player(null));
+        players.add(new Player(null));
+        players.get(Color.BLACK).setColor(Color.BLACK);
+        players.get(Color.WHITE).setColor(Color.WHITE);
+        return players;
+    }
+
+    /*
+     * Rewrites the journal with the games in progress only. The first record keeps the highest
+     * identifier of game as the end of a game which is not in the journal.
+     */
+    private static void compact(File path, Map<Long, GameRecord> records, List<RecoveredGame> games, long last_game) throws IOException {
+        File compacted = new File(path.getPath() + ".tmp");
+        try (FileChannel file = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            buffer.put(Journal.END).putLong(last_game);
+            for (RecoveredGame game : games) {
+                GameRecord record = records.get(game.getId());
+                if ( buffer.remaining() < Journal.START_LENGTH + record.nb_moves*Journal.MOVE_LENGTH )
+                    buffer = flush(file, buffer, Journal.START_LENGTH + record.nb_moves*Journal.MOVE_LENGTH);
+                buffer.put(Journal.START).putLong(game.getId()).put((byte) record.time_control)
+                        .putLong(record.tokens[0]).putLong(record.tokens[1]);
+                for (int i=0; i<record.nb_moves; i++)
+                    buffer.put(Journal.MOVE).putLong(game.getId()).putShort((short) record.moves[i]);
+            }
+            flush(file, buffer, 0);
+            file.force(false);
+        }
+        Files.move(compacted.toPath(), path.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+     * Writes a buffer to a file.
+     *
+     * @return A buffer empty, large enough for the next bytes
+     */
+    private static ByteBuffer flush(FileChannel file, ByteBuffer buffer, int next_bytes) throws IOException {
+        buffer.flip();
+        while ( buffer.hasRemaining() )
+            file.write(buffer);
+        if ( buffer.capacity() < next_bytes )
+            return ByteBuffer.allocate(next_bytes);
+        return buffer.clear();
+    }
+
+    public long nextGameId() {
+        return last_game.incrementAndGet();
+    }
+
+    /**
+     * Gives new tokens for the players of a game to rejoin it.
+     *
+     * @return The tokens, indexed by color
+     */
+    public long[] newTokens() {
+        return new long[]{ random.nextLong(), random.nextLong() };
+    }
+
+    /**
+     * Records the start of a game.
+     *
+     * @param game The identifier of the game
+     * @param time_control The minutes per strike, Protocol.ANY_TIME_CONTROL for the default
+     * @param tokens The tokens of the players, indexed by color
+     */
+    public void start(long game, int time_control, long[] tokens) {
+        if ( ( journal == null ) || failed )
+            return;
+        try {
+            journal.start(game, time_control, tokens);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records a strike played, returning once it is durable.
+     *
+     * @param game The identifier of the game
+     * @param move The move, see game.Move, with the piece of a promotion
+     */
+    public void move(long game, int move) {
+        if ( ( journal == null ) || failed )
+            return;
+        try {
+            journal.move(game, move);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records the end of a game.
+     *
+     * @param game The identifier of the game
+     */
+    public void end(long game) {
+        if ( ( journal == null ) || failed )
+            return;
+        try {
+            journal.end(game);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /*
+     * Reports a failure of the journal, then stops journaling.
+     */
+    private synchronized void fail(IOException e) {
+        if ( failed )
+            return;
+        failed = true;
+        System.out.println("Unable to write the journal of the games, the games are no longer kept: " + e.getMessage());
+        System.out.flush();
+    }
+
+    /**
+     * Gives the games rebuilt from the journal waiting for their players.
+     *
+     * @return The games
+     */
+    public Collection<RecoveredGame> recoveredGames() {
+        return recovered.values();
+    }
+
+    /**
+     * Gives a game rebuilt from the journal waiting for its players.
+     *
+     * @param game The identifier of the game
+     * @return The game, null if there is no such game waiting
+     */
+    public RecoveredGame recovered(long game) {
+        return recovered.get(game);
+    }
+
+    /**
+     * Removes a game from the games waiting for their players, once resumed or abandoned.
+     *
+     * @param game The game
+     */
+    public void removeRecovered(RecoveredGame game) {
+        recovered.remove(game.getId());
+    }
+
+    /**
+     * Seats 2 players rejoining the same game rebuilt from the journal.
+     *
+     * @param players The players
+     * @return The game, ready to resume, null if the players cannot rejoin a game together
+     */
+    public RecoveredGame resume(List<Player> players) {
+        Player first = players.get(0);
+        Player second = players.get(1);
+        if ( !first.isRejoining() || !second.isRejoining() || ( first.getRejoinGame() != second.getRejoinGame() ) )
+            return null;
+        RecoveredGame game = recovered(first.getRejoinGame());
+        if ( game == null )
+            return null;
+        int first_color = game.colorOf(first.getRejoinToken());
+        int second_color = game.colorOf(second.getRejoinToken());
+        if ( ( first_color < 0 ) || ( second_color < 0 ) || ( first_color == second_color )
+                || ( game.join(first, first_color) < 0 ) )
+            return null;
+        if ( game.join(second, second_color) < 0 ) {
+            game.leave(first, first_color);
+            return null;
+        }
+        removeRecovered(game);
+        return game;
+    }
+
+    /**
+     * Abandons a game rebuilt from the journal if its players did not both rejoin it: the game
+     * ends in the journal.
+     *
+     * @param game The game
+     * @return The players who rejoined, to disconnect, null if the game resumed meanwhile
+     */
+    public List<Player> abandon(RecoveredGame game) {
+        List<Player> joined = game.abandon();
+        if ( joined == null )
+            return null;
+        removeRecovered(game);
+        end(game.getId());
+        return joined;
+    }
+
+    /**
+     * Gives the time taken to rebuild the games in progress when opening the store.
+     *
+     * @return The time in milliseconds
+     */
+    public long getRecoveryTime() {
+        return recovery_time;
+    }
+
+    /**
+     * Closes the journal once the records appended are durable.
+     */
+    public void close() {
+        if ( journal != null )
+            journal.close();
+    }
+
+}
@@ -0,0 +1,242 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * This class is the index of the archive of the games (see {@link GameArchive}) by the hash of
+ * their final position, kept in a memory-mapped file so that it does not take room in the
+ * heap: an open addressing hash table from the hash to the location of the last game archived
+ * ending in this position, the previous ones being chained from it in the archive. The table
+ * doubles when half full, being rebuilt in a new file which then replaces the previous one.
+ * <p>
+ * The first slot of a key is given by the high bits of the key mixed, so that the slots keep
+ * their order when the table doubles: the rebuilt table is written from start to end, instead
+ * of at random in a file of up to gigabytes.
+ * <p>
+ * The file starts with a header: magic number (4 bytes), version (4 bytes), capacity, number
+ * of entries and end of the games indexed in the archive (8 bytes each). Then come the slots:
+ * key and location (8 bytes each), the location 0 marking an empty slot.
+ */
+class HashIndex {
+
+    private static final int MAGIC   = 0x43484858; // "CHHX"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 64;
+    private static final int CAPACITY      = 8;
+    private static final int COUNT         = 16;
+    private static final int INDEXED_END   = 24;
+    private static final int SLOT_LENGTH   = 16;
+
+    private static final int CHUNK_BITS = 30; // The file is mapped by chunks of 1 GB, a mapping being limited to 2 GB
+    private static final long INITIAL_CAPACITY = 1 << 16;
+
+    private final File path;
+    private MappedByteBuffer[] chunks;
+    private long capacity;
+    private int shift; // 64 - log2(capacity)
+    private long count;
+
+
+    private HashIndex(File path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens an index, created empty if the file does not exist or is not an index.
+     *
+     * @param path The file of the index
+     * @return The index
+     * @throws IOException If the file cannot be mapped
+     */
+    static HashIndex open(File path) throws IOException {
+        HashIndex index = new HashIndex(path);
+        if ( !path.exists() || !index.load() )
+            index.create(path, INITIAL_CAPACITY);
+        return index;
+    }
+
+    /*
+     * Maps an existing index.
+     *
+     * @return Whether the file is a valid index
+     */
+    private boolean load() throws IOException {
+        long table_capacity;
+        try (FileChannel file = FileChannel.open(path.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if ( file.size() < HEADER_LENGTH )
+                return false;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while ( header.hasRemaining() && ( file.read(header, header.position()) > 0 ) );
+            table_capacity = header.getLong(CAPACITY);
+            if ( ( header.getInt(0) != MAGIC ) || ( header.getInt(4) != VERSION ) || ( Long.bitCount(table_capacity) != 1 )
+                    || ( file.size() != HEADER_LENGTH + table_capacity*SLOT_LENGTH ) )
+                return false;
+            chunks = map(file, file.size());
+        }
+        setCapacity(table_capacity);
+        count = getLong(COUNT);
+        return true;
+    }
+
+    /*
+     * Creates an empty index in a file, and maps it.
+     */
+    private void create(File target, long table_capacity) throws IOException {
+        try (FileChannel file = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            chunks = map(file, HEADER_LENGTH + table_capacity*SLOT_LENGTH);
+        }
+        setCapacity(table_capacity);
+        count = 0;
+        chunks[0].putInt(0, MAGIC).putInt(4, VERSION);
+        putLong(CAPACITY, capacity);
+        putLong(COUNT, 0);
+        putLong(INDEXED_END, 0);
+    }
+
+    /*
+     * Maps a file by chunks, the file being extended to the length if needed.
+     */
+    private static MappedByteBuffer[] map(FileChannel file, long length) throws IOException {
+        long chunk_length = 1L << CHUNK_BITS;
+        MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ( ( length + chunk_length - 1 ) >>> CHUNK_BITS )];
+        for (int i=0; i<mapped.length; i++) {
+            long position = (long) i << CHUNK_BITS;
+            mapped[i] = file.map(FileChannel.MapMode.READ_WRITE, position, Math.min(chunk_length, length - position));
+        }
+        return mapped;
+    }
+
+    /**
+     * Gives the number of entries.
+     *
+     * @return The number
+     */
+    long size() {
+        return count;
+    }
+
+    /**
+     * Gives the end of the games indexed in the archive, the games from there having to be
+     * indexed when the archive opens.
+     *
+     * @return The location in the archive, 0 if no game is indexed
+     */
+    long getIndexedEnd() {
+        return getLong(INDEXED_END);
+    }
+
+    void setIndexedEnd(long location) {
+        putLong(INDEXED_END, location);
+    }
+
+    /**
+     * Sets the location of the last game archived ending in a position, unless a later game
+     * is already indexed.
+     *
+     * @param key The hash of the position
+     * @param location The location of the game in the archive, not 0
+     * @throws IOException If the index cannot grow
+     */
+    void put(long key, long location) throws IOException {
+        if ( 2*( count + 1 ) > capacity )
+            grow();
+        insert(key, location);
+    }
+
+    /**
+     * Gives the location of the last game archived ending in a position.
+     *
+     * @param key The hash of the position
+     * @return The location in the archive, 0 if none
+     */
+    long find(long key) {
+        long slot = slot(key);
+        while ( ( location(slot) != 0 ) && ( key(slot) != key ) )
+            slot = ( slot + 1 ) & ( capacity - 1 );
+        return location(slot);
+    }
+
+    /**
+     * Writes the changes of the mapping to the disk.
+     */
+    void force() {
+        for (MappedByteBuffer chunk : chunks)
+            chunk.force();
+    }
+
+    /*
+     * Sets the location of a key in the table, which has room for a new key. The key is
+     * written before the location, so that a slot cut by a crash is empty.
+     */
+    private void insert(long key, long location) {
+        long slot = slot(key);
+        while ( ( location(slot) != 0 ) && ( key(slot) != key ) )
+            slot = ( slot + 1 ) & ( capacity - 1 );
+        if ( location(slot) == 0 ) {
+            putLong(HEADER_LENGTH + slot*SLOT_LENGTH, key);
+            putLong(COUNT, ++count);
+        }
+        else if ( location(slot) >= location )
+            return;
+        putLong(HEADER_LENGTH + slot*SLOT_LENGTH + 8, location);
+    }
+
+    /*
+     * Rebuilds the index in a table twice larger, which replaces the file once complete.
+     */
+    private void grow() throws IOException {
+        File rebuilt = new File(path.getPath() + ".tmp");
+        HashIndex larger = new HashIndex(path);
+        larger.create(rebuilt, 2*capacity);
+        for (long slot=0; slot<capacity; slot++) {
+            if ( location(slot) != 0 )
+                larger.insert(key(slot), location(slot));
+        }
+        larger.setIndexedEnd(getIndexedEnd());
+        larger.force();
+        Files.move(rebuilt.toPath(), path.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        chunks = larger.chunks;
+        setCapacity(larger.capacity);
+        count = larger.count;
+    }
+
+    private void setCapacity(long table_capacity) {
+        capacity = table_capacity;
+        shift = 64 - Long.numberOfTrailingZeros(table_capacity);
+    }
+
+    /*
+     * Gives the first slot to probe for a key: the high bits of the key multiplied by 2^64
+     * divided by the golden ratio (Fibonacci hashing).
+     */
+    private long slot(long key) {
+        return ( key * 0x9E3779B97F4A7C15L ) >>> shift;
+    }
+
+    private long key(long slot) {
+        return getLong(HEADER_LENGTH + slot*SLOT_LENGTH);
+    }
+
+    private long location(long slot) {
+        return getLong(HEADER_LENGTH + slot*SLOT_LENGTH + 8);
+    }
+
+    private long getLong(long position) {
+        return chunks[(int) ( position >>> CHUNK_BITS )].getLong((int) ( position & ( ( 1L << CHUNK_BITS ) - 1 ) ));
+    }
+
+    private void putLong(long position, long value) {
+        chunks[(int) ( position >>> CHUNK_BITS )].putLong((int) ( position & ( ( 1L << CHUNK_BITS ) - 1 ) ), value);
+    }
+
+}
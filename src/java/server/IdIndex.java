@@ -0,0 +1,146 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * This class is the index of the archive of the games (see {@link GameArchive}) by the
+ * identifier of the games, kept in a memory-mapped file so that it does not take room in the
+ * heap. The identifiers of the games being consecutive, the index is an array of locations in
+ * the archive indexed by identifier, the location 0 marking a game not archived. The games
+ * ending roughly in the order they started, the index is written from start to end, and
+ * grows by chunks of 64 MB (8M games).
+ * <p>
+ * The file starts with a header: magic number (4 bytes), version (4 bytes), number of entries
+ * and end of the games indexed in the archive (8 bytes each).
+ */
+class IdIndex {
+
+    private static final int MAGIC   = 0x43484944; // "CHID"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 64;
+    private static final int COUNT         = 8;
+    private static final int INDEXED_END   = 16;
+    private static final int ENTRY_LENGTH  = 8;
+
+    private static final int CHUNK_BITS = 26;
+
+    private final File path;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private long count;
+
+
+    private IdIndex(File path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens an index, created empty if the file does not exist or is not an index.
+     *
+     * @param path The file of the index
+     * @return The index
+     * @throws IOException If the file cannot be mapped
+     */
+    static IdIndex open(File path) throws IOException {
+        IdIndex index = new IdIndex(path);
+        try (FileChannel file = FileChannel.open(path.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while ( header.hasRemaining() && ( file.read(header, header.position()) > 0 ) );
+            boolean valid = ( header.getInt(0) == MAGIC ) && ( header.getInt(4) == VERSION )
+                    && ( file.size() % ( 1L << CHUNK_BITS ) == 0 );
+            if ( !valid )
+                file.truncate(0);
+            for (long position=0; ( position == 0 ) || ( position < file.size() ); position+=1L << CHUNK_BITS)
+                index.chunks.add(file.map(FileChannel.MapMode.READ_WRITE, position, 1L << CHUNK_BITS));
+            if ( !valid ) {
+                index.chunks.get(0).putInt(0, MAGIC).putInt(4, VERSION);
+                index.putLong(COUNT, 0);
+                index.putLong(INDEXED_END, 0);
+            }
+        }
+        index.count = index.getLong(COUNT);
+        return index;
+    }
+
+    /**
+     * Gives the number of entries.
+     *
+     * @return The number
+     */
+    long size() {
+        return count;
+    }
+
+    /**
+     * Gives the end of the games indexed in the archive, the games from there having to be
+     * indexed when the archive opens.
+     *
+     * @return The location in the archive, 0 if no game is indexed
+     */
+    long getIndexedEnd() {
+        return getLong(INDEXED_END);
+    }
+
+    void setIndexedEnd(long location) {
+        putLong(INDEXED_END, location);
+    }
+
+    /**
+     * Sets the location of a game, the index growing if needed.
+     *
+     * @param id The identifier of the game, positive
+     * @param location The location of the game in the archive, not 0
+     * @throws IOException If the index cannot grow
+     */
+    void put(long id, long location) throws IOException {
+        long position = HEADER_LENGTH + id*ENTRY_LENGTH;
+        if ( ( position >>> CHUNK_BITS ) >= chunks.size() ) {
+            try (FileChannel file = FileChannel.open(path.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                while ( ( position >>> CHUNK_BITS ) >= chunks.size() )
+                    chunks.add(file.map(FileChannel.MapMode.READ_WRITE, (long) chunks.size() << CHUNK_BITS, 1L << CHUNK_BITS));
+            }
+        }
+        if ( getLong(position) == 0 )
+            putLong(COUNT, ++count);
+        putLong(position, location);
+    }
+
+    /**
+     * Gives the location of a game.
+     *
+     * @param id The identifier of the game
+     * @return The location in the archive, 0 if the game is not archived
+     */
+    long find(long id) {
+        long position = HEADER_LENGTH + id*ENTRY_LENGTH;
+        if ( ( id <= 0 ) || ( ( position >>> CHUNK_BITS ) >= chunks.size() ) )
+            return 0;
+        return getLong(position);
+    }
+
+    /**
+     * Writes the changes of the mapping to the disk.
+     */
+    void force() {
+        for (MappedByteBuffer chunk : chunks)
+            chunk.force();
+    }
+
+    private long getLong(long position) {
+        return chunks.get((int) ( position >>> CHUNK_BITS )).getLong((int) ( position & ( ( 1L << CHUNK_BITS ) - 1 ) ));
+    }
+
+    private void putLong(long position, long value) {
+        chunks.get((int) ( position >>> CHUNK_BITS )).putLong((int) ( position & ( ( 1L << CHUNK_BITS ) - 1 ) ), value);
+    }
+
+}
@@ -0,0 +1,200 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * This class is the append-only journal of the games: one record per strike, and a record
+ * when a game starts and when it ends, so that the games in progress can be rebuilt after a
+ * crash of the server (see {@link GameStore}). The records are binary and of fixed size per
+ * kind:
+ * <ul>
+ *     <li>START: kind (1 byte), game (8 bytes), time control (1 byte), tokens of the black
+ *     and of the white player (8 bytes each).</li>
+ *     <li>MOVE: kind, game, move (2 bytes) with the piece of a promotion.</li>
+ *     <li>END: kind, game.</li>
+ * </ul>
+ * A record is durable once written and forced to the disk. Forcing costs milliseconds, so the
+ * records of all the games are committed by groups: a writer thread takes every record
+ * appended since its last write, writes and forces them at once, then wakes up their threads.
+ * The more games, the more records share a single force.
+ */
+public class Journal {
+
+    public static final byte START = 1;
+    public static final byte MOVE  = 2;
+    public static final byte END   = 3;
+
+    public static final int START_LENGTH = 1 + 8 + 1 + 8 + 8;
+    public static final int MOVE_LENGTH  = 1 + 8 + 2;
+    public static final int END_LENGTH   = 1 + 8;
+
+    private final FileChannel file;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition committed = lock.newCondition();
+
+    /* Records appended and not written yet, swapped with the buffer written by the writer thread */
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+    private long appended_records = 0;
+    private long committed_records = 0;
+    private IOException failure = null;
+    private boolean closed = false;
+
+
+    /**
+     * Opens a journal to append records, and starts its writer thread.
+     *
+     * @param path The file of the journal, created if needed
+     * @throws IOException If the file cannot be opened
+     */
+    public Journal(File path) throws IOException {
+        file = FileChannel.open(path.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        Thread writer = new Thread(this::write, "journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records the start of a game.
+     *
+     * @param game The identifier of the game
+     * @param time_control The minutes per strike, Protocol.ANY_TIME_CONTROL for the default
+     * @param tokens The tokens of the players to rejoin the game, indexed by color
+     * @throws IOException If the journal cannot be written
+     */
+    public void start(long game, int time_control, long[] tokens) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(START_LENGTH);
+        record.put(START).putLong(game).put((byte) time_control).putLong(tokens[0]).putLong(tokens[1]);
+        append(record.flip(), true);
+    }
+
+    /**
+     * Records a strike played, once durable.
+     *
+     * @param game The identifier of the game
+     * @param move The move, see game.Move, with the piece of a promotion
+     * @throws IOException If the journal cannot be written
+     */
+    public void move(long game, int move) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(MOVE_LENGTH);
+        record.put(MOVE).putLong(game).putShort((short) move);
+        append(record.flip(), true);
+    }
+
+    /**
+     * Records the end of a game, without waiting for the record to be durable: a game ended
+     * but still in progress in the journal is only rebuilt for nothing.
+     *
+     * @param game The identifier of the game
+     * @throws IOException If the journal cannot be written
+     */
+    public void end(long game) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(END_LENGTH);
+        record.put(END).putLong(game);
+        append(record.flip(), false);
+    }
+
+    /**
+     * Stops the writer thread once the records appended are durable, and closes the file.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            appended.signal();
+            while ( ( committed_records < appended_records ) && ( failure == null ) )
+                committed.awaitUninterruptibly();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Appends a record to the next group to commit.
+     *
+     * @param record The record
+     * @param durable Whether to wait for the record to be durable
+     */
+    private void append(ByteBuffer record, boolean durable) throws IOException {
+        lock.lock();
+        try {
+            if ( failure != null )
+                throw failure;
+            if ( closed )
+                throw new IOException("Journal closed");
+            if ( pending.remaining() < record.remaining() ) {
+                ByteBuffer larger = ByteBuffer.allocate(2 * pending.capacity());
+                larger.put(pending.flip());
+                pending = larger;
+            }
+            pending.put(record);
+            long record_number = ++appended_records;
+            appended.signal();
+            while ( durable && ( committed_records < record_number ) && ( failure == null ) )
+                committed.awaitUninterruptibly();
+            if ( failure != null )
+                throw failure;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * The loop of the writer thread: writes and forces the records appended meanwhile.
+     */
+    private void write() {
+        while ( true ) {
+            long group_end;
+            lock.lock();
+            try {
+                while ( ( pending.position() == 0 ) && !closed )
+                    appended.awaitUninterruptibly();
+                if ( pending.position() == 0 )
+                    break; // Closed, everything is committed
+                ByteBuffer group = pending;
+                pending = writing;
+                writing = group;
+                group_end = appended_records;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                writing.flip();
+                while ( writing.hasRemaining() )
+                    file.write(writing);
+                file.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            writing.clear();
+
+            lock.lock();
+            try {
+                if ( error != null )
+                    failure = error;
+                else
+                    committed_records = group_end;
+                committed.signalAll();
+                if ( failure != null )
+                    break;
+            } finally {
+                lock.unlock();
+            }
+        }
+        try {
+            file.close();
+        } catch (IOException ignored) {}
+    }
+
+}
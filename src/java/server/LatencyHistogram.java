@@ -0,0 +1,111 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * This class records latencies in nanoseconds, in buckets of logarithmic width: the values
+ * below 32 have their own bucket, then each power of 2 is split into 16 buckets, so that a
+ * recorded value is known within 1/16 of itself, from 1 ns to the largest long. Recording is
+ * an increment in a fixed array, without allocation nor lock, from any thread.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NB_BUCKETS = (64 - SUB_BUCKET_BITS)*SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NB_BUCKETS);
+
+
+    /**
+     * Records a latency.
+     *
+     * @param latency The latency in nanoseconds, the negative ones counting as 0
+     */
+    public void record(long latency) {
+        counts.getAndIncrement(bucket(Math.max(0, latency)));
+    }
+
+    /**
+     * Records the latency from a start time to now.
+     *
+     * @param start_time The start time, as given by System.nanoTime()
+     */
+    public void recordSince(long start_time) {
+        record(System.nanoTime() - start_time);
+    }
+
+    /**
+     * Gives the number of recorded latencies.
+     *
+     * @return The number
+     */
+    public long count() {
+        long count = 0;
+        for (int i=0; i<NB_BUCKETS; i++)
+            count += counts.get(i);
+        return count;
+    }
+
+    /**
+     * Gives a percentile of the recorded latencies, as the highest value of its bucket. The
+     * latencies recorded meanwhile may be partly counted.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The latency in nanoseconds, 0 if none is recorded
+     */
+    public long percentile(double percentile) {
+        long[] snapshot = new long[NB_BUCKETS];
+        long count = 0;
+        for (int i=0; i<NB_BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if ( count == 0 )
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(count*percentile/100));
+        long seen = 0;
+        for (int i=0; i<NB_BUCKETS; i++) {
+            seen += snapshot[i];
+            if ( seen >= rank )
+                return highestValue(i);
+        }
+        return highestValue(NB_BUCKETS - 1);
+    }
+
+    /**
+     * Gives the highest recorded latency, within its bucket.
+     *
+     * @return The latency in nanoseconds, 0 if none is recorded
+     */
+    public long max() {
+        for (int i=NB_BUCKETS-1; i>=0; i--) {
+            if ( counts.get(i) != 0 )
+                return highestValue(i);
+        }
+        return 0;
+    }
+
+    /*
+     * Gives the bucket of a value: the value itself below 2*SUB_BUCKETS, otherwise the
+     * SUB_BUCKET_BITS+1 highest bits of the value and the number of low bits dropped.
+     */
+    private static int bucket(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS + 1));
+        return shift*SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /*
+     * Gives the highest value of a bucket.
+     */
+    private static long highestValue(int bucket) {
+        if ( bucket < 2*SUB_BUCKETS )
+            return bucket;
+        int shift = bucket/SUB_BUCKETS - 1;
+        long lowest = (long) (bucket%SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + ( (1L << shift) - 1 );
+    }
+
+}
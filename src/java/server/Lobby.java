@@ -0,0 +1,273 @@
+package server;
+
+import game.Player;
+import network.Protocol;
+import network.Transport;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * This class pairs the connected players. Each connected player is handled by its own
+ * thread, which reads the preferences of the player (see {@link Protocol#join(int, int)})
+ * then looks for an opponent with the same time control and a close rating: the players
+ * wait in buckets, one per time control and rating band. The thread of the first player
+ * of a pair then runs the game loop. A player waiting for longer than the connection
+ * timeout is disconnected.
+ * <p>
+ * A bucket holds at most one waiting player, as a second compatible player is paired with
+ * it right away. Pairing is then a compare-and-set on the bucket, without lock: the players
+ * arriving at the same time do not wait for each other, and the thread accepting the
+ * connections only hands them over, the registration to the transport being done by the
+ * thread of the player.
+ * <p>
+ * A player rejoining a game interrupted by a crash of the server (see {@link GameStore}) does
+ * not wait in a bucket but for the other player of its game: the thread of the second player
+ * rejoining resumes the game. A game whose players do not both rejoin it within the
+ * connection timeout is abandoned.
+ * <p>
+ * When the server runs the engine (see engine.Engine), every player plays against the engine
+ * right away instead of waiting for an opponent.
+ */
+public class Lobby {
+
+    private static final int MAX_TIME_CONTROL = 255;   // Minutes per strike, 1 byte in the protocol
+    private static final int RATING_BAND      = 200;
+    private static final int RATING_BANDS     = 16;    // The last one is open, the band 0 is for the players without rating
+
+    private final ThreadFactory threads;
+    private final Transport transport;
+    private final Services services;
+    private final int connection_timeout;
+
+    /* The player waiting in each bucket, null if none, indexed by time control then rating band */
+    private final AtomicReferenceArray<Seat> waiting_seats = new AtomicReferenceArray<>((MAX_TIME_CONTROL + 1)*(RATING_BANDS + 1));
+
+
+    /*
+     * A player waiting for an opponent.
+     */
+    private static class Seat {
+        private final Player player;
+        private final CompletableFuture<Player> opponent = new CompletableFuture<>();
+
+        private Seat(Player player) { this.player = player; }
+    }
+
+    /**
+     * Initialize the lobby.
+     *
+     * @param threads The factory of the threads running the players and the games
+     * @param transport The transport of the connections of the players
+     * @param services The services of the server
+     * @param connection_timeout Maximum time in milliseconds for a player to wait for an opponent
+     */
+    public Lobby(ThreadFactory threads, Transport transport, Services services, int connection_timeout) {
+        this.threads = threads;
+        this.transport = transport;
+        this.services = services;
+        this.connection_timeout = connection_timeout;
+        for (RecoveredGame game : services.getStore().recoveredGames())
+            services.getTimers().schedule(() -> abandon(game), connection_timeout);
+    }
+
+    /**
+     * Handles a newly connected client in its own thread.
+     *
+     * @param channel The channel of the accepted connection
+     */
+    public void join(SocketChannel channel) {
+        threads.newThread(() -> welcome(channel)).start();
+    }
+
+    /*
+     * Reads the preferences of the player, then pairs the player with the waiting one or
+     * waits for an opponent and runs the game.
+     *
+     * @param channel The channel of the accepted connection
+     */
+    private void welcome(SocketChannel channel) {
+
+        Player player;
+        try {
+            player = new Player(transport.register(channel));
+        } catch (IOException e) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+            return;
+        }
+        display("Client connected");
+        services.getEvents().connection();
+
+        try {
+            player.readJoin(connection_timeout);
+        } catch (IOException e) {
+            player.disconnect();
+            return;
+        }
+
+        if ( player.isRejoining() ) {
+            rejoin(player);
+            return;
+        }
+
+        /* The engine plays against every player, if any */
+        if ( services.getEngine() != null ) {
+            play(player, services.getEngine().newPlayer(GameSession.strikeTimeout(player.getTimeControl())));
+            return;
+        }
+
+        /* Takes the seat of the waiting player, or waits in the bucket */
+        int bucket = bucket(player);
+        Seat seat = new Seat(player);
+        while ( true ) {
+            Seat waiting_seat = waiting_seats.get(bucket);
+            if ( waiting_seat == null ) {
+                if ( waiting_seats.compareAndSet(bucket, null, seat) )
+                    break;
+            }
+            else if ( waiting_seats.compareAndSet(bucket, waiting_seat, null) ) {
+                waiting_seat.opponent.complete(player); // The waiting player's thread takes over the game
+                return;
+            }
+        }
+
+        try {
+            player.sendEvent(Protocol.WAITING_OPPONENT, connection_timeout/60000);
+        } catch (IOException ignored) {} // If the player left, the game will end right away
+
+        Player opponent = null;
+        try {
+            opponent = seat.opponent.get(connection_timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            opponent = leave(bucket, seat);
+        } catch (InterruptedException e) {
+            opponent = leave(bucket, seat);
+            Thread.currentThread().interrupt();
+        }
+
+        if ( opponent == null ) {
+            try {
+                player.sendEvent(Protocol.NO_OPPONENT);
+            } catch (IOException ignored) {}
+            player.disconnect();
+            return;
+        }
+
+        play(seat.player, opponent);
+    }
+
+    /*
+     * Seats a player in the game it rejoins, and resumes the game once both players rejoined.
+     *
+     * @param player The player, who sent its credentials
+     */
+    private void rejoin(Player player) {
+        GameStore store = services.getStore();
+        RecoveredGame game = store.recovered(player.getRejoinGame());
+        int color = ( game == null ) ? -1 : game.colorOf(player.getRejoinToken());
+        int nb_joined = ( color < 0 ) ? -1 : game.join(player, color);
+
+        if ( nb_joined < 0 ) {
+            try {
+                player.sendEvent(Protocol.ABORTED);
+            } catch (IOException ignored) {}
+            player.disconnect();
+            return;
+        }
+        if ( nb_joined == 1 ) {
+            try {
+                player.sendEvent(Protocol.WAITING_OPPONENT, connection_timeout/60000);
+            } catch (IOException ignored) {} // If the player left, the game will end right away
+            return; // The thread of the other player resumes the game
+        }
+
+        store.removeRecovered(game);
+        GameSession session = new GameSession(game, services);
+        for (Player rejoined: game.getPlayers()) {
+            try {
+                rejoined.sendEvent(Protocol.OPPONENT_JOINED, session.getStrikeTimeout()/60000);
+            } catch (IOException ignored) {} // Managed by the session when the game resumes
+        }
+        session.run();
+    }
+
+    /*
+     * Abandons a game rebuilt from the journal if its players did not both rejoin it.
+     */
+    private void abandon(RecoveredGame game) {
+        List<Player> joined = services.getStore().abandon(game);
+        if ( joined == null )
+            return;
+        if ( !joined.isEmpty() )
+            display("[game " + game.getId() + "] Abandoned, a player did not rejoin");
+        for (Player player : joined) {
+            try {
+                player.sendEvent(Protocol.NO_OPPONENT);
+            } catch (IOException ignored) {}
+            player.disconnect();
+        }
+    }
+
+    /*
+     * Leaves the bucket, unless an opponent took the seat meanwhile.
+     *
+     * @return The opponent, null if none
+     */
+    private Player leave(int bucket, Seat seat) {
+        if ( waiting_seats.compareAndSet(bucket, seat, null) )
+            return null;
+        return seat.opponent.join(); // Completed right after taking the seat
+    }
+
+    /*
+     * Gives the bucket of a player, from its time control and its rating.
+     */
+    private static int bucket(Player player) {
+        int time_control = Math.min(GameSession.strikeTimeout(player.getTimeControl())/60000, MAX_TIME_CONTROL);
+        int rating_band = 0;
+        if ( player.getRating() != Protocol.NO_RATING )
+            rating_band = 1 + Math.min(player.getRating()/RATING_BAND, RATING_BANDS - 1);
+        return time_control*(RATING_BANDS + 1) + rating_band;
+    }
+
+    /*
+     * Notify the paired players and run their game in the current thread.
+     *
+     * @param first The first connected player
+     * @param second The second connected player
+     */
+    private void play(Player first, Player second) {
+        List<Player> players = new ArrayList<>();
+        players.add(first);
+        players.add(second);
+        GameSession session = new GameSession(services.getStore().nextGameId(), players, first.getTimeControl(), services);
+        for (Player player: players) {
+            try {
+                player.sendEvent(Protocol.OPPONENT_JOINED, session.getStrikeTimeout()/60000);
+            } catch (IOException ignored) {} // Managed by the session when the game starts
+        }
+        session.run();
+    }
+
+    /*
+     * Display a message on the terminal.
+     *
+     * @param message The message to display
+     */
+    private static void display(String message) {
+        System.out.println(message);
+        System.out.flush();
+    }
+
+}
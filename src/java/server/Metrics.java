@@ -0,0 +1,313 @@
+package server;
+
+import com.sun.management.ThreadMXBean;
+import engine.Engine;
+import game.PositionCache;
+import network.Transport;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * This class holds the metrics of the server: counters of the games and of their events, the
+ * bytes exchanged with the clients, and the latencies of the steps of the game loop (listing
+ * the legal moves, checking a strike, updating the board), the use of the cache of the
+ * positions, and the memory allocated by the threads of the games, measured by the JVM when it
+ * supports it (see {@link #allocatedBytes()}). Recording is cheap enough to be
+ * always on: a counter increment or a histogram increment, without allocation nor lock.
+ * <p>
+ * The metrics are exposed through JMX (chess:type=Metrics) and as plain text, see
+ * {@link #scrape()} and {@link MetricsEndpoint}.
+ */
+public class Metrics implements MetricsMXBean {
+
+    private static final double[] PERCENTILES = { 50, 99, 99.9 };
+    private static final String[] QUANTILES   = { "0.5", "0.99", "0.999" };
+
+    /* Memory allocated by each thread, null if the JVM does not measure it */
+    private static final ThreadMXBean THREADS = allocationsBean();
+
+    private final Transport transport;
+    private final PositionCache positions;
+    private final Engine engine;
+
+    private final LongAdder games_started = new LongAdder();
+    private final LongAdder games_ended   = new LongAdder();
+    private final LongAdder moves         = new LongAdder();
+    private final LongAdder invalid_moves = new LongAdder();
+    private final LongAdder timeouts      = new LongAdder();
+    private final LongAdder disconnections = new LongAdder();
+    private final LongAdder allocated_bytes = new LongAdder(); // By the threads of the games, while running them
+
+    private final LatencyHistogram legal_moves_latencies  = new LatencyHistogram();
+    private final LatencyHistogram strike_check_latencies = new LatencyHistogram();
+    private final LatencyHistogram update_latencies       = new LatencyHistogram();
+
+
+    /**
+     * A summary of a latency histogram, in nanoseconds.
+     */
+    public static class Latencies {
+
+        private final long count;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        private Latencies(LatencyHistogram histogram) {
+            count = histogram.count();
+            p50   = histogram.percentile(PERCENTILES[0]);
+            p99   = histogram.percentile(PERCENTILES[1]);
+            p999  = histogram.percentile(PERCENTILES[2]);
+            max   = histogram.max();
+        }
+
+        public long getCount() { return count; }
+        public long getP50()   { return p50; }
+        public long getP99()   { return p99; }
+        public long getP999()  { return p999; }
+        public long getMax()   { return max; }
+    }
+
+
+    /**
+     * Initialize the metrics.
+     *
+     * @param transport The transport of the connections, for the bytes exchanged
+     * @param positions The cache of the positions shared by the games
+     * @param engine The engine playing against the players, null if none
+     */
+    public Metrics(Transport transport, PositionCache positions, Engine engine) {
+        this.transport = transport;
+        this.positions = positions;
+        this.engine = engine;
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server.
+     *
+     * @throws JMException If the metrics cannot be registered
+     */
+    public void registerMBean() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("chess:type=Metrics"));
+    }
+
+    public void gameStarted()   { games_started.increment(); }
+    public void move()          { moves.increment(); }
+    public void invalidMove()   { invalid_moves.increment(); }
+    public void timeout()       { timeouts.increment(); }
+    public void disconnection() { disconnections.increment(); }
+
+    /**
+     * Counts a game ended, with the memory allocated by the thread of the game since it started.
+     * To be called by the thread of the game.
+     *
+     * @param start_bytes The memory allocated by the thread when the game started, as given by
+     *                    {@link #allocatedBytes()}
+     */
+    public void gameEnded(long start_bytes) {
+        games_ended.increment();
+        long end_bytes = allocatedBytes();
+        if ( ( start_bytes >= 0 ) && ( end_bytes >= start_bytes ) )
+            allocated_bytes.add(end_bytes - start_bytes);
+    }
+
+    /**
+     * Gives the memory allocated so far by the current thread.
+     *
+     * @return The memory in bytes, -1 if the JVM does not measure it for the thread
+     */
+    public static long allocatedBytes() {
+        return ( THREADS == null ) ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /*
+     * Gives the bean measuring the memory allocated by the threads, the measures enabled, null
+     * if the JVM does not support them.
+     */
+    private static ThreadMXBean allocationsBean() {
+        if ( !( ManagementFactory.getThreadMXBean() instanceof ThreadMXBean ) )
+            return null;
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if ( !threads.isThreadAllocatedMemorySupported() )
+            return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /**
+     * Records the time taken to list the legal moves of a position.
+     *
+     * @param start_time The start of the listing, as given by System.nanoTime()
+     */
+    public void recordLegalMoves(long start_time) {
+        legal_moves_latencies.recordSince(start_time);
+    }
+
+    /**
+     * Records the time taken to check whether a strike is allowed.
+     *
+     * @param start_time The start of the check, as given by System.nanoTime()
+     */
+    public void recordStrikeCheck(long start_time) {
+        strike_check_latencies.recordSince(start_time);
+    }
+
+    /**
+     * Records the time taken to play a strike on the board, the choice of the piece of a
+     * promotion included.
+     *
+     * @param start_time The start of the update, as given by System.nanoTime()
+     */
+    public void recordUpdate(long start_time) {
+        update_latencies.recordSince(start_time);
+    }
+
+    @Override
+    public long getActiveGames() {
+        return games_started.sum() - games_ended.sum();
+    }
+
+    @Override
+    public long getGamesStarted() { return games_started.sum(); }
+
+    @Override
+    public long getMoves() { return moves.sum(); }
+
+    @Override
+    public long getInvalidMoves() { return invalid_moves.sum(); }
+
+    @Override
+    public long getTimeouts() { return timeouts.sum(); }
+
+    @Override
+    public long getDisconnections() { return disconnections.sum(); }
+
+    @Override
+    public long getAllocatedBytes() { return allocated_bytes.sum(); }
+
+    @Override
+    public long getConnections() { return transport.getConnections(); }
+
+    @Override
+    public long getBytesRead() { return transport.getBytesRead(); }
+
+    @Override
+    public long getBytesWritten() { return transport.getBytesWritten(); }
+
+    @Override
+    public long getPositionCacheHits() { return positions.getHits(); }
+
+    @Override
+    public long getPositionCacheMisses() { return positions.getMisses(); }
+
+    @Override
+    public double getPositionCacheHitRate() { return positions.getHitRate(); }
+
+    @Override
+    public long getPositionCacheEvictions() { return positions.getEvictions(); }
+
+    @Override
+    public long getPositionCacheSize() { return positions.size(); }
+
+    @Override
+    public long getPositionCacheMemory() { return positions.getMemory(); }
+
+    @Override
+    public long getPositionCacheCapacity() { return positions.getCapacity(); }
+
+    @Override
+    public long getEngineSearches() { return ( engine == null ) ? 0 : engine.getSearches(); }
+
+    @Override
+    public long getEngineNodes() { return ( engine == null ) ? 0 : engine.getNodes(); }
+
+    @Override
+    public long getEngineSearchTime() { return ( engine == null ) ? 0 : engine.getSearchTime(); }
+
+    @Override
+    public long getEngineNodesPerSecond() { return ( engine == null ) ? 0 : engine.getNodesPerSecond(); }
+
+    @Override
+    public Latencies getLegalMovesLatencies() { return new Latencies(legal_moves_latencies); }
+
+    @Override
+    public Latencies getStrikeCheckLatencies() { return new Latencies(strike_check_latencies); }
+
+    @Override
+    public Latencies getUpdateLatencies() { return new Latencies(update_latencies); }
+
+    /**
+     * Gives the metrics in the text format of Prometheus, with the memory and the garbage
+     * collections of the JVM.
+     *
+     * @return The metrics, one per line
+     */
+    public String scrape() {
+        StringBuilder text = new StringBuilder();
+        gauge(text, "chess_games_active", getActiveGames());
+        counter(text, "chess_games_started_total", getGamesStarted());
+        counter(text, "chess_moves_total", getMoves());
+        counter(text, "chess_invalid_moves_total", getInvalidMoves());
+        counter(text, "chess_timeouts_total", getTimeouts());
+        counter(text, "chess_disconnections_total", getDisconnections());
+        counter(text, "chess_games_allocated_bytes_total", getAllocatedBytes());
+        gauge(text, "chess_connections", getConnections());
+        counter(text, "chess_bytes_read_total", getBytesRead());
+        counter(text, "chess_bytes_written_total", getBytesWritten());
+        counter(text, "chess_position_cache_hits_total", getPositionCacheHits());
+        counter(text, "chess_position_cache_misses_total", getPositionCacheMisses());
+        gauge(text, "chess_position_cache_hit_ratio", getPositionCacheHitRate());
+        counter(text, "chess_position_cache_evictions_total", getPositionCacheEvictions());
+        gauge(text, "chess_position_cache_positions", getPositionCacheSize());
+        gauge(text, "chess_position_cache_bytes", getPositionCacheMemory());
+        gauge(text, "chess_position_cache_capacity_bytes", getPositionCacheCapacity());
+        counter(text, "chess_engine_searches_total", getEngineSearches());
+        counter(text, "chess_engine_nodes_total", getEngineNodes());
+        counter(text, "chess_engine_search_time_ns_total", getEngineSearchTime());
+        gauge(text, "chess_engine_nodes_per_second", getEngineNodesPerSecond());
+        summary(text, "chess_legal_moves_latency_ns", legal_moves_latencies);
+        summary(text, "chess_strike_check_latency_ns", strike_check_latencies);
+        summary(text, "chess_update_latency_ns", update_latencies);
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        gauge(text, "jvm_heap_used_bytes", heap.getUsed());
+        gauge(text, "jvm_heap_committed_bytes", heap.getCommitted());
+        long collections = 0;
+        long collection_time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, collector.getCollectionCount());
+            collection_time += Math.max(0, collector.getCollectionTime());
+        }
+        counter(text, "jvm_gc_collections_total", collections);
+        counter(text, "jvm_gc_time_ms_total", collection_time);
+        return text.toString();
+    }
+
+    private static void counter(StringBuilder text, String name, long value) {
+        text.append("# TYPE ").append(name).append(" counter\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder text, String name, long value) {
+        text.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder text, String name, double value) {
+        text.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder text, String name, LatencyHistogram histogram) {
+        text.append("# TYPE ").append(name).append(" summary\n");
+        for (int i=0; i<PERCENTILES.length; i++)
+            text.append(name).append("{quantile=\"").append(QUANTILES[i]).append("\"} ").append(histogram.percentile(PERCENTILES[i])).append('\n');
+        text.append(name).append("_max ").append(histogram.max()).append('\n');
+        text.append(name).append("_count ").append(histogram.count()).append('\n');
+    }
+
+}
@@ -0,0 +1,63 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * This class serves the metrics of the server as plain text over HTTP (GET /metrics), on the
+ * loopback interface only, to be scraped by a monitoring system. The requests are served by a
+ * single thread of their own, away from the games.
+ */
+public class MetricsEndpoint {
+
+    private final HttpServer http_server;
+
+
+    /**
+     * Starts serving the metrics.
+     *
+     * @param metrics The metrics of the server
+     * @param port The local port
+     * @throws IOException If the port cannot be bound
+     */
+    public MetricsEndpoint(Metrics metrics, int port) throws IOException {
+        http_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http_server.createContext("/metrics", exchange -> serve(exchange, metrics));
+        http_server.start();
+    }
+
+    /**
+     * Stops serving the metrics.
+     */
+    public void stop() {
+        http_server.stop(0);
+    }
+
+    /*
+     * Answers a request with the current metrics.
+     */
+    private static void serve(HttpExchange exchange, Metrics metrics) throws IOException {
+        try {
+            if ( !exchange.getRequestMethod().equals("GET") ) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package server;
+
+
+/**
+ * The metrics of the server exposed through JMX, see {@link Metrics}. The latencies and the
+ * time of the searches of the engine are in nanoseconds, the memory allocated by the games
+ * and the memory of the cache of the positions in bytes.
+ */
+public interface MetricsMXBean {
+
+    long getActiveGames();
+    long getGamesStarted();
+    long getMoves();
+    long getInvalidMoves();
+    long getTimeouts();
+    long getDisconnections();
+    long getAllocatedBytes();
+    long getConnections();
+    long getBytesRead();
+    long getBytesWritten();
+
+    long getPositionCacheHits();
+    long getPositionCacheMisses();
+    double getPositionCacheHitRate();
+    long getPositionCacheEvictions();
+    long getPositionCacheSize();
+    long getPositionCacheMemory();
+    long getPositionCacheCapacity();
+
+    long getEngineSearches();
+    long getEngineNodes();
+    long getEngineSearchTime();
+    long getEngineNodesPerSecond();
+
+    Metrics.Latencies getLegalMovesLatencies();
+    Metrics.Latencies getStrikeCheckLatencies();
+    Metrics.Latencies getUpdateLatencies();
+
+}
@@ -0,0 +1,142 @@
+package server;
+
+import game.Board;
+import game.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * This class represents a game in progress when the server stopped, rebuilt from the journal
+ * (see {@link GameStore}) and waiting for its players to rejoin it. Each player proves its
+ * color with the token received when the game started. The thread of the second player
+ * rejoining runs the game, unless the game was abandoned meanwhile.
+ */
+public class RecoveredGame {
+
+    private final long id;
+    private final int time_control;
+    private final long[] tokens; // Indexed by color
+    private final int[] moves;
+    private final Board board;
+
+    private final AtomicReferenceArray<Player> players = new AtomicReferenceArray<>(2);
+    private final AtomicInteger nb_joined = new AtomicInteger(); // -1 once abandoned
+
+
+    RecoveredGame(long id, int time_control, long[] tokens, int[] moves, Board board) {
+        this.id = id;
+        this.time_control = time_control;
+        this.tokens = tokens;
+        this.moves = moves;
+        this.board = board;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getTimeControl() {
+        return time_control;
+    }
+
+    public Board getBoard() {
+        return board;
+    }
+
+    /**
+     * Gives the strikes played before the crash of the server.
+     *
+     * @return The moves, see game.Move, with the piece of a promotion
+     */
+    public int[] getMoves() {
+        return moves;
+    }
+
+    /**
+     * Gives the color of a player from its token.
+     *
+     * @param token The token sent by the player
+     * @return The color, -1 if the token is not one of the game
+     */
+    public int colorOf(long token) {
+        for (int color=0; color<tokens.length; color++) {
+            if ( tokens[color] == token )
+                return color;
+        }
+        return -1;
+    }
+
+    /**
+     * Seats a player rejoining the game.
+     *
+     * @param player The player
+     * @param color The color of the player, see {@link #colorOf(long)}
+     * @return The number of players rejoined, 2 when the game can resume, -1 if the player
+     *         cannot rejoin: color already taken or game abandoned
+     */
+    public int join(Player player, int color) {
+        if ( !players.compareAndSet(color, null, player) )
+            return -1;
+        while ( true ) {
+            int nb = nb_joined.get();
+            if ( nb < 0 )
+                return -1;
+            if ( nb_joined.compareAndSet(nb, nb + 1) )
+                return nb + 1;
+        }
+    }
+
+    /**
+     * Releases the seat of a player who joined the game, when the game cannot resume with it.
+     *
+     * @param player The player
+     * @param color The color the player joined with
+     */
+    public void leave(Player player, int color) {
+        if ( !players.compareAndSet(color, player, null) )
+            return;
+        while ( true ) {
+            int nb = nb_joined.get();
+            if ( ( nb <= 0 ) || nb_joined.compareAndSet(nb, nb - 1) )
+                return;
+        }
+    }
+
+    /**
+     * Abandons the game if its players did not both rejoin it.
+     *
+     * @return The players who rejoined, to disconnect, null if the game resumed meanwhile
+     */
+    public List<Player> abandon() {
+        while ( true ) {
+            int nb = nb_joined.get();
+            if ( ( nb < 0 ) || ( nb == players.length() ) )
+                return null;
+            if ( nb_joined.compareAndSet(nb, -1) )
+                break;
+        }
+        List<Player> joined = new ArrayList<>();
+        for (int color=0; color<players.length(); color++) {
+            if ( players.get(color) != null )
+                joined.add(players.get(color));
+        }
+        return joined;
+    }
+
+    /**
+     * Gives the players of the resumed game.
+     *
+     * @return The players, indexed by color
+     */
+    public List<Player> getPlayers() {
+        List<Player> list = new ArrayList<>();
+        for (int color=0; color<players.length(); color++)
+            list.add(players.get(color));
+        return list;
+    }
+
+}
@@ -0,0 +1,63 @@
+package server;
+
+import engine.Engine;
+import game.PositionCache;
+
+
+/**
+ * This class groups the services of the server shared by the games: the timer wheel running
+ * the clocks of the players, the event log, the metrics, the store of the games in progress,
+ * the archive of the finished games, the cache of the positions and the engine playing against
+ * the players, if any.
+ */
+public class Services {
+
+    private final TimerWheel timers;
+    private final EventLog events;
+    private final Metrics metrics;
+    private final GameStore store;
+    private final GameArchive archive;
+    private final PositionCache positions;
+    private final Engine engine; // null if the players play against each other
+
+
+    public Services(TimerWheel timers, EventLog events, Metrics metrics, GameStore store, GameArchive archive, PositionCache positions,
+                    Engine engine) {
+        this.timers = timers;
+        this.events = events;
+        this.metrics = metrics;
+        this.store = store;
+        this.archive = archive;
+        this.positions = positions;
+        this.engine = engine;
+    }
+
+    public TimerWheel getTimers() {
+        return timers;
+    }
+
+    public EventLog getEvents() {
+        return events;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public GameStore getStore() {
+        return store;
+    }
+
+    public GameArchive getArchive() {
+        return archive;
+    }
+
+    public PositionCache getPositions() {
+        return positions;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+}
@@ -0,0 +1,47 @@
+package server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * This class creates the threads running the players and the games: either platform
+ * threads, or virtual threads when requested and supported by the JVM (JDK 21+).
+ * Virtual threads are looked up by reflection so that the project still compiles
+ * and runs on older JDKs, falling back to platform threads.
+ */
+public class Threads {
+
+    private Threads() {}
+
+    /**
+     * Gives a factory of platform threads named prefix-0, prefix-1...
+     *
+     * @param prefix The prefix of the name of the threads
+     * @return The thread factory
+     */
+    public static ThreadFactory platform(String prefix) {
+        AtomicLong counter = new AtomicLong();
+        return runnable -> new Thread(runnable, prefix + "-" + counter.getAndIncrement());
+    }
+
+    /**
+     * Gives a factory of virtual threads named prefix-0, prefix-1...
+     *
+     * @param prefix The prefix of the name of the threads
+     * @return The thread factory, null if virtual threads are not supported by the JVM
+     */
+    public static ThreadFactory virtual(String prefix) {
+        try {
+            Class<?> builder_class = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method name = builder_class.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, prefix + "-", 0L);
+            return (ThreadFactory) builder_class.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+}
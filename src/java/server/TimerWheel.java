@@ -0,0 +1,223 @@
+package server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * This class is a hashed timer wheel: one thread fires the timeouts of all the games, such
+ * as the fall of the flag of a player (see {@link Clock}). The time is cut into ticks, and a
+ * timeout is kept in the bucket of the wheel of its deadline tick, with the number of turns
+ * of the wheel left before it expires. Scheduling and cancelling a timeout are then constant
+ * time whatever the number of timeouts, and only the bucket of the current tick is visited.
+ * <p>
+ * The buckets are only touched by the thread of the wheel: the other threads hand the new and
+ * the cancelled timeouts over through lock-free queues, drained at each tick. A timeout fires
+ * at most one tick after its deadline.
+ */
+public class TimerWheel {
+
+    private static final int PENDING   = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED   = 2;
+
+    private final long tick_duration; // In nanoseconds
+    private final Timeout[] buckets;  // Head of the list of the timeouts of each bucket
+    private final int mask;
+    private final long start_time = System.nanoTime();
+
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean stopped = false;
+    private long tick = 0; // Only used by the thread of the wheel
+
+
+    /**
+     * A timeout scheduled on the wheel.
+     */
+    public static final class Timeout {
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final TimerWheel wheel;
+        private final Runnable task;
+        private final long deadline; // In nanoseconds since the start of the wheel
+        private volatile int state = PENDING;
+
+        /* Used by the thread of the wheel only */
+        private long remaining_rounds;
+        private int bucket = -1;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the timeout, unless it already expired.
+         *
+         * @return true if the timeout is cancelled, false if it expired or was already cancelled
+         */
+        public boolean cancel() {
+            if ( !STATE.compareAndSet(this, PENDING, CANCELLED) )
+                return false;
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        /*
+         * Runs the task, unless the timeout is cancelled meanwhile.
+         */
+        private void expire() {
+            if ( !STATE.compareAndSet(this, PENDING, EXPIRED) )
+                return;
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.out.println("Error of a timeout: " + e);
+                System.out.flush();
+            }
+        }
+    }
+
+
+    /**
+     * Starts the thread of the wheel.
+     *
+     * @param tick_duration The duration of a tick in milliseconds, the precision of the timeouts
+     * @param wheel_size The number of buckets, rounded up to a power of 2
+     */
+    public TimerWheel(long tick_duration, int wheel_size) {
+        this.tick_duration = TimeUnit.MILLISECONDS.toNanos(tick_duration);
+        int size = Integer.highestOneBit(Math.max(1, wheel_size - 1)) << 1;
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+        Thread thread = new Thread(this::run, "timer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts a wheel of 512 buckets ticking every 10 milliseconds.
+     */
+    public TimerWheel() {
+        this(10, 512);
+    }
+
+    /**
+     * Schedules a task. The task is run by the thread of the wheel, it must be short.
+     *
+     * @param task The task to run when the timeout expires
+     * @param delay The delay in milliseconds
+     * @return The timeout, to cancel it
+     */
+    public Timeout schedule(Runnable task, long delay) {
+        long deadline = System.nanoTime() - start_time + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay));
+        Timeout timeout = new Timeout(this, task, deadline);
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the thread of the wheel, the pending timeouts never expire.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /*
+     * The loop of the thread of the wheel.
+     */
+    private void run() {
+        while ( !stopped ) {
+            waitForNextTick();
+            removeCancelled();
+            addScheduled();
+            expire(buckets[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    /*
+     * Sleeps until the end of the current tick.
+     */
+    private void waitForNextTick() {
+        long end_of_tick = (tick + 1)*tick_duration;
+        long remaining;
+        while ( ( remaining = end_of_tick - (System.nanoTime() - start_time) ) > 0 )
+            LockSupport.parkNanos(remaining);
+    }
+
+    /*
+     * Puts the new timeouts in the bucket of their deadline tick.
+     */
+    private void addScheduled() {
+        Timeout timeout;
+        while ( ( timeout = scheduled.poll() ) != null ) {
+            if ( timeout.state != PENDING )
+                continue; // Cancelled before being added
+            long deadline_tick = Math.max(timeout.deadline / tick_duration, tick); // Not in the past
+            timeout.remaining_rounds = (deadline_tick - tick) / buckets.length;
+            timeout.bucket = (int) (deadline_tick & mask);
+            timeout.next = buckets[timeout.bucket];
+            if ( timeout.next != null )
+                timeout.next.previous = timeout;
+            buckets[timeout.bucket] = timeout;
+        }
+    }
+
+    /*
+     * Removes the cancelled timeouts from their bucket, so that they do not wait for their
+     * deadline to be released.
+     */
+    private void removeCancelled() {
+        Timeout timeout;
+        while ( ( timeout = cancelled.poll() ) != null ) {
+            if ( timeout.bucket != -1 )
+                remove(timeout);
+        }
+    }
+
+    /*
+     * Expires the timeouts of a bucket that reached their last round.
+     */
+    private void expire(Timeout timeout) {
+        while ( timeout != null ) {
+            Timeout next = timeout.next;
+            if ( timeout.remaining_rounds <= 0 ) {
+                remove(timeout);
+                timeout.expire();
+            }
+            else
+                timeout.remaining_rounds--;
+            timeout = next;
+        }
+    }
+
+    /*
+     * Removes a timeout from its bucket.
+     */
+    private void remove(Timeout timeout) {
+        if ( timeout.previous != null )
+            timeout.previous.next = timeout.next;
+        else
+            buckets[timeout.bucket] = timeout.next;
+        if ( timeout.next != null )
+            timeout.next.previous = timeout.previous;
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+
+}
@@ -7,6 +7,37 @@ public interface ServerInterpreter {
 
     Integer getPort();
     boolean verboseIsActivated();
+    boolean multiGameIsActivated();
+
+    /**
+     * Virtual threads (JDK 21+) or platform threads for the players and the games.
+     *
+     * @return true if virtual threads were requested
+     */
+    boolean virtualThreadsAreActivated();
+
+    /**
+     * The local port serving the metrics of the server, see server.MetricsEndpoint.
+     *
+     * @return The port, null if the metrics are not served
+     */
+    Integer getMetricsPort();
+
+    /**
+     * The memory of the cache of the positions shared by the games, see game.PositionCache.
+     *
+     * @return The memory in megabytes
+     */
+    Integer getPositionCacheSize();
+
+    /**
+     * The time of the engine of the server to think per strike, the clients playing against
+     * the engine, see engine.Engine.
+     *
+     * @return The time in milliseconds, null if the clients play against each other
+     */
+    Integer getEngineTime();
+
     boolean helpIsActivated();
     String getHelper();
 
@@ -9,13 +9,23 @@ import java.util.Map;
  */
 public class ServerInterpreterImpl implements ServerInterpreter {
 
-    private static final String usage = "Usage: \tjava Server [-v] [-i ip_address] [-p port_value] [-h]";
+    private static final String usage = "Usage: \tjava Server [-v] [-m] [-t platform|virtual] [-i ip_address] [-p port_value] [-s metrics_port] [-c cache_megabytes] [-e engine_milliseconds] [-h]";
     private String error_message = null;
 
+    /* Bounds of the numbers following the options */
+    private static final int MAX_PORT        = 65353;
+    private static final int MAX_CACHE_SIZE  = 1 << 20; // In megabytes
+    private static final int MAX_ENGINE_TIME = 255*60000/2; // In milliseconds, half of the longest time per strike (255 minutes)
+
     /* Inputs */
     private String ip       = null;
     private Integer port    = null;
+    private Integer metrics_port = null;
+    private Integer cache_size = null; // In megabytes
+    private Integer engine_time = null; // In milliseconds
     private boolean verbose = false;
+    private boolean multi   = false;
+    private boolean virtual = false;
     private boolean help    = false;
 
     /**
@@ -28,25 +38,36 @@ public class ServerInterpreterImpl implements ServerInterpreter {
         /* Expected inputs */
         Map<String, String> arg_values = new HashMap<>();
         arg_values.put("-v", null);
+        arg_values.put("-m", null);
+        arg_values.put("-t", null);
+        arg_values.put("threads", null);
         arg_values.put("-i", null);
         arg_values.put("ip", null);
         arg_values.put("-p", null);
         arg_values.put("port", null);
+        arg_values.put("-s", null);
+        arg_values.put("metrics_port", null);
+        arg_values.put("-c", null);
+        arg_values.put("cache_size", null);
+        arg_values.put("-e", null);
+        arg_values.put("engine_time", null);
         arg_values.put("-h", null);
 
-        /* (Bonus check) Max length 6, to avoid server latencies for nothing if
+        /* (Bonus check) Max length 15, to avoid server latencies for nothing if
         someone try to enter a large number of arguments. */
-        if (args.length > 6){
+        if (args.length > 15){
             error_message = usage;
             return;
         }
 
         /*
             Checks:
-                (1) Each inputs is one of -v, -i, -p, -h, int (port range), [0.255].[0-255].[0-255].[0-255]
+                (1) Each inputs is one of -v, -m, -t, -i, -p, -s, -c, -e, -h, platform/virtual, positive int, [0.255].[0-255].[0-255].[0-255]
                 (2) Only one input for each kind (see (1) for the list)
-                (3) Option -i must be followed by the ip address. Same for -p and the port
-                (4) Check if the -i option is present if and only if an ip address is present. Same for -p and the port
+                (3) Option -i must be followed by the ip address. Same for -p and the port, -t and the thread model, -s and the metrics port,
+                    -c and the size of the cache, -e and the time of the engine, each number being in the range of its option
+                (4) Check if the -i option is present if and only if an ip address is present. Same for -p and the port, -t and the thread model.
+                    A number follows one of the options -p, -s, -c and -e
          */
         for (int i=0; i<args.length; i++){
 
@@ -56,8 +77,17 @@ public class ServerInterpreterImpl implements ServerInterpreter {
                 return;
             }
 
-            /* (2) */
+            /* (2) The number following -p is the port, the number following -s the metrics port, the number
+            following -c the size of the cache, the number following -e the time of the engine */
             String type_arg = type(args[i]);
+            if ( ( i > 0 ) && args[i-1].equals("-p") && type_arg.equals("number") )
+                type_arg = "port";
+            else if ( ( i > 0 ) && args[i-1].equals("-s") && type_arg.equals("number") )
+                type_arg = "metrics_port";
+            else if ( ( i > 0 ) && args[i-1].equals("-c") && type_arg.equals("number") )
+                type_arg = "cache_size";
+            else if ( ( i > 0 ) && args[i-1].equals("-e") && type_arg.equals("number") )
+                type_arg = "engine_time";
             if ( arg_values.get(type_arg) != null ){
                 error_message = usage;
                 return;
@@ -69,7 +99,23 @@ public class ServerInterpreterImpl implements ServerInterpreter {
                 error_message = usage;
                 return;
             }
-            else if ( type_arg.equals("-p") && ( (i==(args.length-1)) || !(type(args[i+1]).equals("port")) ) ){
+            else if ( type_arg.equals("-p") && ( (i==(args.length-1)) || !inRange(args[i+1], MAX_PORT) ) ){
+                error_message = usage;
+                return;
+            }
+            else if ( type_arg.equals("-t") && ( (i==(args.length-1)) || !(type(args[i+1]).equals("threads")) ) ){
+                error_message = usage;
+                return;
+            }
+            else if ( type_arg.equals("-s") && ( (i==(args.length-1)) || !inRange(args[i+1], MAX_PORT) ) ){
+                error_message = usage;
+                return;
+            }
+            else if ( type_arg.equals("-c") && ( (i==(args.length-1)) || !inRange(args[i+1], MAX_CACHE_SIZE) ) ){
+                error_message = usage;
+                return;
+            }
+            else if ( type_arg.equals("-e") && ( (i==(args.length-1)) || !inRange(args[i+1], MAX_ENGINE_TIME) ) ){
                 error_message = usage;
                 return;
             }
@@ -79,7 +125,10 @@ public class ServerInterpreterImpl implements ServerInterpreter {
         if ( ((arg_values.get("ip") != null) && (arg_values.get("-i") == null))
                 || ((arg_values.get("ip") == null) && (arg_values.get("-i") != null))
                 || ((arg_values.get("port") != null) && (arg_values.get("-p") == null))
-                || ((arg_values.get("port") == null) && (arg_values.get("-p") != null))){
+                || ((arg_values.get("port") == null) && (arg_values.get("-p") != null))
+                || ((arg_values.get("threads") != null) && (arg_values.get("-t") == null))
+                || ((arg_values.get("threads") == null) && (arg_values.get("-t") != null))
+                || (arg_values.get("number") != null)){
             error_message = usage;
             return;
         }
@@ -104,9 +153,26 @@ public class ServerInterpreterImpl implements ServerInterpreter {
         else
             port = 2000;
 
+        if ( arg_values.get("metrics_port") != null )
+            metrics_port = Integer.parseInt(arg_values.get("metrics_port"));
+
+        if ( arg_values.get("cache_size") != null )
+            cache_size = Integer.parseInt(arg_values.get("cache_size"));
+        else
+            cache_size = 64;
+
+        if ( arg_values.get("engine_time") != null )
+            engine_time = Integer.parseInt(arg_values.get("engine_time"));
+
         if ( arg_values.get("-v") != null )
             verbose = true;
 
+        if ( arg_values.get("-m") != null )
+            multi = true;
+
+        if ( arg_values.get("threads") != null )
+            virtual = arg_values.get("threads").equals("virtual");
+
         if ( arg_values.get("-h") != null )
             help = true;
     }
@@ -121,9 +187,11 @@ public class ServerInterpreterImpl implements ServerInterpreter {
     private static String type(String arg) {
         if ( arg.contains(".") )
             return "ip";
+        if ( arg.equals("platform") || arg.equals("virtual") )
+            return "threads";
         try {
             Integer.parseInt(arg);
-            return "port";
+            return "number";
         } catch (NumberFormatException ignored) {
             return arg;
         }
@@ -138,15 +206,16 @@ public class ServerInterpreterImpl implements ServerInterpreter {
     private static boolean valid(String arg) {
 
         /* check if valid option */
-        if ( arg.equals("-v") || arg.equals("-i") || arg.equals("-p") || arg.equals("-h")  )
+        if ( arg.equals("-v") || arg.equals("-m") || arg.equals("-t") || arg.equals("-i") || arg.equals("-p") || arg.equals("-s") || arg.equals("-c") || arg.equals("-e") || arg.equals("-h")  )
             return true;
 
-        /* check if valid port */
-        try {
-            int port = Integer.parseInt(arg);
-            if ( ( 0 < port ) && ( port < 65354 ) )
-                return true;
-        } catch (NumberFormatException ignored) {}
+        /* check if valid thread model */
+        if ( arg.equals("platform") || arg.equals("virtual") )
+            return true;
+
+        /* check if valid number, its range depending on the option it follows */
+        if ( inRange(arg, Integer.MAX_VALUE) )
+            return true;
 
         /* check if valid ip address */
         String[] ips = arg.split("\\.");
@@ -163,6 +232,22 @@ public class ServerInterpreterImpl implements ServerInterpreter {
         return true;
     }
 
+    /*
+     * Check if arg is a number from 1 to a maximum.
+     *
+     * @param arg The input
+     * @param max The maximum
+     * @return Validity
+     */
+    private static boolean inRange(String arg, int max) {
+        try {
+            int number = Integer.parseInt(arg);
+            return ( 0 < number ) && ( number <= max );
+        } catch (NumberFormatException ignored) {
+            return false;
+        }
+    }
+
     @Override
     public String getIp() { return ip; }
 
@@ -172,6 +257,21 @@ public class ServerInterpreterImpl implements ServerInterpreter {
     @Override
     public boolean verboseIsActivated() { return verbose; }
 
+    @Override
+    public boolean multiGameIsActivated() { return multi; }
+
+    @Override
+    public boolean virtualThreadsAreActivated() { return virtual; }
+
+    @Override
+    public Integer getMetricsPort() { return metrics_port; }
+
+    @Override
+    public Integer getPositionCacheSize() { return cache_size; }
+
+    @Override
+    public Integer getEngineTime() { return engine_time; }
+
     @Override
     public boolean helpIsActivated() { return help; }
 
@@ -188,9 +288,14 @@ public class ServerInterpreterImpl implements ServerInterpreter {
     @Override
     public String getHelper() {
         return usage + "\n" +
-                "\t-v: Activate the verbose mode\n" +
+                "\t-v: Activate the verbose mode, the events of the server are logged in the log directory\n" +
+                "\t-m: Host games continuously, pairing the clients as they connect\n" +
+                "\t-t: Threads running the players and the games with -m: platform or virtual (by default platform)\n" +
                 "\t-i: IP address of the interface to bind (by default 127.0.0.1)\n" +
                 "\t-p: Port for listening to connection (by default 2000)\n" +
+                "\t-s: Local port serving the metrics of the server as text (GET /metrics), also exposed through JMX\n" +
+                "\t-c: Memory of the cache of the positions shared by the games, in megabytes (by default 64)\n" +
+                "\t-e: Every client plays against the engine of the server, which thinks for the given milliseconds per strike\n" +
                 "\t-h: Helper";
     }
 }
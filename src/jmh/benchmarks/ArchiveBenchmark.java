@@ -0,0 +1,80 @@
+package benchmarks;
+
+import game.Board;
+import game.MoveGenerator;
+import org.openjdk.jmh.annotations.*;
+import server.ArchivedGame;
+import server.GameArchive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the archive of the finished games: archiving a game of 40 strikes, fetching a game
+ * from its identifier and reading its strikes in place, and replaying a game on a board.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArchiveBenchmark {
+
+    private static final int GAMES   = 100000;
+    private static final int STRIKES = 40;
+
+    private File directory;
+    private GameArchive archive;
+    private final int[] moves = new int[STRIKES];
+    private long next_id = GAMES;
+    private final Random random = new Random(42);
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("archive").toFile();
+        archive = GameArchive.open(directory);
+
+        int[] legal_moves = new int[MoveGenerator.MAX_MOVES];
+        Board board = new Board();
+        for (int strike=0; strike<STRIKES; strike++) {
+            int nb_moves = MoveGenerator.legalMoves(board, legal_moves);
+            moves[strike] = legal_moves[random.nextInt(nb_moves)];
+            board.makeMove(moves[strike]);
+        }
+        for (long id=1; id<=GAMES; id++)
+            archive.add(id, 10, (byte) 11, 1, board.getHash(), moves, STRIKES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        archive.close();
+        for (File file: directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public void add() {
+        archive.add(++next_id, 10, (byte) 11, 1, random.nextLong(), moves, STRIKES);
+    }
+
+    @Benchmark
+    public int get() {
+        ArchivedGame game = archive.get(1 + random.nextInt(GAMES));
+        int sum = 0;
+        for (int i=0; i<game.getNbMoves(); i++)
+            sum += game.getMove(i);
+        return sum;
+    }
+
+    @Benchmark
+    public Board replay() {
+        return archive.get(1 + random.nextInt(GAMES)).replay();
+    }
+
+}
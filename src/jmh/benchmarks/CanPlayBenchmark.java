@@ -0,0 +1,103 @@
+package benchmarks;
+
+import game.Board;
+import game.Color;
+import game.Move;
+import game.Player;
+import game.Strike;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the cost of checking whether a player can still play, and of checking that a
+ * move does not leave the king in check, by playing the move in place or on a clone of the
+ * board. Run with the GC profiler (see build.gradle) to get the allocations per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanPlayBenchmark {
+
+    private Board initial_board;
+    private Board checkmate_board; // Fool's mate, every move of the white player has to be tried
+    private Player white;
+
+    /* Moves of the white pieces in the initial position, see Move */
+    private int[] moves = new int[0];
+
+    @Setup
+    public void setUp() {
+        white = new Player(null);
+        white.setColor(Color.WHITE);
+
+        initial_board = new Board();
+        checkmate_board = new Board();
+        play(checkmate_board, "f2-f3", Color.WHITE);
+        play(checkmate_board, "e7-e5", Color.BLACK);
+        play(checkmate_board, "g2-g4", Color.WHITE);
+        play(checkmate_board, "d8-h4", Color.BLACK);
+
+        for (char start_column='a'; start_column<='h'; start_column++) {
+            for (char start_row='1'; start_row<='2'; start_row++) {
+                for (char end_column='a'; end_column<='h'; end_column++) {
+                    for (char end_row='3'; end_row<='4'; end_row++) {
+                        Strike strike = new Strike("" + start_column + start_row + "-" + end_column + end_row, Color.WHITE);
+                        if ( strike.isAllowed(initial_board, white) ) {
+                            moves = Arrays.copyOf(moves, moves.length + 1);
+                            moves[moves.length - 1] = strike.getMove();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Plays a strike on the board, without any check.
+     */
+    private static void play(Board board, String str_strike, int color) {
+        Strike strike = new Strike(str_strike, color);
+        board.simulation(strike.getStartSquare(), strike.getEndSquare());
+    }
+
+    @Benchmark
+    public boolean canPlayInitialPosition() {
+        return white.canPlay(initial_board);
+    }
+
+    @Benchmark
+    public boolean canPlayCheckmate() {
+        return white.canPlay(checkmate_board);
+    }
+
+    @Benchmark
+    public int checkMovesWithClone() {
+        int legal_moves = 0;
+        for (int move: moves) {
+            Board cloned_board = initial_board.getClone();
+            cloned_board.simulation(Move.start(move), Move.end(move));
+            if ( !white.isInCheck(cloned_board) )
+                legal_moves++;
+        }
+        return legal_moves;
+    }
+
+    @Benchmark
+    public int checkMovesWithMakeMove() {
+        int legal_moves = 0;
+        for (int move: moves) {
+            initial_board.makeMove(Move.start(move), Move.end(move));
+            if ( !white.isInCheck(initial_board) )
+                legal_moves++;
+            initial_board.unmakeMove();
+        }
+        return legal_moves;
+    }
+
+}
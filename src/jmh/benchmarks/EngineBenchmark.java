@@ -0,0 +1,65 @@
+package benchmarks;
+
+import engine.Engine;
+import engine.Search;
+import game.Board;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the searches of the engine at a fixed depth, each from an empty transposition
+ * table: the searches per second, and the positions searched per second (nodes) which give
+ * the CPU to give to the games against the engine. The positions are the initial one and a
+ * middle game with all kinds of moves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+    private static final int DEPTH = 5;
+
+    private Board initial_board;
+    private Board middle_game_board;
+    private Search search;
+
+    /**
+     * The positions searched, per second in the results.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+        public long nodes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        initial_board = new Board();
+        middle_game_board = new Board(Perft.POSITIONS[1]);
+    }
+
+    @Setup(Level.Invocation)
+    public void newSearch() {
+        search = new Search(new Engine(1, 0));
+    }
+
+    @Benchmark
+    public int searchInitialPosition(Nodes nodes) {
+        int move = search.bestMoveAtDepth(initial_board, DEPTH);
+        nodes.nodes += search.getNodes();
+        return move;
+    }
+
+    @Benchmark
+    public int searchMiddleGame(Nodes nodes) {
+        int move = search.bestMoveAtDepth(middle_game_board, DEPTH);
+        nodes.nodes += search.getNodes();
+        return move;
+    }
+
+}
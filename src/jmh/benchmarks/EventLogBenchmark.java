@@ -0,0 +1,47 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import server.EventLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the cost of logging a move for the thread of a game, the writing of the file being
+ * done by the writer thread of the log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventLogBenchmark {
+
+    private File directory;
+    private EventLog events;
+    private int strike = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("events").toFile();
+        events = EventLog.open(directory);
+    }
+
+    @TearDown
+    public void tearDown() {
+        events.close();
+        for (File file: directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public void move() {
+        events.move(1, ++strike, 12 << 10 | 28 << 4);
+    }
+
+}
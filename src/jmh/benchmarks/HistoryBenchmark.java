@@ -0,0 +1,42 @@
+package benchmarks;
+
+import game.History;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the detection of the repetitions at the end of long games. The worst case is
+ * measured: no pawn move nor capture in the whole game, so that every position is scanned.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @Param({ "100", "1000" })
+    public int strikes;
+
+    private final History history = new History();
+    private long last_hash;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i=0; i<strikes; i++) {
+            last_hash = random.nextLong();
+            history.add(last_hash, false);
+        }
+    }
+
+    @Benchmark
+    public boolean fiveInHistory() {
+        return history.FiveInHistory(last_hash);
+    }
+
+}
@@ -0,0 +1,84 @@
+package benchmarks;
+
+import game.Board;
+import game.MoveGenerator;
+import org.openjdk.jmh.annotations.*;
+import server.GameStore;
+import server.Journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the recovery of the games in progress when the server restarts after a crash: the
+ * journal holds 10k games of 40 random legal strikes, read, replayed on their boards and
+ * compacted by GameStore.open(). The journal is restored before each recovery, as the
+ * compaction rewrites it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JournalBenchmark {
+
+    private static final int GAMES   = 10000;
+    private static final int STRIKES = 40;
+
+    private File directory;
+    private byte[] journal;
+    private GameStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal").toFile();
+
+        Random random = new Random(42);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        ByteBuffer records = ByteBuffer.allocate(GAMES*(Journal.START_LENGTH + STRIKES*Journal.MOVE_LENGTH));
+        for (long game=1; game<=GAMES; game++) {
+            records.put(Journal.START).putLong(game).put((byte) 10).putLong(random.nextLong()).putLong(random.nextLong());
+            Board board = new Board();
+            for (int strike=0; strike<STRIKES; strike++) {
+                int nb_moves = MoveGenerator.legalMoves(board, moves);
+                if ( nb_moves == 0 )
+                    break;
+                int move = moves[random.nextInt(nb_moves)];
+                board.makeMove(move);
+                records.put(Journal.MOVE).putLong(game).putShort((short) move);
+            }
+        }
+        journal = new byte[records.position()];
+        records.flip().get(journal);
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreJournal() throws IOException {
+        Files.write(new File(directory, GameStore.JOURNAL).toPath(), journal);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeStore() {
+        store.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file: directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public int recover() throws IOException {
+        store = GameStore.open(directory);
+        return store.recoveredGames().size();
+    }
+
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import game.PositionCache;
+import network.Transport;
+import org.openjdk.jmh.annotations.*;
+import server.Metrics;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the recording of the metrics by the game loop: a latency and a counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private Transport transport;
+    private Metrics metrics;
+
+    @Setup
+    public void setUp() throws IOException {
+        transport = new Transport(1);
+        metrics = new Metrics(transport, new PositionCache(1 << 20), null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        transport.shutdown(0);
+    }
+
+    @Benchmark
+    public void recordLatency() {
+        metrics.recordUpdate(System.nanoTime());
+    }
+
+    @Benchmark
+    public void countMove() {
+        metrics.move();
+    }
+
+}
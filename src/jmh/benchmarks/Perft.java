@@ -0,0 +1,59 @@
+package benchmarks;
+
+import game.Board;
+import game.MoveGenerator;
+
+
+/**
+ * Counts the positions reached from reference positions and checks them against the known
+ * counts, to validate the rules of the game. The speed of the generation (nodes/sec) is
+ * reported for each position. Run it with "gradle perft", or "gradle perft --args=N" to stop
+ * at the depth N.
+ *
+ * @see <a href="https://www.chessprogramming.org/Perft_Results">Perft results</a>
+ */
+public class Perft {
+
+    /* Reference positions and their counts, indexed by depth - 1 */
+    static final String[] POSITIONS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+    };
+    static final long[][] COUNTS = {
+            { 20, 400, 8902, 197281, 4865609 },
+            { 48, 2039, 97862, 4085603 },
+            { 14, 191, 2812, 43238, 674624, 11030083 },
+            { 6, 264, 9467, 422333 },
+            { 44, 1486, 62379, 2103487 },
+            { 46, 2079, 89890, 3894594 },
+    };
+
+    public static void main(String[] args) {
+
+        int max_depth = ( args.length > 0 ) ? Integer.parseInt(args[0]) : Integer.MAX_VALUE;
+        boolean passed = true;
+
+        for (int i=0; i<POSITIONS.length; i++) {
+            System.out.println(POSITIONS[i]);
+            for (int depth=1; depth<=Math.min(max_depth, COUNTS[i].length); depth++) {
+                Board board = new Board(POSITIONS[i]);
+                long start_time = System.nanoTime();
+                long nodes = MoveGenerator.perft(board, depth);
+                long elapsed = System.nanoTime() - start_time;
+                boolean ok = ( nodes == COUNTS[i][depth - 1] );
+                passed &= ok;
+                System.out.printf("  depth %d: %12d nodes %s %10.0f nodes/sec%n", depth, nodes,
+                        ok ? "ok      " : "expected " + COUNTS[i][depth - 1], nodes * 1e9 / elapsed);
+            }
+        }
+
+        System.out.println(passed ? "All counts match" : "Some counts do not match");
+        if ( !passed )
+            System.exit(1);
+    }
+
+}
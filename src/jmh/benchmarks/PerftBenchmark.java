@@ -0,0 +1,48 @@
+package benchmarks;
+
+import game.Board;
+import game.MoveGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the speed of the move generation on the reference positions of {@link Perft}, the
+ * number of positions reached being given by the "nodes" counter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PerftBenchmark {
+
+    @Param({ "0", "1", "2" })
+    public int position;
+
+    @Param({ "3" })
+    public int depth;
+
+    private Board board;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Nodes {
+        public long nodes;
+    }
+
+    @Setup
+    public void setUp() {
+        board = new Board(Perft.POSITIONS[position]);
+    }
+
+    @Benchmark
+    public long perft(Nodes counter) {
+        long nodes = MoveGenerator.perft(board, depth);
+        counter.nodes += nodes;
+        return nodes;
+    }
+
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import game.Board;
+import game.PositionCache;
+import game.Strike;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the legal moves of the positions of an opening as listed by the game loop, 12
+ * positions, with and without the cache of the positions: listed for each position, or
+ * copied from the cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionCacheBenchmark {
+
+    private static final String[] OPENING = { "e2-e4", "c7-c5", "g1-f3", "d7-d6", "d2-d4", "c5-d4",
+            "f3-d4", "g8-f6", "b1-c3", "a7-a6", "c1-e3" };
+
+    private final int[] moves = new int[OPENING.length];
+    private Board board;
+    private Board cached_board;
+
+    @Setup
+    public void setUp() {
+        Board opening = new Board();
+        for (int i=0; i<OPENING.length; i++) {
+            moves[i] = Strike.fromMove(Strike.parse(OPENING[i], opening.getSideToMove()), opening.getSideToMove(), opening).getMove();
+            opening.makeMove(moves[i]);
+        }
+        board = new Board();
+        cached_board = new Board();
+        cached_board.setPositionCache(new PositionCache(1 << 20));
+        playOpening(cached_board);
+    }
+
+    @Benchmark
+    public int withoutCache() {
+        return playOpening(board);
+    }
+
+    @Benchmark
+    public int withCache() {
+        return playOpening(cached_board);
+    }
+
+    /*
+     * Lists the legal moves of the positions of the opening, then takes the opening back.
+     */
+    private int playOpening(Board target) {
+        int count = target.getLegalMoves().size();
+        for (int move : moves) {
+            target.makeMove(move);
+            count += target.getLegalMoves().size();
+        }
+        for (int i=0; i<moves.length; i++)
+            target.unmakeMove();
+        return count;
+    }
+
+}
@@ -0,0 +1,73 @@
+package benchmarks;
+
+import game.Board;
+import network.Frame;
+import network.Protocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the encoding of the frames sent to the players (events, moves played, state of
+ * the board) and the decoding done by the clients.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBenchmark {
+
+    private Board board;
+    private byte[] board_frame;
+    private byte[] move_played_frame;
+
+    @Setup
+    public void setUp() {
+        board = new Board(Perft.POSITIONS[1]);
+        board_frame = payload(Protocol.board(board.getState()));
+        move_played_frame = payload(movePlayed());
+    }
+
+    /*
+     * Gives a frame as received, without its length prefix.
+     */
+    private static byte[] payload(ByteBuffer frame) {
+        byte[] payload = new byte[frame.remaining() - Frame.HEADER_LENGTH];
+        frame.position(Frame.HEADER_LENGTH);
+        frame.get(payload);
+        return payload;
+    }
+
+    @Benchmark
+    public ByteBuffer event() {
+        return Protocol.event(Protocol.YOUR_TURN);
+    }
+
+    @Benchmark
+    public ByteBuffer movePlayed() {
+        return Protocol.movePlayed(42, Protocol.move(12, 28, Protocol.NONE), Protocol.PAWN, Protocol.NONE, Protocol.CHECK);
+    }
+
+    @Benchmark
+    public ByteBuffer boardState() {
+        return Protocol.board(board.getState());
+    }
+
+    @Benchmark
+    public char[][] decodeBoardState() throws IOException {
+        Frame.kind(board_frame);
+        return Protocol.toBoard(board_frame);
+    }
+
+    @Benchmark
+    public int decodeMovePlayed() throws IOException {
+        Frame.kind(move_played_frame);
+        return Protocol.readMove(move_played_frame, 4) ^ Protocol.movedPiece(move_played_frame) ^ Protocol.flags(move_played_frame);
+    }
+
+}
@@ -0,0 +1,129 @@
+package benchmarks;
+
+import exceptions.Break75StrikeRuleException;
+import exceptions.FiveInHistoryException;
+import game.Board;
+import game.Color;
+import game.Player;
+import game.Strike;
+import org.openjdk.jmh.annotations.*;
+import pieces.Piece;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the rules engine as used by the game loop: parsing and validating a strike,
+ * checking whether the player can play or is in check, cloning and updating the board.
+ * The position is a middle game with all kinds of moves (castlings, captures, pins).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulesBenchmark {
+
+    /* Opening played by updateOpening(), 10 strikes */
+    private static final String[] OPENING = { "e2-e4", "e7-e5", "g1-f3", "b8-c6", "f1-b5",
+            "a7-a6", "b5-a4", "g8-f6", "0-0", "f8-e7" };
+
+    private Board board;
+    private final List<Player> players = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        board = new Board(Perft.POSITIONS[1]);
+        for (int color=0; color<2; color++) {
+            Player player = new Player(null);
+            player.setColor(color);
+            players.add(player);
+        }
+    }
+
+    @Benchmark
+    public Strike parseStrike() {
+        return new Strike("e2-e4", Color.WHITE);
+    }
+
+    @Benchmark
+    public Strike parseCastling() {
+        return new Strike("0-0-0", Color.WHITE);
+    }
+
+    @Benchmark
+    public int parseToMove() {
+        return Strike.parse("e2-e4", Color.WHITE);
+    }
+
+    @Benchmark
+    public boolean isAllowedCapture() {
+        return new Strike("e2-a6", Color.WHITE).isAllowed(board, players.get(Color.WHITE));
+    }
+
+    @Benchmark
+    public boolean isAllowedFromLegalMoves() {
+        return new Strike("e2-a6", Color.WHITE).isAllowed(board.getLegalMoves());
+    }
+
+    @Benchmark
+    public boolean isAllowedCastling() {
+        return new Strike("0-0", Color.WHITE).isAllowed(board, players.get(Color.WHITE));
+    }
+
+    @Benchmark
+    public boolean isAllowedInvalid() {
+        return new Strike("e1-e3", Color.WHITE).isAllowed(board, players.get(Color.WHITE));
+    }
+
+    @Benchmark
+    public boolean canPlay() {
+        return players.get(Color.WHITE).canPlay(board);
+    }
+
+    @Benchmark
+    public int kindOfPieces() {
+        int kinds = 0;
+        for (int square=0; square<Board.BOARD_WIDTH*Board.BOARD_HEIGHT; square++) {
+            Piece piece = board.getPiece(square);
+            if ( piece != null )
+                kinds += Board.kind(piece);
+        }
+        return kinds;
+    }
+
+    @Benchmark
+    public boolean isInCheck() {
+        return players.get(Color.WHITE).isInCheck(board);
+    }
+
+    @Benchmark
+    public Board getClone() {
+        return board.getClone();
+    }
+
+    /*
+     * The update needs a fresh board, its creation is included: see newBoard() for its cost.
+     */
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public Board updateOpening() throws IOException, Break75StrikeRuleException, FiveInHistoryException {
+        Board game_board = new Board();
+        int color = Color.WHITE;
+        for (String str_strike: OPENING) {
+            game_board.update(players, new Strike(str_strike, color));
+            color = Color.getOpponentColor(color);
+        }
+        return game_board;
+    }
+
+    @Benchmark
+    public Board newBoard() {
+        return new Board();
+    }
+
+}
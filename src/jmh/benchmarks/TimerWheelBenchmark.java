@@ -0,0 +1,48 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import server.Clock;
+import server.TimerWheel;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures starting and stopping the clock of a player, a strike, while the timer wheel
+ * already holds the clocks of many other games.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimerWheelBenchmark {
+
+    private static final Runnable FLAG_FALL = () -> {};
+
+    @Param({"1000", "100000"})
+    public int running_clocks;
+
+    private TimerWheel timers;
+
+    @Setup
+    public void setUp() {
+        timers = new TimerWheel();
+        for (int i=0; i<running_clocks; i++)
+            Clock.perStrike(600000 + i).start(timers, FLAG_FALL);
+    }
+
+    @TearDown
+    public void tearDown() {
+        timers.stop();
+    }
+
+    @Benchmark
+    public boolean strike() {
+        Clock clock = new Clock(300000, 2000, 0);
+        clock.start(timers, FLAG_FALL);
+        return clock.stop();
+    }
+
+}